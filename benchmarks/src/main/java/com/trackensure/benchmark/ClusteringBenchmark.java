@@ -0,0 +1,60 @@
+package com.trackensure.benchmark;
+
+import com.trackensure.LogRecord;
+import com.trackensure.MessageTokenizer;
+import com.trackensure.SimilarMessagesJoiner;
+import com.trackensure.TEAppException;
+import com.trackensure.TokenDictionary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// joining of records with similar messages (Gather Similar Messages) in one group of records. Joining changes records,
+// so their copies are made before every operation
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ClusteringBenchmark {
+    @Param({"50000"})
+    public int recordsQuantity;
+
+    private TokenDictionary tokenDictionary;
+    private List<LogRecord> logRecordList;
+    private List<LogRecord> copiedLogRecordList;
+
+    @Setup(Level.Trial)
+    public void createRecords(SyntheticLog syntheticLog) {
+        tokenDictionary = new TokenDictionary();
+        MessageTokenizer messageTokenizer = new MessageTokenizer(tokenDictionary);
+        logRecordList = new ArrayList<>(recordsQuantity);
+        for (String message : syntheticLog.createGenerator().createMessages(recordsQuantity)) {
+            LogRecord logRecord = new LogRecord();
+            logRecord.setMessageTokens(messageTokenizer.createTokens(message));
+            logRecord.setSimilarRowsQuantity(1);
+            logRecordList.add(logRecord);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copyRecords() {
+        copiedLogRecordList = new ArrayList<>(logRecordList.size());
+        for (LogRecord logRecord : logRecordList) {
+            copiedLogRecordList.add(new LogRecord(logRecord));
+        }
+    }
+
+    @Benchmark
+    public int joinSimilarMessages(Throughput throughput) throws TEAppException {
+        SimilarMessagesJoiner similarMessagesJoiner = new SimilarMessagesJoiner(tokenDictionary);
+        for (LogRecord logRecord : copiedLogRecordList) {
+            similarMessagesJoiner.add(logRecord);
+        }
+        throughput.records += copiedLogRecordList.size();
+        return similarMessagesJoiner.getUniqLogRecordList().size();
+    }
+}
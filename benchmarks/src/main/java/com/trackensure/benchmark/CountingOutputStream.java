@@ -0,0 +1,22 @@
+package com.trackensure.benchmark;
+
+import java.io.OutputStream;
+
+// the book is not kept, only its size
+public class CountingOutputStream extends OutputStream {
+    private long bytes;
+
+    @Override
+    public void write(int b) {
+        bytes++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        bytes += len;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,29 @@
+package com.trackensure.benchmark;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// runs benchmarks with JMH options from the command line. The allocation rate is measured by the GC profiler and results
+// are written to jmh-result.json, unless other profilers or formats are given, so results of commits can be compared:
+// java -jar target/benchmarks.jar -rff before.json, then the same for the next commit.
+// Allocation of pool threads of the parser which are stopped during the iteration may be missed by the GC profiler,
+// gc.alloc.rate.norm of the same benchmark is still comparable between commits
+public class LogFileParserBenchmarks {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList() || commandLineOptions.shouldListWithParams()
+                || commandLineOptions.shouldListProfilers() || commandLineOptions.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder optionsBuilder = new OptionsBuilder().parent(commandLineOptions);
+        if (commandLineOptions.getProfilers().isEmpty()) optionsBuilder.addProfiler(GCProfiler.class);
+        if (!commandLineOptions.getResultFormat().hasValue()) optionsBuilder.resultFormat(ResultFormatType.JSON);
+        new Runner(optionsBuilder.build()).run();
+    }
+}
@@ -0,0 +1,55 @@
+package com.trackensure.benchmark;
+
+import com.trackensure.LogFileParser;
+import com.trackensure.LogFileParserXLS;
+import com.trackensure.LogRecord;
+import com.trackensure.TEAppException;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// the whole parsing as it is run for the client: reading, filtering, deduplication, joining, sorting and export
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-DlogFileParser.cacheSizeMb=0"})
+public class ParseJobBenchmark {
+    @Param({"false", "true"})
+    public boolean isGatherMessages;
+
+    // the default options of the page: Unique Rows, Errors Only, TrackEnsure StackTrace Only
+    @Benchmark
+    public long parseUniqueErrors(SyntheticLog syntheticLog, Throughput throughput) throws TEAppException {
+        LogFileParser logFileParser = new LogFileParser(syntheticLog.getFiles(), StandardCharsets.UTF_8,
+                true, isGatherMessages, true, true, 0, 0);
+        List<List<LogRecord>> logRecordListAssembled = logFileParser.parseLogFiles();
+        CountingOutputStream outputStream = new CountingOutputStream();
+        new LogFileParserXLS().generateAndWriteExcelFile(outputStream, logRecordListAssembled);
+        throughput.megabytes += syntheticLog.getMegabytes();
+        throughput.records += logRecordListAssembled.stream().mapToLong(List::size).sum();
+        return outputStream.getBytes();
+    }
+
+    // all records of the log, sorted and written record by record
+    @Benchmark
+    public long parseAllRecords(SyntheticLog syntheticLog, Throughput throughput) throws TEAppException {
+        long[] records = {0};
+        LogFileParser logFileParser = new LogFileParser(syntheticLog.getFiles(), StandardCharsets.UTF_8,
+                false, false, false, false, 0, 0);
+        CountingOutputStream outputStream = new CountingOutputStream();
+        LogFileParserXLS logFileParserXLS = new LogFileParserXLS();
+        logFileParserXLS.startExcelFile(outputStream);
+        logFileParser.parseAndSortLogFiles(logRecord -> {
+            records[0]++;
+            logFileParserXLS.writeRecord(logRecord);
+        });
+        logFileParserXLS.finishExcelFile();
+        throughput.megabytes += syntheticLog.getMegabytes();
+        throughput.records += records[0];
+        return outputStream.getBytes();
+    }
+}
@@ -0,0 +1,32 @@
+package com.trackensure.benchmark;
+
+import com.trackensure.LogFileParser;
+import com.trackensure.TEAppException;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// reading of the log: scanning of rows, parsing of headers and assembling of records with their stack traces.
+// Records are passed as they are read, without deduplication, sorting and export
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-DlogFileParser.cacheSizeMb=0"})
+public class ParserBenchmark {
+    @Param({"false", "true"})
+    public boolean isErrorsOnly;
+
+    @Benchmark
+    public long readRecords(SyntheticLog syntheticLog, Throughput throughput) throws TEAppException {
+        long[] records = {0};
+        LogFileParser logFileParser = new LogFileParser(syntheticLog.getFiles(), StandardCharsets.UTF_8,
+                false, false, isErrorsOnly, false, 0, 0);
+        logFileParser.parseLogFiles(logRecord -> records[0]++);
+        throughput.megabytes += syntheticLog.getMegabytes();
+        throughput.records += records[0];
+        return records[0];
+    }
+}
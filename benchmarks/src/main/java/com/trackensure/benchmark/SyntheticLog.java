@@ -0,0 +1,63 @@
+package com.trackensure.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+// log file of the benchmark, it is generated once for the trial (fork) with options of @Param
+@State(Scope.Benchmark)
+public class SyntheticLog {
+    @Param({"16"})
+    public int sizeMb;
+
+    @Param({"0.05"})
+    public double errorRatio;
+
+    @Param({"20"})
+    public int stackTraceDepth;
+
+    @Param({"0.5"})
+    public double repetitionRate;
+
+    @Param({"0.3"})
+    public double messageVariability;
+
+    @Param({"1"})
+    public long seed;
+
+    private File logDir;
+    private File logFile;
+    private long recordsQuantity;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        logDir = Files.createTempDirectory("logFileParser-benchmark").toFile();
+        logFile = new File(logDir, "synthetic.log");
+        recordsQuantity = createGenerator().write(logFile, sizeMb * 1024L * 1024L);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        if (!logFile.delete() || !logDir.delete()) System.err.println("Benchmark log is not deleted: " + logFile);
+    }
+
+    public SyntheticLogGenerator createGenerator() {
+        return new SyntheticLogGenerator(seed, errorRatio, stackTraceDepth, repetitionRate, messageVariability);
+    }
+
+    public List<File> getFiles() {
+        return Collections.singletonList(logFile);
+    }
+
+    public double getMegabytes() {
+        return logFile.length() / (1024.0 * 1024.0);
+    }
+
+    public long getRecordsQuantity() {
+        return recordsQuantity;
+    }
+}
@@ -0,0 +1,179 @@
+package com.trackensure.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// log4j log (%d %5p [%t] %c - %m%n) of the same content for the same options, so results of benchmarks are comparable
+// between commits. Messages are made of templates with variable parts, errors have stack traces of TrackEnsure and
+// other classes.
+// errorRatio - part of ERROR/FATAL records, stackTraceDepth - max frames of stack trace of error,
+// repetitionRate - part of records which repeat one of the previous records (duplicates of Unique Rows),
+// messageVariability - chance that a variable part of the message gets a new value, otherwise one of a few values is used
+public class SyntheticLogGenerator {
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss,SSS");
+    private static final LocalDateTime START_DATE_TIME = LocalDateTime.of(2023, 2, 1, 0, 0);
+    private static final String[] NOT_ERROR_PRIORITIES = {"DEBUG", "INFO", "INFO", "INFO", "WARN"};
+    private static final String[] WORDS = {"device", "driver", "vehicle", "trip", "load", "request", "response", "session",
+            "user", "account", "report", "event", "status", "location", "message", "connection", "sync", "update", "record",
+            "document", "is", "was", "has", "been", "not", "found", "received", "sent", "failed", "started", "finished",
+            "for", "with", "from", "to", "in", "on", "by", "the", "a"};
+    private static final String[] PACKAGES = {"com.trackensure.service", "com.trackensure.dao", "com.trackensure.web",
+            "org.hibernate.engine", "org.apache.catalina.core", "java.util.concurrent"};
+    private static final String[] EXCEPTIONS = {"java.lang.IllegalStateException", "java.lang.NullPointerException",
+            "java.sql.SQLException", "com.trackensure.TEAppException", "java.io.IOException"};
+    private static final int TEMPLATES_QUANTITY = 300;
+    private static final int CATEGORIES_QUANTITY = 40;
+    private static final int THREADS_QUANTITY = 16;
+    private static final int VALUES_PER_PART = 3;
+    private static final int REPEATED_RECORDS_QUANTITY = 1_000;
+
+    private final long seed;
+    private final double errorRatio;
+    private final int stackTraceDepth;
+    private final double repetitionRate;
+    private final double messageVariability;
+
+    public SyntheticLogGenerator(long seed, double errorRatio, int stackTraceDepth, double repetitionRate, double messageVariability) {
+        this.seed = seed;
+        this.errorRatio = errorRatio;
+        this.stackTraceDepth = stackTraceDepth;
+        this.repetitionRate = repetitionRate;
+        this.messageVariability = messageVariability;
+    }
+
+    // writes records until the file has sizeBytes at least, returns the quantity of records
+    public long write(File file, long sizeBytes) throws IOException {
+        Random random = new Random(seed);
+        List<Template> templateList = createTemplates(random);
+        List<String> repeatedRecordList = new ArrayList<>();
+        LocalDateTime dateTime = START_DATE_TIME;
+        long recordsQuantity = 0;
+        long writtenBytes = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            while (writtenBytes < sizeBytes) {
+                dateTime = dateTime.plusNanos(random.nextInt(2_000) * 1_000_000L);
+                String record;
+                if (!repeatedRecordList.isEmpty() && random.nextDouble() < repetitionRate) {
+                    record = repeatedRecordList.get(random.nextInt(repeatedRecordList.size()));
+                } else {
+                    record = createRecord(random, templateList);
+                    if (repeatedRecordList.size() < REPEATED_RECORDS_QUANTITY) repeatedRecordList.add(record);
+                    else repeatedRecordList.set(random.nextInt(REPEATED_RECORDS_QUANTITY), record);
+                }
+                String row = DATE_TIME_FORMATTER.format(dateTime) + " " + record;
+                writer.write(row);
+                writtenBytes += row.getBytes(StandardCharsets.UTF_8).length;
+                recordsQuantity++;
+            }
+        }
+        return recordsQuantity;
+    }
+
+    // messages of records without headers and stack traces
+    public List<String> createMessages(int quantity) {
+        Random random = new Random(seed);
+        List<Template> templateList = createTemplates(random);
+        List<String> messageList = new ArrayList<>(quantity);
+        for (int i = 0; i < quantity; i++) {
+            messageList.add(templateList.get(random.nextInt(templateList.size())).createMessage(random));
+        }
+        return messageList;
+    }
+
+    // the record after the date: priority, thread, category, message and stack trace with line separators
+    private String createRecord(Random random, List<Template> templateList) {
+        Template template = templateList.get(random.nextInt(templateList.size()));
+        boolean isError = random.nextDouble() < errorRatio;
+        String priority = isError ? ((random.nextInt(10) == 0) ? "FATAL" : "ERROR") : NOT_ERROR_PRIORITIES[random.nextInt(NOT_ERROR_PRIORITIES.length)];
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%5s", priority))
+                .append(" [thread-").append(random.nextInt(THREADS_QUANTITY)).append("] ")
+                .append(template.category).append(" - ")
+                .append(template.createMessage(random)).append('\n');
+        if (isError && stackTraceDepth > 0) {
+            sb.append(template.exception).append(": ").append(template.createMessage(random)).append('\n');
+            int depth = 1 + random.nextInt(stackTraceDepth);
+            for (int i = 0; i < depth; i++) {
+                String packageName = PACKAGES[random.nextInt(PACKAGES.length)];
+                sb.append("\tat ").append(packageName).append(".Class").append(random.nextInt(20))
+                        .append(".method").append(random.nextInt(10))
+                        .append("(Class").append(random.nextInt(20)).append(".java:").append(1 + random.nextInt(500)).append(")\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private List<Template> createTemplates(Random random) {
+        List<Template> templateList = new ArrayList<>();
+        for (int i = 0; i < TEMPLATES_QUANTITY; i++) {
+            templateList.add(new Template(random));
+        }
+        return templateList;
+    }
+
+    // message of words and variable parts, which are numbers, decimals, ip addresses and dates like in real logs
+    private class Template {
+        private final String category;
+        private final String exception;
+        private final List<String> wordList = new ArrayList<>();
+        private final List<String[]> valuesList = new ArrayList<>();
+        private final List<Integer> typeList = new ArrayList<>();
+
+        private Template(Random random) {
+            category = PACKAGES[random.nextInt(PACKAGES.length)] + ".Category" + random.nextInt(CATEGORIES_QUANTITY);
+            exception = EXCEPTIONS[random.nextInt(EXCEPTIONS.length)];
+            int partsQuantity = 3 + random.nextInt(12);
+            for (int i = 0; i < partsQuantity; i++) {
+                boolean isVariable = random.nextInt(4) == 0;
+                int type = isVariable ? random.nextInt(4) : -1;
+                wordList.add(WORDS[random.nextInt(WORDS.length)]);
+                typeList.add(type);
+                String[] values = new String[VALUES_PER_PART];
+                if (isVariable) {
+                    for (int j = 0; j < VALUES_PER_PART; j++) {
+                        values[j] = createValue(random, type);
+                    }
+                }
+                valuesList.add(values);
+            }
+        }
+
+        private String createMessage(Random random) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < wordList.size(); i++) {
+                if (i > 0) sb.append(' ');
+                int type = typeList.get(i);
+                if (type < 0) {
+                    sb.append(wordList.get(i));
+                } else {
+                    sb.append(wordList.get(i)).append(type == 0 ? "=" : " ");
+                    sb.append(random.nextDouble() < messageVariability ? createValue(random, type) : valuesList.get(i)[random.nextInt(VALUES_PER_PART)]);
+                }
+            }
+            return sb.toString();
+        }
+
+        private String createValue(Random random, int type) {
+            switch (type) {
+                case 0:
+                    return String.valueOf(random.nextInt(1_000_000));
+                case 1:
+                    return (random.nextInt(180) - 90) + "." + random.nextInt(1_000_000);
+                case 2:
+                    return random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+                default:
+                    return DATE_TIME_FORMATTER.format(START_DATE_TIME.plusSeconds(random.nextInt(10_000_000)));
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.trackensure.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// secondary results of the benchmark: with Mode.Throughput they are reported per second, i.e. MB/s and records/s.
+// Megabytes are of the source log, records are what the stage has made or handled
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+    public double megabytes;
+    public long records;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+        records = 0;
+    }
+}
@@ -0,0 +1,46 @@
+package com.trackensure.benchmark;
+
+import com.trackensure.MessageTokenizer;
+import com.trackensure.TokenDictionary;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// splitting of messages to tokens for Gather Similar Messages, with a new dictionary of tokens for every operation
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class TokenizerBenchmark {
+    @Param({"100000"})
+    public int messagesQuantity;
+
+    private List<String> messageList;
+    private double megabytes;
+
+    @Setup(Level.Trial)
+    public void createMessages(SyntheticLog syntheticLog) {
+        messageList = syntheticLog.createGenerator().createMessages(messagesQuantity);
+        long bytes = 0;
+        for (String message : messageList) {
+            bytes += message.getBytes(StandardCharsets.UTF_8).length;
+        }
+        megabytes = bytes / (1024.0 * 1024.0);
+    }
+
+    @Benchmark
+    public long createTokens(Throughput throughput) {
+        MessageTokenizer messageTokenizer = new MessageTokenizer(new TokenDictionary());
+        long tokens = 0;
+        for (String message : messageList) {
+            tokens += messageTokenizer.createTokens(message).length;
+        }
+        throughput.megabytes += megabytes;
+        throughput.records += messageList.size();
+        return tokens;
+    }
+}
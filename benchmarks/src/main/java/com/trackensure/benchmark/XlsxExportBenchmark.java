@@ -0,0 +1,69 @@
+package com.trackensure.benchmark;
+
+import com.trackensure.LogFileParser;
+import com.trackensure.LogFileParserXLS;
+import com.trackensure.LogRecord;
+import com.trackensure.TEAppException;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// export of parsed records of the log to .xlsx, the book is written to a stream which only counts bytes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-DlogFileParser.cacheSizeMb=0"})
+public class XlsxExportBenchmark {
+    private static final int MAX_ROWS_FOR_SHEET = 1_000_000;
+
+    private List<List<LogRecord>> logRecordListAssembled;
+    private long recordsQuantity;
+    private double megabytes;
+
+    @Setup(Level.Trial)
+    public void parseRecords(SyntheticLog syntheticLog) throws TEAppException {
+        LogFileParser logFileParser = new LogFileParser(syntheticLog.getFiles(), StandardCharsets.UTF_8,
+                false, false, false, false, 0, 0);
+        //records are sorted the same way as for export of all records, the book is limited by sheets of MAX_ROWS_FOR_SHEET
+        List<LogRecord> logRecordList = new ArrayList<>();
+        logFileParser.parseAndSortLogFiles(logRecordList::add);
+        logRecordListAssembled = new ArrayList<>();
+        for (int fromIndex = 0; fromIndex < logRecordList.size(); fromIndex += MAX_ROWS_FOR_SHEET) {
+            logRecordListAssembled.add(logRecordList.subList(fromIndex, Math.min(fromIndex + MAX_ROWS_FOR_SHEET, logRecordList.size())));
+        }
+        recordsQuantity = logRecordList.size();
+        megabytes = syntheticLog.getMegabytes();
+    }
+
+    // the book of sheets made from records kept in memory (Unique Rows)
+    @Benchmark
+    public long generateSheets(Throughput throughput) throws TEAppException {
+        CountingOutputStream outputStream = new CountingOutputStream();
+        new LogFileParserXLS().generateAndWriteExcelFile(outputStream, logRecordListAssembled);
+        throughput.megabytes += megabytes;
+        throughput.records += recordsQuantity;
+        return outputStream.getBytes();
+    }
+
+    // the book written record by record (Streaming and not unique rows)
+    @Benchmark
+    public long writeRecords(Throughput throughput) throws TEAppException {
+        CountingOutputStream outputStream = new CountingOutputStream();
+        LogFileParserXLS logFileParserXLS = new LogFileParserXLS();
+        logFileParserXLS.startExcelFile(outputStream);
+        for (List<LogRecord> logRecordList : logRecordListAssembled) {
+            for (LogRecord logRecord : logRecordList) {
+                logFileParserXLS.writeRecord(logRecord);
+            }
+        }
+        logFileParserXLS.finishExcelFile();
+        throughput.megabytes += megabytes;
+        throughput.records += recordsQuantity;
+        return outputStream.getBytes();
+    }
+}
@@ -0,0 +1,442 @@
+package com.trackensure;
+
+import org.apache.log4j.Logger;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.*;
+
+// decompressed content of .gz or .zip log file. Members of the file (gzip members of concatenated gzip file,
+// entries of zip file) are decompressed by other threads to bounded queues of chunks and read in their order,
+// so the parser doesn't wait for decompression and memory doesn't depend on the size of file. Threads are shared by all
+// compressed files which are read at the same time, there are LogFileParserConfig.getDecompressThreadsQuantity() of them.
+// Members are run in the order they are started, and every file starts its members in its order, so a member which is
+// read is always run before members which wait for their reader
+public abstract class CompressedLogInputStream extends InputStream {
+    private static final Class<CompressedLogInputStream> CLAZZ = CompressedLogInputStream.class;
+    private static final Logger logger = Logger.getLogger(CLAZZ);
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final int QUEUE_CHUNKS = 4;
+    private static final byte[] END_OF_MEMBER = new byte[0];
+    private static ExecutorService executor;
+
+    protected final File sourceFile;
+    protected final int threadsQuantity;
+    //members which are started and are not read yet, they are cancelled when the file is closed
+    private final Set<Member> startedMemberSet = new HashSet<>();
+    private Member member;
+    private byte[] chunk = END_OF_MEMBER;
+    private int chunkPos = 0;
+
+    protected CompressedLogInputStream(File sourceFile, int threadsQuantity) {
+        this.sourceFile = sourceFile;
+        this.threadsQuantity = threadsQuantity;
+    }
+
+    public static boolean isCompressed(File sourceFile) {
+        String name = sourceFile.getName().toLowerCase();
+        return name.endsWith(".gz") || name.endsWith(".zip");
+    }
+
+    // name of the log in the compressed file: app.log for app.log.gz
+    public static String getUncompressedName(File sourceFile) {
+        String name = sourceFile.getName();
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+
+    // threadsQuantity - members of the file which are decompressed at the same time
+    public static CompressedLogInputStream open(File sourceFile, int threadsQuantity) throws IOException {
+        if (!sourceFile.isFile()) throw new NoSuchFileException(sourceFile.getPath());
+        CompressedLogInputStream in = sourceFile.getName().toLowerCase().endsWith(".zip")
+                ? new ZipInput(sourceFile, threadsQuantity) : new GzipInput(sourceFile, threadsQuantity);
+        try {
+            in.member = in.getFirstMember();
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    // starts decompression of the first member and of the next ones to keep threads busy
+    protected abstract Member getFirstMember() throws IOException;
+
+    // called when the member is read, returns the next member or null if it is the last one
+    protected abstract Member getNextMember(Member member) throws IOException;
+
+    // called when the application is stopped
+    public static synchronized void shutdown() {
+        if (Objects.isNull(executor)) return;
+        executor.shutdownNow();
+        executor = null;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (Objects.isNull(executor)) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(LogFileParserConfig.getDecompressThreadsQuantity(), runnable -> {
+                Thread thread = new Thread(runnable, "logFileParser-decompress-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    protected Member startMember(long position, Decompressor decompressor) {
+        Member member = new Member(position);
+        startedMemberSet.add(member);
+        member.future = getExecutor().submit(() -> {
+            try {
+                try {
+                    decompressor.decompress(member);
+                } catch (IOException | RuntimeException e) {
+                    member.exception = e;
+                }
+                member.chunkQueue.put(END_OF_MEMBER);
+            } catch (InterruptedException e) {
+                //the member is not needed
+            }
+        });
+        return member;
+    }
+
+    protected void cancelMember(Member member) {
+        member.future.cancel(true);
+        startedMemberSet.remove(member);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] oneByte = new byte[1];
+        return (read(oneByte, 0, 1) < 0) ? -1 : oneByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        while (chunkPos == chunk.length) {
+            if (Objects.isNull(member)) return -1;
+            try {
+                chunk = member.chunkQueue.take();
+                chunkPos = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Decompression of file " + sourceFile.getName() + " has been interrupted.");
+            }
+            if (chunk == END_OF_MEMBER) {
+                if (Objects.nonNull(member.exception)) throw new IOException("Error while decompressing file: " + sourceFile.getName(), member.exception);
+                startedMemberSet.remove(member);
+                member = getNextMember(member);
+            }
+        }
+        int readBytes = Math.min(len, chunk.length - chunkPos);
+        System.arraycopy(chunk, chunkPos, bytes, off, readBytes);
+        chunkPos += readBytes;
+        return readBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Member startedMember : startedMemberSet) {
+            startedMember.future.cancel(true);
+        }
+        startedMemberSet.clear();
+    }
+
+    protected interface Decompressor {
+        void decompress(Member member) throws IOException, InterruptedException;
+    }
+
+    // decompressed chunks of one member and where the member ends in the file (for gzip members)
+    protected static class Member {
+        private final long position;
+        private final BlockingQueue<byte[]> chunkQueue = new ArrayBlockingQueue<>(QUEUE_CHUNKS);
+        private volatile long endPosition = -1;
+        private volatile Exception exception;
+        private Future<?> future;
+
+        private Member(long position) {
+            this.position = position;
+        }
+
+        // passes bytes to the reader by chunks, blocks while the reader is QUEUE_CHUNKS chunks behind
+        private static void copy(InputStream in, Member member) throws IOException, InterruptedException {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int chunkLength = 0;
+            int readBytes;
+            while ((readBytes = in.read(chunk, chunkLength, CHUNK_SIZE - chunkLength)) >= 0) {
+                chunkLength += readBytes;
+                if (chunkLength == CHUNK_SIZE) {
+                    member.chunkQueue.put(chunk);
+                    chunk = new byte[CHUNK_SIZE];
+                    chunkLength = 0;
+                }
+            }
+            if (chunkLength > 0) member.chunkQueue.put(Arrays.copyOf(chunk, chunkLength));
+        }
+    }
+
+    // entries of zip file are read in their order as one stream, directories are skipped
+    private static class ZipInput extends CompressedLogInputStream {
+        private final ZipFile zipFile;
+        private final List<ZipEntry> entryList = new ArrayList<>();
+        private final Deque<Member> startedMemberQueue = new ArrayDeque<>();
+        private int nextEntryIndex = 0;
+
+        private ZipInput(File sourceFile, int threadsQuantity) throws IOException {
+            super(sourceFile, threadsQuantity);
+            try {
+                this.zipFile = new ZipFile(sourceFile);
+            } catch (IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) entryList.add(entry);
+            }
+        }
+
+        @Override
+        protected Member getFirstMember() {
+            return getNextMember(null);
+        }
+
+        @Override
+        protected Member getNextMember(Member member) {
+            while (nextEntryIndex < entryList.size() && startedMemberQueue.size() < threadsQuantity) {
+                ZipEntry entry = entryList.get(nextEntryIndex);
+                startedMemberQueue.add(startMember(nextEntryIndex++, startedMember -> {
+                    try (InputStream in = zipFile.getInputStream(entry)) {
+                        Member.copy(in, startedMember);
+                    }
+                }));
+            }
+            return startedMemberQueue.poll();
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            zipFile.close();
+        }
+    }
+
+    // gzip file can be a concatenation of members (gzip of every part of log, bgzip, pigz --independent).
+    // Where the next member starts is known only after the previous one is inflated, so the next members are
+    // inflated from positions where a gzip header can start, and those which are not at the end of the previous
+    // member are cancelled. Headers are searched only one window ahead of the member which is read, so a usual file
+    // of one member is not scanned before it is read, and the next member is started at the end of the previous one
+    // if it is further
+    private static class GzipInput extends CompressedLogInputStream {
+        private static final int INPUT_SIZE = 64 * 1024;
+        private static final int SEARCH_WINDOW_SIZE = 4 * 1024 * 1024;
+        private static final int HEADER_SIZE = 10;
+        private static final int FLAG_HEADER_CRC = 2;
+        private static final int FLAG_EXTRA = 4;
+        private static final int FLAG_NAME = 8;
+        private static final int FLAG_COMMENT = 16;
+        private static final int FLAG_RESERVED = 0xE0;
+        private static final int OS_UNKNOWN = 255;
+        private static final int OS_MAX = 13;
+
+        private final long fileSize;
+        private final Deque<Member> startedMemberQueue = new ArrayDeque<>();
+        private long searchedToPosition = 1;
+
+        private GzipInput(File sourceFile, int threadsQuantity) {
+            super(sourceFile, threadsQuantity);
+            this.fileSize = sourceFile.length();
+        }
+
+        @Override
+        protected Member getFirstMember() throws IOException {
+            Member member = startMember(0, this::inflate);
+            startNextMembers(0);
+            return member;
+        }
+
+        @Override
+        protected Member getNextMember(Member member) throws IOException {
+            long endPosition = member.endPosition;
+            while (!startedMemberQueue.isEmpty() && startedMemberQueue.peek().position < endPosition) {
+                cancelMember(startedMemberQueue.poll());
+            }
+            if (endPosition >= fileSize) return null;
+            Member nextMember = startedMemberQueue.poll();
+            if (Objects.isNull(nextMember) || nextMember.position != endPosition) {
+                if (Objects.nonNull(nextMember)) startedMemberQueue.addFirst(nextMember);
+                if (!isHeader(endPosition)) {
+                    logger.warn("getNextMember(): " + (fileSize - endPosition) + " bytes after the last gzip member of file " + sourceFile.getName() + " are ignored.");
+                    return null;
+                }
+                nextMember = startMember(endPosition, this::inflate);
+            }
+            searchedToPosition = Math.max(searchedToPosition, endPosition + 1);
+            startNextMembers(endPosition);
+            return nextMember;
+        }
+
+        // starts inflating from the next positions of gzip header before the end of the window after currentPosition,
+        // so there are threadsQuantity - 1 (at least one) members after the current one
+        private void startNextMembers(long currentPosition) throws IOException {
+            int maxStartedMembers = Math.max(1, threadsQuantity - 1);
+            long searchToPosition = Math.min(fileSize, currentPosition + SEARCH_WINDOW_SIZE);
+            if (startedMemberQueue.size() >= maxStartedMembers || searchedToPosition >= searchToPosition) return;
+            try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, searchedToPosition,
+                        Math.min(fileSize, searchToPosition + HEADER_SIZE) - searchedToPosition);
+                int limit = (int) (searchToPosition - searchedToPosition);
+                int i = 0;
+                while (startedMemberQueue.size() < maxStartedMembers && i < limit) {
+                    if (isHeader(buffer, i, true)) startedMemberQueue.add(startMember(searchedToPosition + i, this::inflate));
+                    i++;
+                }
+                searchedToPosition += i;
+            }
+        }
+
+        // the next member must start where the previous one ends, its header is checked by inflate()
+        private boolean isHeader(long position) throws IOException {
+            if (position + HEADER_SIZE > fileSize) return false;
+            try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) return false;
+                }
+                return isHeader(buffer, 0, false);
+            }
+        }
+
+        // bytes which can be a gzip header: ID1, ID2, CM = deflate, no reserved flags. Positions where inflating is
+        // started in advance are checked strictly to have XFL and OS which are written by gzip tools, so random bytes
+        // of compressed data are inflated rarely
+        private static boolean isHeader(ByteBuffer buffer, int i, boolean isStrict) {
+            if (i + HEADER_SIZE > buffer.limit()) return false;
+            if (buffer.get(i) != (byte) 0x1f || buffer.get(i + 1) != (byte) 0x8b || buffer.get(i + 2) != 8
+                    || (buffer.get(i + 3) & FLAG_RESERVED) != 0) return false;
+            if (!isStrict) return true;
+            int extraFlags = buffer.get(i + 8) & 0xFF;
+            int os = buffer.get(i + 9) & 0xFF;
+            return (extraFlags == 0 || extraFlags == 2 || extraFlags == 4) && (os <= OS_MAX || os == OS_UNKNOWN);
+        }
+
+        // inflates the gzip member which starts at member.position, checks its trailer and sets where it ends
+        private void inflate(Member member) throws IOException, InterruptedException {
+            Inflater inflater = new Inflater(true);
+            try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+                MemberInput in = new MemberInput(channel, member.position);
+                if (in.read() != 0x1f || in.read() != 0x8b || in.read() != 8)
+                    throw new ZipException("Not in gzip format at " + member.position + " byte.");
+                int flags = in.read();
+                if ((flags & FLAG_RESERVED) != 0) throw new ZipException("Unsupported gzip flags at " + member.position + " byte.");
+                in.skip(6); //MTIME, XFL, OS
+                if ((flags & FLAG_EXTRA) != 0) in.skip(in.read() | (in.read() << 8));
+                if ((flags & FLAG_NAME) != 0) in.skipString();
+                if ((flags & FLAG_COMMENT) != 0) in.skipString();
+                if ((flags & FLAG_HEADER_CRC) != 0) in.skip(2);
+
+                CRC32 crc = new CRC32();
+                long size = 0;
+                byte[] chunk = new byte[CHUNK_SIZE];
+                int chunkLength = 0;
+                while (!inflater.finished()) {
+                    if (inflater.needsInput()) in.setInput(inflater);
+                    int inflatedBytes;
+                    try {
+                        inflatedBytes = inflater.inflate(chunk, chunkLength, CHUNK_SIZE - chunkLength);
+                    } catch (DataFormatException e) {
+                        throw new ZipException("Invalid gzip data at " + member.position + " byte: " + e.getMessage());
+                    }
+                    if (inflater.needsDictionary()) throw new ZipException("Invalid gzip data at " + member.position + " byte.");
+                    crc.update(chunk, chunkLength, inflatedBytes);
+                    size += inflatedBytes;
+                    chunkLength += inflatedBytes;
+                    if (chunkLength == CHUNK_SIZE) {
+                        member.chunkQueue.put(chunk);
+                        chunk = new byte[CHUNK_SIZE];
+                        chunkLength = 0;
+                    }
+                }
+                in.unread(inflater.getRemaining());
+                if (in.readInt() != (int) crc.getValue() || in.readInt() != (int) size)
+                    throw new ZipException("Corrupt gzip trailer at " + in.getPosition() + " byte.");
+                if (chunkLength > 0) member.chunkQueue.put(Arrays.copyOf(chunk, chunkLength));
+                member.endPosition = in.getPosition();
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    // bytes of gzip member read from its position through the buffer, which is also the input of the inflater
+    private static class MemberInput {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(GzipInput.INPUT_SIZE);
+        private long bufferPosition;
+
+        private MemberInput(FileChannel channel, long position) {
+            this.channel = channel;
+            this.bufferPosition = position;
+            buffer.limit(0);
+        }
+
+        private void fill() throws IOException {
+            bufferPosition += buffer.limit();
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, bufferPosition + buffer.position()) < 0) break;
+            }
+            buffer.flip();
+            if (!buffer.hasRemaining()) throw new EOFException("Unexpected end of gzip file at " + bufferPosition + " byte.");
+        }
+
+        private int read() throws IOException {
+            if (!buffer.hasRemaining()) fill();
+            return buffer.get() & 0xFF;
+        }
+
+        private int readInt() throws IOException {
+            return read() | (read() << 8) | (read() << 16) | (read() << 24);
+        }
+
+        private void skip(int bytes) throws IOException {
+            for (int i = 0; i < bytes; i++) read();
+        }
+
+        private void skipString() throws IOException {
+            while (read() != 0) {
+                //zero-terminated
+            }
+        }
+
+        private void setInput(Inflater inflater) throws IOException {
+            if (!buffer.hasRemaining()) fill();
+            inflater.setInput(buffer.array(), buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        }
+
+        // bytes given to the inflater which are after the end of deflate data
+        private void unread(int bytes) {
+            buffer.position(buffer.position() - bytes);
+        }
+
+        private long getPosition() {
+            return bufferPosition + buffer.position();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.trackensure;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.stream.Collectors;
+
+// state of follow mode for the same files and options: where reading of every file has stopped and the records
+// which are read before (unique records with their counts if isUniqRecords). If isGatherMessages, joined records are kept
+// instead of read ones (with unique records if isUniqRecords), so every call joins only the appended records.
+// States are kept in memory, the least recently used ones are removed if there are more than MAX_SESSIONS of them
+// or they are not used longer than LogFileParserConfig.getFollowSessionTtl()
+public class FollowedLogFiles {
+    private static final int MAX_SESSIONS = 16;
+    private static final Map<String, FollowedLogFiles> SESSION_MAP = new LinkedHashMap<String, FollowedLogFiles>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FollowedLogFiles> eldest) {
+            return size() > MAX_SESSIONS;
+        }
+    };
+
+    private final boolean isUniqRecords;
+    private final boolean isGatherMessages;
+    private final Map<File, LogFileReader.FollowState> followStateMap = new HashMap<>();
+    private long lastUsedTime;
+    private TokenDictionary tokenDictionary;
+    private UniqLogRecordCollection uniqLogRecordCollection;
+    private LogRecordStore logRecordStore;
+    private Map<String, SimilarMessagesJoiner> similarMessagesJoinerMap;
+    //records which are read, but not joined yet, if isGatherMessages
+    private final List<LogRecord> appendedLogRecordList = new ArrayList<>();
+    //unique record -> joined record it is counted in, if isUniqRecords and isGatherMessages
+    private Map<LogRecord, LogRecord> joinedLogRecordMap;
+
+    private FollowedLogFiles(boolean isUniqRecords, boolean isGatherMessages) {
+        this.isUniqRecords = isUniqRecords;
+        this.isGatherMessages = isGatherMessages;
+        reset();
+    }
+
+    // callers must synchronize on the returned state while they use it
+    public static FollowedLogFiles get(List<File> sourceFiles, Charset charset, boolean isUniqRecords, boolean isGatherMessages,
+                                       LogRecordFilter filter, boolean isTeStackTraceOnly) {
+        String key = sourceFiles.stream().map(File::getAbsolutePath).collect(Collectors.joining("|"))
+                + "|" + charset.name() + "|" + isUniqRecords + "|" + isGatherMessages + "|" + filter + "|" + isTeStackTraceOnly;
+        long now = System.currentTimeMillis();
+        synchronized (SESSION_MAP) {
+            //the map is in the order of use, so idle states are the eldest
+            Iterator<FollowedLogFiles> iterator = SESSION_MAP.values().iterator();
+            while (iterator.hasNext() && now - iterator.next().lastUsedTime > LogFileParserConfig.getFollowSessionTtl()) {
+                iterator.remove();
+            }
+            FollowedLogFiles followedLogFiles = SESSION_MAP.computeIfAbsent(key, k -> new FollowedLogFiles(isUniqRecords, isGatherMessages));
+            followedLogFiles.lastUsedTime = now;
+            return followedLogFiles;
+        }
+    }
+
+    // forgets all read records, files are read from the start
+    public void reset() {
+        followStateMap.clear();
+        appendedLogRecordList.clear();
+        tokenDictionary = new TokenDictionary();
+        uniqLogRecordCollection = isUniqRecords ? new UniqLogRecordCollection() : null;
+        logRecordStore = (!isUniqRecords && !isGatherMessages) ? new LogRecordStore() : null;
+        similarMessagesJoinerMap = isGatherMessages ? new LinkedHashMap<>() : null;
+        joinedLogRecordMap = (isUniqRecords && isGatherMessages) ? new IdentityHashMap<>() : null;
+    }
+
+    public LogFileReader.FollowState getFollowState(File sourceFile) {
+        return followStateMap.get(sourceFile);
+    }
+
+    public void setFollowState(File sourceFile, LogFileReader.FollowState followState) {
+        followStateMap.put(sourceFile, followState);
+    }
+
+    public TokenDictionary getTokenDictionary() {
+        return tokenDictionary;
+    }
+
+    // duplicates are counted by the reader there, only unique records are passed to add()
+    public UniqLogRecordCollection getUniqLogRecordCollection() {
+        return uniqLogRecordCollection;
+    }
+
+    public void add(LogRecord logRecord) {
+        if (isGatherMessages) {
+            if (isUniqRecords) uniqLogRecordCollection.add(logRecord);
+            appendedLogRecordList.add(logRecord);
+        } else if (isUniqRecords) {
+            uniqLogRecordCollection.add(logRecord);
+        } else {
+            logRecordStore.add(logRecord);
+        }
+    }
+
+    // read records with the last records of files, which are not finished yet. If isGatherMessages, joined records
+    // are copied, so the last records are joined to the copies and the next calls don't change returned records
+    public Collection<LogRecord> getLogRecordCollection(List<LogRecord> lastLogRecordList) throws TEAppException {
+        if (isUniqRecords) {
+            for (LogRecord lastLogRecord : lastLogRecordList) {
+                lastLogRecord.setFingerprint(LogRecordFingerprint.of(lastLogRecord.getPriority(), lastLogRecord.getCategory(), lastLogRecord.getMessage(), lastLogRecord.getStackTrace()));
+            }
+        }
+        if (isGatherMessages) {
+            joinAppendedLogRecords();
+            return getJoinedLogRecordCollection(lastLogRecordList);
+        }
+        if (isUniqRecords) {
+            UniqLogRecordCollection logRecordCollection = new UniqLogRecordCollection();
+            for (LogRecord uniqLogRecord : uniqLogRecordCollection.getUniqLogRecordList()) {
+                logRecordCollection.add(new LogRecord(uniqLogRecord));
+            }
+            for (LogRecord lastLogRecord : lastLogRecordList) {
+                if (!logRecordCollection.countDuplicate(lastLogRecord)) logRecordCollection.add(lastLogRecord);
+            }
+            return logRecordCollection.getUniqLogRecordList();
+        }
+        List<LogRecord> logRecordCollection = new ArrayList<>(logRecordStore.getSortedLogRecordList());
+        logRecordCollection.addAll(lastLogRecordList);
+        return logRecordCollection;
+    }
+
+    // records appended by one call are joined in the order of parseLogFiles(), so the first call joins them the same way
+    private void joinAppendedLogRecords() throws TEAppException {
+        Collections.sort(appendedLogRecordList);
+        for (LogRecord logRecord : appendedLogRecordList) {
+            //unique records are joined by copies, their counts are changed by the reader later
+            LogRecord joinedLogRecord = similarMessagesJoinerMap
+                    .computeIfAbsent(SimilarMessagesJoiner.getGroupKey(logRecord), groupKey -> new SimilarMessagesJoiner(tokenDictionary))
+                    .add(isUniqRecords ? new LogRecord(logRecord) : logRecord);
+            if (isUniqRecords) joinedLogRecordMap.put(logRecord, joinedLogRecord);
+        }
+        appendedLogRecordList.clear();
+    }
+
+    private Collection<LogRecord> getJoinedLogRecordCollection(List<LogRecord> lastLogRecordList) throws TEAppException {
+        Map<LogRecord, LogRecord> copyMap = new IdentityHashMap<>();
+        for (SimilarMessagesJoiner similarMessagesJoiner : similarMessagesJoinerMap.values()) {
+            for (LogRecord joinedLogRecord : similarMessagesJoiner.getUniqLogRecordList()) {
+                LogRecord copy = copyJoinedLogRecord(joinedLogRecord);
+                //counts of unique records are summed below
+                if (isUniqRecords) copy.setSimilarRowsQuantity(0);
+                copyMap.put(joinedLogRecord, copy);
+            }
+        }
+        if (isUniqRecords) {
+            for (LogRecord uniqLogRecord : uniqLogRecordCollection.getUniqLogRecordList()) {
+                addSimilarRows(copyMap.get(joinedLogRecordMap.get(uniqLogRecord)), uniqLogRecord);
+            }
+        }
+        List<LogRecord> notJoinedLastLogRecordList = new ArrayList<>();
+        for (LogRecord lastLogRecord : lastLogRecordList) {
+            LogRecord uniqLogRecord = isUniqRecords ? uniqLogRecordCollection.find(lastLogRecord) : null;
+            if (Objects.nonNull(uniqLogRecord)) {
+                addSimilarRows(copyMap.get(joinedLogRecordMap.get(uniqLogRecord)), lastLogRecord);
+                continue;
+            }
+            SimilarMessagesJoiner similarMessagesJoiner = similarMessagesJoinerMap.get(SimilarMessagesJoiner.getGroupKey(lastLogRecord));
+            LogRecord similarLogRecord = Objects.isNull(similarMessagesJoiner) ? null : similarMessagesJoiner.findSimilar(lastLogRecord);
+            if (Objects.isNull(similarLogRecord)) {
+                notJoinedLastLogRecordList.add(lastLogRecord);
+            } else {
+                similarMessagesJoiner.join(copyMap.get(similarLogRecord), lastLogRecord);
+            }
+        }
+        List<LogRecord> logRecordCollection = new ArrayList<>(copyMap.values());
+        logRecordCollection.addAll(notJoinedLastLogRecordList);
+        return logRecordCollection;
+    }
+
+    private static void addSimilarRows(LogRecord joinedLogRecord, LogRecord logRecord) {
+        joinedLogRecord.setSimilarRowsQuantity(joinedLogRecord.getSimilarRowsQuantity() + logRecord.getSimilarRowsQuantity());
+    }
+
+    // values of messages are changed by joining, so they are copied too
+    private static LogRecord copyJoinedLogRecord(LogRecord joinedLogRecord) {
+        LogRecord copy = new LogRecord(joinedLogRecord);
+        if (Objects.nonNull(joinedLogRecord.getMessageValues())) {
+            Map<Integer, Set<String>> messageValues = new TreeMap<>();
+            joinedLogRecord.getMessageValues().forEach((position, values) -> messageValues.put(position, new TreeSet<>(values)));
+            copy.setMessageValues(messageValues);
+        }
+        return copy;
+    }
+}
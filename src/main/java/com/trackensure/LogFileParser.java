@@ -1,286 +1,364 @@
 package com.trackensure;
 
-import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
-import java.io.*;
-import java.time.LocalDate;
-import java.time.LocalTime;
+import java.io.File;
+import java.nio.charset.Charset;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class LogFileParser {
     private static final Class<LogFileParser> CLAZZ = LogFileParser.class;
     private static final Logger logger = Logger.getLogger(CLAZZ);
 
-    private final int MAX_ROWS_FOR_SHEET = 1_000_000;
-    private final double CONFORMITY_POWER = 0.80;
-    private final Pattern LOGFILE_DATE_TIME_PATTERN = Pattern.compile("^\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3} ");
-    private List<Pattern> MESSAGE_PATTERN_LIST;
+    static final int MAX_ROWS_FOR_SHEET = 1_000_000;
+    private static final long MIN_FILE_RANGE_SIZE = 1024 * 1024;
 
     private final List<File> sourceFiles;
+    private final Charset charset;
     private final boolean isUniqRecords;
     private final boolean isGatherMessages;
     private final boolean isErrorsOnly;
     private final boolean isTeStackTraceOnly;
     private final int startRow;
     private final int finishRow;
+    private final LogFileParserProgress progress;
+    private final LogFileParserMetrics metrics;
+    private final TokenDictionary tokenDictionary = new TokenDictionary();
+    private LogRecordFilter filter;
+    //stages done by the thread which has called the parser, the readers of ranges have their own clocks
+    private LogFileParserMetrics.StageClock clock;
 
-    private String logName;
-    private LogRecord record;
-    private List<String> stackTrace;
-    private List<String> error;
-
-    private boolean wasMessage = false;
-    private boolean wasStackTrace = false;
-    private boolean isMoreThanLimitRow = false;
-    private boolean isNeedToInterrupt = false;
-
-    public LogFileParser(List<File> sourceFiles, boolean isUniqRecords, boolean isGatherMessages,
+    public LogFileParser(List<File> sourceFiles, Charset charset, boolean isUniqRecords, boolean isGatherMessages,
                          boolean isErrorsOnly, boolean isTeStackTraceOnly, int startRow, int finishRow) throws TEAppException {
+        this(sourceFiles, charset, isUniqRecords, isGatherMessages, isErrorsOnly, isTeStackTraceOnly, startRow, finishRow, new LogFileParserProgress());
+    }
+
+    // progress is updated while files are read, so it can be shown by other threads
+    public LogFileParser(List<File> sourceFiles, Charset charset, boolean isUniqRecords, boolean isGatherMessages,
+                         boolean isErrorsOnly, boolean isTeStackTraceOnly, int startRow, int finishRow,
+                         LogFileParserProgress progress) throws TEAppException {
         this.sourceFiles = sourceFiles;
+        this.charset = charset;
         this.isUniqRecords = isUniqRecords;
         this.isGatherMessages = isGatherMessages;
         this.isErrorsOnly = isErrorsOnly;
         this.isTeStackTraceOnly = isTeStackTraceOnly;
         this.startRow = startRow;
         this.finishRow = finishRow;
-        if(isGatherMessages){
-            MESSAGE_PATTERN_LIST = new ArrayList<Pattern>(){{
-                add(Pattern.compile("(?s)^(.*?)\\b*(\\d{2,4}-\\d{2}-\\d{2,4} \\d{2}:\\d{2}:\\d{2}[.,]?\\d*)\\b*(.*?)$"));   // 2023-02-02 22:25.123
-                add(Pattern.compile("(?s)^(.*?)\\b*(\\d{2}-\\w{3}-\\d{2}\\s\\d{2}:\\d{2}:\\d{2})\\b*(.*?)$"));              // 04-Dec-22 05:24:22
-                add(Pattern.compile("(?s)^(.*?)\\b*(\\d+\\.\\d+\\.\\d+\\.\\d+\\.\\d+)\\b*(.*?)$"));                         //14.123.02.86.7
-                add(Pattern.compile("(?s)^(.*?)\\b*(\\d+\\.\\d+\\.\\d+\\.\\d+)\\b*(.*?)$"));                                //141.101.238.127
-                add(Pattern.compile("(?s)^(.*?\\b*deviceToke=)([A-z0-9:-]+)\\b*(.*?)$"));                                   //deviceToke=cLZ5miNHQfmsMtlPRQvLIP:APA91bF3mKk1OwBjyvJ8P6pC6t-StR3wOuJTmTj--DYVoUZulsDWTWcMQ1WZ_t1tjHB_pjCQuSjoT6iRtLYEbUEZ1LgwIZdtO6yy3JhtIAkc90oVuO-WbJbRVb2Q1_GAFR2UzZX9z88_q13eJhWbLnkISqdZIjBeMnwa7W3cUrYn_i
-                add(Pattern.compile("(?s)^(.*?)\\b*(-\\d+\\.?\\d+)\\b*(.*?)$"));                                            // -25.897
-                add(Pattern.compile("(?s)^(.*?)\\b*(\\d+\\.\\d+)\\b*(.*?)$"));                                              // 25.897
-                add(Pattern.compile("(?s)^(.*?\\b*)(O\\w{1,2}-[Dd]uty)\\b*(.*?)$"));                                        //On-Duty
-            }};
-        }
+        this.progress = progress;
+        this.metrics = progress.getMetrics();
+        this.filter = LogRecordFilter.ALL.withErrorsOnly(isErrorsOnly);
     }
 
-    public List<List<LogRecord>> parseLogFiles() throws TEAppException {
-        Collection<LogRecord> logRecordCollection = readFilesToCollection();
-        //second pass if needed (joining similar records)
-        List<LogRecord> ListOfUniqLogRecords = (isGatherMessages) ? joinRecordWithSimilarMessages(logRecordCollection) : new ArrayList<>(logRecordCollection);
-        //sort and split collection by MAX_ROWS_FOR_SHEET records
-        Collections.sort(ListOfUniqLogRecords);
-        return splitCollectionToSheets(ListOfUniqLogRecords);
+    // only records kept by the filter (and by isErrorsOnly) are parsed, the rest are skipped by readers of files.
+    // Ranges which are not cached yet are written to ParsedLogCache with all their records, unless
+    // LogFileParserConfig.isCacheFilteredParsing() is off
+    public void setFilter(LogRecordFilter filter) {
+        this.filter = filter.withErrorsOnly(isErrorsOnly);
     }
 
-    private Collection<LogRecord> readFilesToCollection() throws TEAppException {
-        Collection<LogRecord> logRecordCollection = (isUniqRecords) ? new LinkedHashSet<>() : new ArrayList<>();
-        Map<Integer, Integer> similarRowsQuantityMapByHash = (isUniqRecords) ? new HashMap<>() : null;
-        for (File sourceFile : sourceFiles) {
-            try {
-                LineNumberReader reader = new LineNumberReader(new FileReader(sourceFile));
-                logger.info("readAllFilesToCollection(): start reading file " + sourceFile.getName() + ".");
-                this.logName = sourceFile.getName();
-                reader.lines()
-                        .skip((startRow > 0) ? startRow - 1 : 0)
-                        .filter(row -> !isNeedToInterrupt)
-                        .forEach(row -> readRowFromFile(logRecordCollection, row.trim(), reader.getLineNumber(), similarRowsQuantityMapByHash));
-                reader.close();
-                logger.info("readFilesToCollection(): finish reading file " + sourceFile.getName() + ".");
-            } catch (FileNotFoundException e) {
-                logger.error("readFilesToCollection(): file " + sourceFile.getName() + " not exist." , e);
-                throw new TEAppException("File not exist: " + sourceFile.getName(), e);
-            } catch (IOException e) {
-                logger.error("readFilesToCollection: error while reading file " + sourceFile.getName(), e);
-                throw new TEAppException("Error while reading file: " + sourceFile.getName(), e);
+    // records which are not unique and not joined are passed by parseAndSortLogFiles() with limited memory
+    public List<List<LogRecord>> parseLogFiles() throws TEAppException {
+        clock = metrics.startClock(LogFileParserMetrics.Stage.READ);
+        try {
+            Collection<LogRecord> logRecordCollection = readFilesToCollection();
+            //second pass if needed (joining similar records)
+            List<LogRecord> ListOfUniqLogRecords;
+            if (isGatherMessages) {
+                clock.switchTo(LogFileParserMetrics.Stage.CLUSTER);
+                ListOfUniqLogRecords = joinRecordWithSimilarMessages(logRecordCollection, tokenDictionary);
+                metrics.setClusters(ListOfUniqLogRecords.size());
+            } else {
+                ListOfUniqLogRecords = new ArrayList<>(logRecordCollection);
             }
+            //sort and split collection by MAX_ROWS_FOR_SHEET records
+            clock.switchTo(LogFileParserMetrics.Stage.SORT);
+            Collections.sort(ListOfUniqLogRecords);
+            clock.switchTo(LogFileParserMetrics.Stage.SPLIT);
+            return splitCollectionToSheets(ListOfUniqLogRecords);
+        } finally {
+            clock.stop();
         }
-        recordAdd(record, stackTrace, error, logRecordCollection, similarRowsQuantityMapByHash); //add last record of last file
+    }
 
-        for (LogRecord logRecord : logRecordCollection) {
-            logRecord.setSimilarRowsQuantity((isUniqRecords) ? similarRowsQuantityMapByHash.get(logRecord.hashCode()) : 1);
+    // streaming mode: records are passed to logRecordConsumer in the order of files and rows as soon as they are read,
+    // without keeping them in memory, so they are not sorted, deduplicated or joined
+    public void parseLogFiles(LogRecordConsumer logRecordConsumer) throws TEAppException {
+        if (isUniqRecords || isGatherMessages)
+            throw new TEAppException("Streaming mode doesn't support unique records and gathering of messages.");
+        clock = metrics.startClock(LogFileParserMetrics.Stage.READ);
+        try {
+            readFiles(measure(LogFileParserMetrics.Stage.EXPORT, logRecordConsumer));
+        } finally {
+            clock.stop();
         }
+    }
 
-        return logRecordCollection;
+    // records are passed to logRecordConsumer sorted like parseLogFiles() does, but the memory is limited:
+    // records which don't fit into LogFileParserConfig.getSortMemoryBudget() are sorted in temporary files
+    public void parseAndSortLogFiles(LogRecordConsumer logRecordConsumer) throws TEAppException {
+        if (isUniqRecords || isGatherMessages)
+            throw new TEAppException("Sorting with limited memory doesn't support unique records and gathering of messages.");
+        clock = metrics.startClock(LogFileParserMetrics.Stage.READ);
+        try (LogRecordSorter logRecordSorter = new LogRecordSorter(LogFileParserConfig.getSortMemoryBudget(), LogFileParserConfig.getSortTempDir())) {
+            readFiles(measure(LogFileParserMetrics.Stage.SORT, logRecordSorter::add));
+            clock.switchTo(LogFileParserMetrics.Stage.SORT);
+            logRecordSorter.forEachSorted(measure(LogFileParserMetrics.Stage.EXPORT, logRecordConsumer));
+        } finally {
+            clock.stop();
+        }
     }
 
-    private void readRowFromFile(Collection<LogRecord> logRecordCollection, String row, int rowNumber, Map<Integer, Integer> similarRowsQuantityMapByHash) throws RuntimeException {
+    // follow mode for growing log files: only rows appended to the files after the previous call with the same files
+    // and options are read, their records are added to the records (and counts of unique records) read before.
+    // Only the appended records are joined to the records with similar messages joined before,
+    // and records are sorted again by every call. If a file is rotated or truncated, all files are read again
+    public List<List<LogRecord>> followLogFiles() throws TEAppException {
+        if (startRow != 0 || finishRow != 0)
+            throw new TEAppException("Follow mode doesn't support range of rows.");
+        if (sourceFiles.stream().anyMatch(CompressedLogInputStream::isCompressed))
+            throw new TEAppException("Follow mode doesn't support compressed files.");
+        FollowedLogFiles followedLogFiles = FollowedLogFiles.get(sourceFiles, charset, isUniqRecords, isGatherMessages, filter, isTeStackTraceOnly);
+        List<LogRecord> logRecordList;
+        //files are read by this thread, their readers measure reading
+        clock = metrics.createClock();
         try {
-            if (finishRow != 0 && rowNumber > finishRow)
-                isMoreThanLimitRow = true;
-            if (row.contains("** /")) { // label of start log
-                this.logName = row.substring(row.lastIndexOf("/") + 1, row.indexOf(" **"));
-                if (Objects.nonNull(error)) {
-                    if (Objects.isNull(record)) {
-                        record = new LogRecord();
-                        record.setRowNumber(rowNumber);
+            synchronized (followedLogFiles) {
+                for (File sourceFile : sourceFiles) {
+                    LogFileReader.FollowState followState = followedLogFiles.getFollowState(sourceFile);
+                    if (Objects.nonNull(followState) && !LogFileReader.isFollowedFile(sourceFile, followState)) {
+                        logger.info("followLogFiles(): file " + sourceFile.getName() + " is rotated or truncated, all files are read again.");
+                        followedLogFiles.reset();
+                        break;
+                    }
+                }
+                List<LogRecord> lastLogRecordList = new ArrayList<>();
+                try {
+                    for (File sourceFile : sourceFiles) {
+                        LogFileReader logFileReader = new LogFileReader(sourceFile, charset, isGatherMessages, isErrorsOnly, isTeStackTraceOnly, 0, 0,
+                                followedLogFiles.getTokenDictionary(), followedLogFiles.getUniqLogRecordCollection(), followedLogFiles::add);
+                        logFileReader.setMetrics(metrics);
+                        logFileReader.setFilter(filter);
+                        followedLogFiles.setFollowState(sourceFile, logFileReader.readAppendedRows(followedLogFiles.getFollowState(sourceFile), lastLogRecordList::add));
                     }
-                    record.setError(error);
+                    if (isGatherMessages) clock.switchTo(LogFileParserMetrics.Stage.CLUSTER);
+                    logRecordList = new ArrayList<>(followedLogFiles.getLogRecordCollection(lastLogRecordList));
+                } catch (TEAppException | RuntimeException e) {
+                    //records of the file can be added or joined partly
+                    followedLogFiles.reset();
+                    throw e;
                 }
-                wasMessage = false;
-                wasStackTrace = false;
-            } else if (LOGFILE_DATE_TIME_PATTERN.matcher(row).find()) { //row starts with date-time
-                if (!isMoreThanLimitRow) {
-                    recordAdd(record, stackTrace, error, logRecordCollection, similarRowsQuantityMapByHash);
-                    error = null;
-                    stackTrace = null;
-                    record = fillMainFields(row);
-                    record.setRowNumber(rowNumber);
-                    wasMessage = true;
-                    wasStackTrace = false;
-                } else
-                    isNeedToInterrupt = true;
-            } else if (row.startsWith("at ") || row.matches("... \\d+ more")) { //if stackTrace row
-                stackTrace = fillStackTrace(row, stackTrace, isTeStackTraceOnly);
-                wasMessage = false;
-                wasStackTrace = true;
-            } else if (row.contains("## /")) { //label of end log)
-                    if (!isMoreThanLimitRow) {
-                    recordAdd(record, stackTrace, error, logRecordCollection, similarRowsQuantityMapByHash);
-                    error = null;
-                    stackTrace = null;
-                    logName = "";
-                    record = null;
-                    wasMessage = false;
-                    wasStackTrace = false;
-                } else
-                    isNeedToInterrupt = true;
-            } else if (!row.equals("") && !row.equals("--")) { //other (unparsed) row
-                if (wasMessage) {
-                    if (Objects.isNull(record.getMessage())) {
-                        record.setMessage(new ArrayList<>());
+                if (isGatherMessages) {
+                    for (LogRecord logRecord : logRecordList) {
+                        setJoinedMessageStr(logRecord, followedLogFiles.getTokenDictionary());
                     }
-                    record.getMessage().add(row);
-                } else if (wasStackTrace) {
-                    stackTrace.add(row);
-                } else {
-                    if (!isMoreThanLimitRow) {
-                        if (Objects.isNull(record)) {
-                            record = new LogRecord();
-                            record.setRowNumber(rowNumber);
-                        }
-                        if (Objects.isNull(error)) {
-                            error = new ArrayList<>();
-                        }
-                        error.add(row);
-                    } else
-                        isNeedToInterrupt = true;
+                    metrics.setClusters(logRecordList.size());
                 }
             }
-        } catch (Exception e) {
-            logger.error("parseFileToRecords()", e);
-            throw new RuntimeException(e.getMessage(), e.getCause());
+            clock.switchTo(LogFileParserMetrics.Stage.SORT);
+            logRecordList.sort(LogRecordStore.LOG_RECORD_ORDER);
+            clock.switchTo(LogFileParserMetrics.Stage.SPLIT);
+            return splitCollectionToSheets(logRecordList);
+        } finally {
+            clock.stop();
         }
     }
 
-    private LogRecord fillMainFields(String row) {
-        String dateString = row.substring(0, 10);
-        String timeString = row.substring(11, 23).replace(',', '.');
-        String priorityString = row.substring(24, 29).trim();
-        String thread = row.substring(row.indexOf("[") + 1, row.indexOf("] ")).trim();
-        String category = row.substring(row.indexOf("] ") + 1, row.indexOf(" -", row.indexOf("] ") + 1)).trim();
-        String messageString = row.substring((row.indexOf(" -", row.indexOf("] ") + 1) + 2))
-                .replace("\t\t", "\t")
-                .replace("\\s\t", "\\s")
-                .replace("\t\\s", "\\s")
-                .trim();
-        List<String> message = null;
-        if (!messageString.equals("")) {
-            message = new ArrayList<>();
-            message.add(messageString);
+    private Collection<LogRecord> readFilesToCollection() throws TEAppException {
+        if (isUniqRecords) {
+            UniqLogRecordCollection uniqLogRecordCollection = new UniqLogRecordCollection();
+            readFiles(logRecord -> {
+                if (uniqLogRecordCollection.countDuplicate(logRecord)) metrics.addDuplicateRecords(1);
+                else uniqLogRecordCollection.add(logRecord);
+            });
+            return uniqLogRecordCollection.getUniqLogRecordList();
+        } else {
+            List<LogRecord> logRecordList = new ArrayList<>();
+            readFiles(logRecordList::add);
+            return logRecordList;
         }
-        LocalDate date = LocalDate.parse(dateString);
-        LocalTime time = LocalTime.parse(timeString);
-        Level priority = Level.toLevel(priorityString);
-        return new LogRecord(logName, date, time, priority, thread, category, message);
     }
 
-    private List<String> fillStackTrace(String row, List<String> stackTrace, boolean isTeStackTraceOnly) {
-        if (Objects.isNull(stackTrace)) {
-            stackTrace = new ArrayList<>();
+    private void readFiles(LogRecordConsumer logRecordConsumer) throws TEAppException {
+        boolean isSplitFilesToRanges = startRow == 0 && finishRow == 0;
+        long fileRangeSize = getFileRangeSize();
+        //rows of row range are found through the index of rows, so only whole files are cached
+        ParsedLogCache parsedLogCache = (isSplitFilesToRanges && LogFileParserConfig.getCacheSize() > 0)
+                ? new ParsedLogCache(LogFileParserConfig.getCacheDir(), LogFileParserConfig.getCacheSize(), charset) : null;
+        List<FileRange> fileRangeList = new ArrayList<>();
+        for (File sourceFile : sourceFiles) {
+            if (CompressedLogInputStream.isCompressed(sourceFile)) {
+                //compressed file is read by one thread with its own decompression threads, its records are not cached
+                fileRangeList.add(new FileRange(sourceFile, -1, -1));
+            } else if (Objects.nonNull(parsedLogCache)) {
+                addFileRangesWithCache(fileRangeList, sourceFile, parsedLogCache, fileRangeSize);
+            } else if (isSplitFilesToRanges && sourceFile.length() > fileRangeSize) {
+                List<Long> rangeBoundList = LogFileReader.splitFileToRanges(sourceFile, charset, fileRangeSize);
+                for (int i = 0; i < rangeBoundList.size() - 1; i++) {
+                    fileRangeList.add(new FileRange(sourceFile, rangeBoundList.get(i), rangeBoundList.get(i + 1)));
+                }
+            } else {
+                fileRangeList.add(new FileRange(sourceFile, -1, -1));
+            }
         }
-        String stackTraceRow = (row.startsWith("at ")) ? row.substring(3) : row;
-        if (!isTeStackTraceOnly || !(stackTraceRow.startsWith("java")
-                || stackTraceRow.startsWith("org.")
-                || stackTraceRow.startsWith("com.zaxxer.hikari.pool")
-                || stackTraceRow.startsWith("com.sun.")
-                || stackTraceRow.startsWith("it.sauronsoftware.")
-                || stackTraceRow.startsWith("sun."))) {
-            stackTrace.add(stackTraceRow);
+        progress.setTotalBytes(sourceFiles.stream().mapToLong(File::length).sum());
+        int threadsQuantity = Math.min(fileRangeList.size(), LogFileParserConfig.getParserThreadsQuantity());
+        //not more than two ranges per thread and not more than the budget of bytes are read ahead, so memory doesn't
+        //depend on quantity and size of files. One range is read even if it is bigger than the budget
+        int maxReadAheadRanges = threadsQuantity * 2;
+        long readAheadBudget = LogFileParserConfig.getReadAheadBudget();
+        long readAheadBytes = 0;
+        //processors which are not used by readers of ranges finish their records
+        int finisherThreadsQuantity = LogFileParserConfig.getFinisherThreadsQuantity(threadsQuantity);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(threadsQuantity, 1));
+        try {
+            Deque<Future<FileRange>> futureQueue = new ArrayDeque<>();
+            int nextRangeIndex = 0;
+            int rowNumberShift = 0;
+            String logName = null;
+            List<FileRange> cachedFileRangeList = new ArrayList<>();
+            //merge results in the order of source files and ranges, so the output is the same as for sequential reading
+            for (int i = 0; i < fileRangeList.size(); i++) {
+                while (nextRangeIndex < fileRangeList.size() && futureQueue.size() < maxReadAheadRanges
+                        && (futureQueue.isEmpty() || readAheadBytes + fileRangeList.get(nextRangeIndex).getSize() <= readAheadBudget)) {
+                    FileRange nextFileRange = fileRangeList.get(nextRangeIndex++);
+                    readAheadBytes += nextFileRange.getSize();
+                    futureQueue.add(executor.submit(() -> readFileRange(nextFileRange, finisherThreadsQuantity)));
+                }
+                //the thread waits for readers out of stages
+                clock.pause();
+                FileRange fileRange = futureQueue.poll().get();
+                clock.switchTo(LogFileParserMetrics.Stage.READ);
+                fileRangeList.set(i, null);
+                if (fileRange.fromByte <= 0) {
+                    rowNumberShift = 0;
+                    logName = fileRange.sourceFile.getName();
+                    cachedFileRangeList.clear();
+                }
+                for (LogRecord logRecord : fileRange.logRecordCollection) {
+                    //rows of not first range are numbered from the start of range and don't know the name of log
+                    logRecord.setRowNumber(logRecord.getRowNumber() + rowNumberShift);
+                    if (Objects.isNull(logRecord.getLogName()) && Objects.nonNull(logRecord.getDate())) {
+                        logRecord.setLogName(logName);
+                    }
+                    logRecordConsumer.accept(logRecord);
+                }
+                readAheadBytes -= fileRange.getSize();
+                progress.addReadBytes(fileRange.getSize());
+                progress.addParsedRecords(fileRange.logRecordCollection.size());
+                rowNumberShift += fileRange.logFileReader.getRowsQuantity();
+                if (Objects.nonNull(fileRange.logFileReader.getLogName())) {
+                    logName = fileRange.logFileReader.getLogName();
+                }
+                if (Objects.nonNull(fileRange.parsedLogCache)) {
+                    fileRange.logFileReader = null;
+                    fileRange.logRecordCollection = null;
+                    cachedFileRangeList.add(fileRange);
+                    if (i + 1 == fileRangeList.size() || fileRangeList.get(i + 1).sourceFile != fileRange.sourceFile) {
+                        putFileToCache(cachedFileRangeList);
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TEAppException) throw (TEAppException) e.getCause();
+            logger.error("readFiles()", e.getCause());
+            throw new TEAppException(e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TEAppException("Reading of files has been interrupted.", e);
+        } finally {
+            executor.shutdownNow();
         }
-        return stackTrace;
     }
 
-    private void recordAdd(LogRecord record, List<String> stackTrace, List<String> error, Collection<LogRecord> logRecordCollection, Map<Integer, Integer> similarRowsQuantityMapByHash) {
-        if (Objects.isNull(record) || (isErrorsOnly && record.getPriority() != Level.ERROR && record.getPriority() != Level.FATAL && record.getPriority() != Level.OFF)) return;
-        if (Objects.nonNull(stackTrace)) {
-            record.setStackTrace(stackTrace);
-            record.setStackTraceStr(String.join(System.lineSeparator(), record.getStackTrace()));
+    // ranges of the file which are in the cache are read from it, the rest of the file is split to ranges as usual
+    private void addFileRangesWithCache(List<FileRange> fileRangeList, File sourceFile, ParsedLogCache parsedLogCache,
+                                        long fileRangeSize) throws TEAppException {
+        if (!sourceFile.isFile()) {
+            fileRangeList.add(new FileRange(sourceFile, -1, -1));
+            return;
         }
-        if (Objects.nonNull(record.getMessage()) && !record.getMessage().isEmpty()) {
-            String messageStr = String.join(System.lineSeparator(), record.getMessage());
-            record.setMessageStr(messageStr);
-            List<String> tokenList = new ArrayList<>();
-            createTokenList(messageStr, tokenList);
-            record.setMessageTokens(tokenList);
+        //the file is read as it was at this moment if all its ranges are cached, even if it grows later
+        long fileLength = sourceFile.length();
+        long lastModified = sourceFile.lastModified();
+        List<ParsedLogCache.CachedRange> cachedRangeList = parsedLogCache.getCachedRanges(sourceFile);
+        long fromByte = 0;
+        for (ParsedLogCache.CachedRange cachedRange : cachedRangeList) {
+            fileRangeList.add(new FileRange(sourceFile, cachedRange.getFromByte(), cachedRange.getToByte(), parsedLogCache, cachedRange, lastModified));
+            fromByte = cachedRange.getToByte();
         }
-        if (Objects.nonNull(error)) {
-            record.setError(error);
-            record.setErrorStr(String.join(System.lineSeparator(), record.getError()));
-        }
-        logRecordCollection.add(record);
-        if (isUniqRecords) {
-            similarRowsQuantityMapByHash.merge(record.hashCode(), 1, Integer::sum);
+        if (!cachedRangeList.isEmpty() && fromByte >= fileLength) return;
+        List<Long> rangeBoundList = LogFileReader.splitFileToRanges(sourceFile, charset, fromByte, fileRangeSize);
+        for (int i = 0; i < rangeBoundList.size() - 1; i++) {
+            fileRangeList.add(new FileRange(sourceFile, rangeBoundList.get(i), rangeBoundList.get(i + 1), parsedLogCache, null, lastModified));
         }
     }
 
-    private void createTokenList(String messageStr, List<String> tokenList) {
-        if(messageStr.isEmpty()) return;
-        if(isGatherMessages) {
-            for (Pattern pattern : MESSAGE_PATTERN_LIST) {
-                Matcher matcher = pattern.matcher(messageStr);
-                if (matcher.find()) {
-                    createTokenList(messageStr.substring(matcher.start(1), matcher.end(1)), tokenList);
-                    tokenList.add(messageStr.substring(matcher.start(2), matcher.end(2)));
-                    createTokenList(messageStr.substring(matcher.start(3), matcher.end(3)), tokenList);
-                    return;
-                }
+    // the file is cached only if records of all its ranges are written, otherwise written records are removed
+    private void putFileToCache(List<FileRange> fileRangeListOfFile) {
+        if (fileRangeListOfFile.stream().allMatch(fileRange -> fileRange.isReadFromCache)) return;
+        FileRange lastFileRange = fileRangeListOfFile.get(fileRangeListOfFile.size() - 1);
+        if (fileRangeListOfFile.stream().allMatch(fileRange -> Objects.nonNull(fileRange.cachedRange))) {
+            lastFileRange.parsedLogCache.putCachedRanges(lastFileRange.sourceFile, lastFileRange.toByte, lastFileRange.lastModified,
+                    fileRangeListOfFile.stream().map(fileRange -> fileRange.cachedRange).collect(Collectors.toList()));
+        } else {
+            for (FileRange fileRange : fileRangeListOfFile) {
+                if (!fileRange.isReadFromCache && Objects.nonNull(fileRange.cachedRange)) lastFileRange.parsedLogCache.deleteCachedRange(fileRange.cachedRange);
             }
         }
-        tokenList.addAll(Arrays.asList(messageStr.split("\\b")));
     }
 
-    private List<LogRecord> joinRecordWithSimilarMessages(Collection<LogRecord> logRecordCollection) throws TEAppException{
+    private FileRange readFileRange(FileRange fileRange, int finisherThreadsQuantity) throws TEAppException {
+        if (isUniqRecords) {
+            //duplicates are counted by the reader, only unique records are passed to the collection
+            UniqLogRecordCollection uniqLogRecordCollection = new UniqLogRecordCollection();
+            fileRange.logRecordCollection = uniqLogRecordCollection.getUniqLogRecordList();
+            fileRange.logFileReader = new LogFileReader(fileRange.sourceFile, charset, isGatherMessages, isErrorsOnly, isTeStackTraceOnly, startRow, finishRow, tokenDictionary, uniqLogRecordCollection, uniqLogRecordCollection::add, finisherThreadsQuantity);
+        } else {
+            List<LogRecord> logRecordList = new ArrayList<>();
+            fileRange.logRecordCollection = logRecordList;
+            fileRange.logFileReader = new LogFileReader(fileRange.sourceFile, charset, isGatherMessages, isErrorsOnly, isTeStackTraceOnly, startRow, finishRow, tokenDictionary, null, logRecordList::add, finisherThreadsQuantity);
+        }
+        fileRange.logFileReader.setMetrics(metrics);
+        fileRange.logFileReader.setFilter(filter);
+        if (Objects.nonNull(fileRange.cachedRange)) {
+            fileRange.isReadFromCache = fileRange.logFileReader.readCachedRange(fileRange.cachedRange);
+            if (fileRange.isReadFromCache) return fileRange;
+        }
+        if (fileRange.fromByte < 0) {
+            fileRange.logFileReader.readFile();
+        } else if (Objects.isNull(fileRange.parsedLogCache) || (!filter.isEmpty() && !LogFileParserConfig.isCacheFilteredParsing())) {
+            //records of filtered parsing are not cached, so rejected records are skipped without creating them
+            fileRange.cachedRange = null;
+            fileRange.logFileReader.readFileRange(fileRange.fromByte, fileRange.toByte, null);
+        } else {
+            ParsedLogCache.RangeWriter rangeWriter = fileRange.parsedLogCache.createRangeWriter(fileRange.sourceFile, fileRange.fromByte, fileRange.toByte);
+            fileRange.logFileReader.readFileRange(fileRange.fromByte, fileRange.toByte, rangeWriter);
+            fileRange.cachedRange = Objects.isNull(rangeWriter) ? null : rangeWriter.finish(fileRange.logFileReader.getRowsQuantity(), fileRange.logFileReader.getLogName());
+        }
+        return fileRange;
+    }
+
+    private List<LogRecord> joinRecordWithSimilarMessages(Collection<LogRecord> logRecordCollection, TokenDictionary tokenDictionary) throws TEAppException{
         logger.info("joinRecordWithSimilarMessages(): start removing record with similar messages.");
         Map<String, Set<LogRecord>> duplicatesMap = logRecordCollection.stream()
-                .collect(Collectors.groupingBy(logRecord -> logRecord.getPriority() + logRecord.getCategory() + logRecord.getStackTraceStr(), Collectors.toCollection(TreeSet<LogRecord>::new)));
+                .collect(Collectors.groupingBy(SimilarMessagesJoiner::getGroupKey, Collectors.toCollection(TreeSet<LogRecord>::new)));
         List<LogRecord> allUniqLogRecordsList = new ArrayList<>();
         List<LogRecord> oneGroupOfUniqLogRecordsList;
-        boolean isUniq;
         try {
             for (Set<LogRecord> duplicatesSet : duplicatesMap.values()) {
-                oneGroupOfUniqLogRecordsList = new ArrayList<>();
-                LogRecord firstLogRecord = duplicatesSet.stream().findFirst().orElse(null);
-                oneGroupOfUniqLogRecordsList.add(firstLogRecord);
-                duplicatesSet.remove(firstLogRecord);
-                for (LogRecord notFirstLogRecord : duplicatesSet) {
-                    isUniq = true;
-                    for (LogRecord uniqLogRecord : oneGroupOfUniqLogRecordsList) {
-                        if (isEqualLogRecords(uniqLogRecord, notFirstLogRecord)) {
-                            join2LogRecords(uniqLogRecord, notFirstLogRecord);
-                            isUniq = false;
-                            break;
-                        }
-                    }
-                    if (isUniq) oneGroupOfUniqLogRecordsList.add(notFirstLogRecord);
+                SimilarMessagesJoiner similarMessagesJoiner = new SimilarMessagesJoiner(tokenDictionary);
+                for (LogRecord logRecord : duplicatesSet) {
+                    similarMessagesJoiner.add(logRecord);
                 }
+                oneGroupOfUniqLogRecordsList = similarMessagesJoiner.getUniqLogRecordList();
                 for (LogRecord uniqLogRecord : oneGroupOfUniqLogRecordsList) {
-                    Map<Integer, Set<String>> logRecordValuesMap = uniqLogRecord.getMessageValues();
-                    if (Objects.nonNull(logRecordValuesMap)) {
-                        uniqLogRecord.setMessageValuesStr(logRecordValuesMap
-                                .entrySet().stream()
-                                .map(entry -> "${" + entry.getKey() + "} = " + String.join(" / ", entry.getValue()))
-                                .collect(Collectors.joining(System.lineSeparator()))
-                        );
-                        uniqLogRecord.setMessageStr(String.join("", uniqLogRecord.getMessageTokens()));
-                    }
+                    setJoinedMessageStr(uniqLogRecord, tokenDictionary);
                 }
                 allUniqLogRecordsList.addAll(oneGroupOfUniqLogRecordsList);
             }
@@ -292,71 +370,88 @@ public class LogFileParser {
         return allUniqLogRecordsList;
     }
 
-    private boolean isEqualLogRecords (LogRecord logRecord1, LogRecord logRecord2) {
-        int equalTokenCount = 0;
-        if(Objects.isNull(logRecord1.getMessageTokens()) || Objects.isNull(logRecord2.getMessageTokens())) return false;
-        else if (logRecord1.getMessageTokens().size() != logRecord2.getMessageTokens().size()) return false;
-        else if (logRecord1.getMessageTokens().size() <= 1) return false;
-        else {
-            for (int i = 0; i < logRecord1.getMessageTokens().size() ; i++) {
-                if (logRecord1.getMessageTokens().get(i).equals(logRecord2.getMessageTokens().get(i))) equalTokenCount++;
-            }
-            return ( (double) equalTokenCount / logRecord1.getMessageTokens().size() > CONFORMITY_POWER);
+    private static void setJoinedMessageStr(LogRecord uniqLogRecord, TokenDictionary tokenDictionary) {
+        Map<Integer, Set<String>> logRecordValuesMap = uniqLogRecord.getMessageValues();
+        if (Objects.nonNull(logRecordValuesMap)) {
+            uniqLogRecord.setMessageValuesStr(logRecordValuesMap
+                    .entrySet().stream()
+                    .map(entry -> "${" + entry.getKey() + "} = " + String.join(" / ", entry.getValue()))
+                    .collect(Collectors.joining(System.lineSeparator()))
+            );
+            uniqLogRecord.setMessageStr(tokenDictionary.join(uniqLogRecord.getMessageTokens()));
         }
     }
 
-    private void join2LogRecords (LogRecord mainLogRecord, LogRecord addedLogRecord) throws TEAppException {
-        try {
-            Map<Integer, Set<String>> mainLogRecordValuesMap = mainLogRecord.getMessageValues();
-            List<String> mainLogRecordMessageTokenList = mainLogRecord.getMessageTokens();
-            List<String> addedLogRecordMessageTokenList = addedLogRecord.getMessageTokens();
-            for (int i = 0; i < addedLogRecordMessageTokenList.size(); i++) {
-                String mainLogRecordMessageToken = mainLogRecordMessageTokenList.get(i);
-                String addedLogRecordMessageToken = addedLogRecordMessageTokenList.get(i);
-                if (!mainLogRecordMessageToken.equals(addedLogRecordMessageToken)) {
-                    if (mainLogRecordMessageToken.startsWith("${")) {
-                        mainLogRecordValuesMap.get(i).add(addedLogRecordMessageToken);
-                    } else {
-                        if (Objects.isNull(mainLogRecordValuesMap)) {
-                            mainLogRecordValuesMap = new TreeMap<>();
-                            mainLogRecord.setMessageValues(mainLogRecordValuesMap);
-                        }
-                        Set<String> mainLogRecordValuesSet = new TreeSet<>();
-                        mainLogRecordValuesSet.add(mainLogRecordMessageToken);
-                        mainLogRecordValuesSet.add(addedLogRecordMessageToken);
-                        mainLogRecordValuesMap.put(i,mainLogRecordValuesSet);
-                        mainLogRecordMessageTokenList.set(i, "${" + i + "}");
-                    }
-                }
-            }
-            mainLogRecord.setSimilarRowsQuantity(mainLogRecord.getSimilarRowsQuantity() + addedLogRecord.getSimilarRowsQuantity());
-        } catch (Exception e) {
-            logger.error("join2LogRecords(): mainLogRecord = " + mainLogRecord + "addedLogRecord = " + addedLogRecord, e);
-            throw new TEAppException(e.getMessage(), e.getCause());
-        }
+    // ranges are not bigger than LogFileParserConfig.getFileRangeSize() and than the share of one of two ranges of every
+    // parser thread in the read-ahead budget, so all threads are busy while the budget is kept
+    private static long getFileRangeSize() {
+        long readAheadRangeSize = LogFileParserConfig.getReadAheadBudget() / (2L * LogFileParserConfig.getParserThreadsQuantity());
+        return Math.min(LogFileParserConfig.getFileRangeSize(), Math.max(MIN_FILE_RANGE_SIZE, readAheadRangeSize));
+    }
+
+    // records passed to logRecordConsumer are measured as the stage, the clock is switched back after every record
+    private LogRecordConsumer measure(LogFileParserMetrics.Stage stage, LogRecordConsumer logRecordConsumer) {
+        return logRecord -> {
+            LogFileParserMetrics.Stage previousStage = clock.getStage();
+            clock.switchTo(stage);
+            logRecordConsumer.accept(logRecord);
+            clock.switchTo(previousStage);
+        };
     }
 
-    private List<List<LogRecord>> splitCollectionToSheets(List<LogRecord> uniqLogRecordListAssembled) throws TEAppException {
-        logger.info("splitCollectionToSheets(): start splitting collection to sheets.");
-        List<List<LogRecord>> logRecordListAssembled = new ArrayList<>();
-        int skipRowsNumber = 0;
-        int sheetQuantity = uniqLogRecordListAssembled.size() / MAX_ROWS_FOR_SHEET + 1;
-        for (int i = 0; i < sheetQuantity; i++) {
-            List<LogRecord> maxRowsForSheetLogRecordList = new ArrayList<>();
-            try {
-                uniqLogRecordListAssembled.stream()
-                        .skip(skipRowsNumber)
-                        .limit(MAX_ROWS_FOR_SHEET)
-                        .forEach(maxRowsForSheetLogRecordList::add);
-            } catch (Exception e) {
-                logger.error("splitCollectionToSheets(): collection size = " + uniqLogRecordListAssembled.size()
-                        + ", MAX_ROWS_FOR_SHEET = " + MAX_ROWS_FOR_SHEET + ", sheet = " + i + " of " + sheetQuantity, e);
-                throw new TEAppException(e.getMessage(), e.getCause());
+    // sheets are views of the sorted list, nothing is copied
+    private List<List<LogRecord>> splitCollectionToSheets(List<LogRecord> uniqLogRecordListAssembled) {
+        int sheetQuantity = Math.max(1, (uniqLogRecordListAssembled.size() + MAX_ROWS_FOR_SHEET - 1) / MAX_ROWS_FOR_SHEET);
+        logger.info("splitCollectionToSheets(): " + uniqLogRecordListAssembled.size() + " records are split to " + sheetQuantity + " sheets.");
+        return new AbstractList<List<LogRecord>>() {
+            @Override
+            public List<LogRecord> get(int index) {
+                if (index < 0 || index >= sheetQuantity)
+                    throw new IndexOutOfBoundsException("sheet = " + index + " of " + sheetQuantity);
+                int fromIndex = index * MAX_ROWS_FOR_SHEET;
+                return uniqLogRecordListAssembled.subList(fromIndex, Math.min(fromIndex + MAX_ROWS_FOR_SHEET, uniqLogRecordListAssembled.size()));
             }
-            logRecordListAssembled.add(maxRowsForSheetLogRecordList);
-            skipRowsNumber += MAX_ROWS_FOR_SHEET;
+
+            @Override
+            public int size() {
+                return sheetQuantity;
+            }
+        };
+    }
+
+    public interface LogRecordConsumer {
+        void accept(LogRecord logRecord) throws TEAppException;
+    }
+
+    // the whole file if fromByte < 0.
+    // If parsedLogCache is not null, records are read from cachedRange or written to the cache
+    private static class FileRange {
+        private final File sourceFile;
+        private final long fromByte;
+        private final long toByte;
+        private final ParsedLogCache parsedLogCache;
+        private final long lastModified;
+        private ParsedLogCache.CachedRange cachedRange;
+        private boolean isReadFromCache;
+        private LogFileReader logFileReader;
+        private Collection<LogRecord> logRecordCollection;
+
+        private FileRange(File sourceFile, long fromByte, long toByte) {
+            this(sourceFile, fromByte, toByte, null, null, 0);
+        }
+
+        private FileRange(File sourceFile, long fromByte, long toByte, ParsedLogCache parsedLogCache, ParsedLogCache.CachedRange cachedRange, long lastModified) {
+            this.sourceFile = sourceFile;
+            this.fromByte = fromByte;
+            this.toByte = toByte;
+            this.parsedLogCache = parsedLogCache;
+            this.cachedRange = cachedRange;
+            this.lastModified = lastModified;
+        }
+
+        // bytes of the source file, a compressed file is counted by its compressed length
+        private long getSize() {
+            return (fromByte < 0) ? sourceFile.length() : toByte - fromByte;
         }
-        logger.info("splitCollectionToSheets(): finish splitting collection to sheets.");
-        return logRecordListAssembled;
     }
 }
@@ -0,0 +1,144 @@
+package com.trackensure;
+
+import java.io.File;
+
+public final class LogFileParserConfig {
+    private static final String PREFIX = "logFileParser.";
+
+    private LogFileParserConfig() {
+    }
+
+    // -DlogFileParser.parserThreads=N, number of files (or file ranges) parsed at the same time
+    public static int getParserThreadsQuantity() {
+        return Math.max(1, Integer.getInteger(PREFIX + "parserThreads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    // -DlogFileParser.decompressThreads=N, members of compressed files (gzip members, zip entries) decompressed at the same time,
+    // the threads are shared by all compressed files which are read
+    public static int getDecompressThreadsQuantity() {
+        return Math.max(1, Integer.getInteger(PREFIX + "decompressThreads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    // -DlogFileParser.finisherThreads=N, threads finishing records (filtering, fingerprints, strings, tokens) of every read file
+    // or range, by default processors which are not used by readersQuantity readers, 0 - records are finished by the reader
+    public static int getFinisherThreadsQuantity(int readersQuantity) {
+        int defaultThreadsQuantity = Runtime.getRuntime().availableProcessors() / Math.max(1, readersQuantity) - 1;
+        return Math.max(0, Integer.getInteger(PREFIX + "finisherThreads", defaultThreadsQuantity));
+    }
+
+    // -DlogFileParser.pipelineBatchSize=N, records passed between the reader, finisher threads and the aggregator at once
+    public static int getPipelineBatchSize() {
+        return Math.max(1, Integer.getInteger(PREFIX + "pipelineBatchSize", 512));
+    }
+
+    // -DlogFileParser.pipelineQueueBatches=N, batches which are finished or wait for the aggregator, the reader waits if there are more
+    public static int getPipelineQueueBatches() {
+        return Math.max(1, Integer.getInteger(PREFIX + "pipelineQueueBatches", 16));
+    }
+
+    // -DlogFileParser.rangeSizeKb=N, files bigger than that are split into byte ranges parsed at the same time
+    public static long getFileRangeSize() {
+        return Math.max(1, Integer.getInteger(PREFIX + "rangeSizeKb", 64 * 1024)) * 1024L;
+    }
+
+    // -DlogFileParser.readAheadMb=N, source bytes of files (or file ranges) which are parsed and wait for the consumer,
+    // ranges of big files are made smaller so two ranges of every parser thread fit into it
+    public static long getReadAheadBudget() {
+        return Math.max(1, Integer.getInteger(PREFIX + "readAheadMb", 256)) * 1024L * 1024L;
+    }
+
+    // -DlogFileParser.sortMemoryMb=N, records which are sorted are written to temporary files when they take more memory
+    public static long getSortMemoryBudget() {
+        return Math.max(1, Integer.getInteger(PREFIX + "sortMemoryMb", 256)) * 1024L * 1024L;
+    }
+
+    // -DlogFileParser.sortTempDir=path, directory for temporary files of sorting, java.io.tmpdir by default
+    public static File getSortTempDir() {
+        return new File(System.getProperty(PREFIX + "sortTempDir", System.getProperty("java.io.tmpdir")));
+    }
+
+    // -DlogFileParser.lineIndexStep=N, offset of every N-th row is kept in the index of file for reading from a row
+    public static int getLineIndexStep() {
+        return Math.max(1, Integer.getInteger(PREFIX + "lineIndexStep", 4096));
+    }
+
+    // -DlogFileParser.lineIndexDir=path, directory for indexes of rows, java.io.tmpdir/logFileParser-index by default
+    public static File getLineIndexDir() {
+        return new File(System.getProperty(PREFIX + "lineIndexDir", new File(System.getProperty("java.io.tmpdir"), "logFileParser-index").getPath()));
+    }
+
+    // -DlogFileParser.cacheSizeMb=N, disk budget of the cache of parsed records, 0 - records are not cached
+    public static long getCacheSize() {
+        return Math.max(0, Integer.getInteger(PREFIX + "cacheSizeMb", 1024)) * 1024L * 1024L;
+    }
+
+    // -DlogFileParser.cacheFilteredParsing=false, ranges which are not cached yet and are parsed under a filter (errors only,
+    // priorities, category, dates) are not written to the cache, so their rejected records are skipped without creating them.
+    // By default such ranges are cached with all their records, so the next parsing with any filter reads them from the cache
+    public static boolean isCacheFilteredParsing() {
+        return Boolean.parseBoolean(System.getProperty(PREFIX + "cacheFilteredParsing", "true"));
+    }
+
+    // -DlogFileParser.cacheDir=path, directory of the cache of parsed records, java.io.tmpdir/logFileParser-cache by default
+    public static File getCacheDir() {
+        return new File(System.getProperty(PREFIX + "cacheDir", new File(System.getProperty("java.io.tmpdir"), "logFileParser-cache").getPath()));
+    }
+
+    // -DlogFileParser.searchIndexMemoryMb=N, memory budget of indexes of files kept for search of records, an index keeps
+    // the text of its file, so files bigger than that are not searched
+    public static long getSearchIndexMemorySize() {
+        return Math.max(1, Integer.getInteger(PREFIX + "searchIndexMemoryMb", 256)) * 1024L * 1024L;
+    }
+
+    // -DlogFileParser.searchIndexRefreshSeconds=N, index of the changed file is built again not earlier than that after the previous one
+    public static long getSearchIndexRefreshTime() {
+        return Math.max(0, Integer.getInteger(PREFIX + "searchIndexRefreshSeconds", 60)) * 1000L;
+    }
+
+    // -DlogFileParser.followSessionTtlMinutes=N, records of follow mode which are read before are forgotten when the same files
+    // are not followed longer than that
+    public static long getFollowSessionTtl() {
+        return Math.max(1, Integer.getInteger(PREFIX + "followSessionTtlMinutes", 30)) * 60_000L;
+    }
+
+    // -DlogFileParser.xlsThreads=N, sheets of the book which are written at the same time, available processors by default
+    public static int getXlsThreadsQuantity() {
+        return Math.max(1, Integer.getInteger(PREFIX + "xlsThreads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    // -DlogFileParser.jobThreads=N, parsing jobs which are run at the same time
+    public static int getJobThreadsQuantity() {
+        return Math.max(1, Integer.getInteger(PREFIX + "jobThreads", 2));
+    }
+
+    // -DlogFileParser.jobQueueSize=N, parsing jobs which wait for a free thread, more jobs are rejected
+    public static int getJobQueueSize() {
+        return Math.max(0, Integer.getInteger(PREFIX + "jobQueueSize", 16));
+    }
+
+    // -DlogFileParser.jobDir=path, directory for .xlsx files made by parsing jobs, java.io.tmpdir/logFileParser-jobs by default
+    public static File getJobDir() {
+        return new File(System.getProperty(PREFIX + "jobDir", new File(System.getProperty("java.io.tmpdir"), "logFileParser-jobs").getPath()));
+    }
+
+    // -DlogFileParser.jobTtlMinutes=N, finished jobs and their files are removed after that
+    public static long getJobTtl() {
+        return Math.max(1, Integer.getInteger(PREFIX + "jobTtlMinutes", 60)) * 60_000L;
+    }
+
+    // -DlogFileParser.exportThreads=N, threads which parse and send files to clients waiting for them (actions
+    // parseLogFile and downloadParseJobResult), the container threads are released while files are sent
+    public static int getExportThreadsQuantity() {
+        return Math.max(1, Integer.getInteger(PREFIX + "exportThreads", 4));
+    }
+
+    // -DlogFileParser.exportQueueSize=N, requests which wait for a free export thread, more requests get 503
+    public static int getExportQueueSize() {
+        return Math.max(0, Integer.getInteger(PREFIX + "exportQueueSize", 16));
+    }
+
+    // -DlogFileParser.retryAfterSeconds=N, sent in Retry-After when a request is rejected
+    public static int getRetryAfterSeconds() {
+        return Math.max(1, Integer.getInteger(PREFIX + "retryAfterSeconds", 30));
+    }
+}
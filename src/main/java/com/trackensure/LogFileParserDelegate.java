@@ -7,6 +7,12 @@ import org.json.JSONObject;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -15,46 +21,187 @@ public class LogFileParserDelegate {
     private static final Logger logger = Logger.getLogger(CLAZZ);
 
     public void parseLogFile(HttpServletRequest request, HttpServletResponse response) throws TEAppException {
+        LogFileParserProgress progress = new LogFileParserProgress();
+        boolean isDone = false;
+        try {
+            ParseRequest parseRequest = getParseRequest(request);
+            LogFileParser logFileParser = parseRequest.createLogFileParser(progress);
+            LogFileParserStatistics.start(progress);
+            sendExcelFile(parseRequest, logFileParser, new LogFileParserXLS(progress.getMetrics()), response);
+            LogFileParserStatistics.finish(progress);
+            isDone = true;
+        } catch (TEAppException e) {
+            logger.error("parseLogFile()", e);
+            throw new TEAppException(e.getMessage(), e.getCause());
+        } finally {
+            if (!isDone) LogFileParserStatistics.fail(progress);
+        }
+    }
+
+    // the book is written straight to the response, which is reset if the parsing fails before anything is sent,
+    // so the error is sent instead
+    private void sendExcelFile(ParseRequest parseRequest, LogFileParser logFileParser, LogFileParserXLS logFileParserXLS,
+                               HttpServletResponse response) throws TEAppException {
+        String outputFileName = parseRequest.outputFileName;
+        boolean isSent = false;
+        try {
+            logFileParserXLS.prepareResponseToSendExcelFile(response, outputFileName);
+            OutputStream outputStream = response.getOutputStream();
+            writeExcelFile(parseRequest, logFileParser, logFileParserXLS, outputStream, () -> {});
+            outputStream.close();
+            isSent = true;
+            logger.info("sendExcelFile(): file has been sent: " + outputFileName + ".");
+        } catch (IOException e) {
+            logger.error("sendExcelFile()", e);
+            throw new TEAppException("Error while sending file: " + outputFileName, e);
+        } finally {
+            if (!isSent && !response.isCommitted()) response.reset();
+        }
+    }
+
+    // writes the book of the parsing to outputStream, which is not closed. onWriting is called when all records are
+    // parsed and the rest of the book is written
+    private void writeExcelFile(ParseRequest parseRequest, LogFileParser logFileParser, LogFileParserXLS logFileParserXLS,
+                                OutputStream outputStream, Runnable onWriting) throws TEAppException {
+        //only rows appended after the previous request are read
+        if (parseRequest.isFollow) {
+            List<List<LogRecord>> logRecordListAssembled = logFileParser.followLogFiles();
+            onWriting.run();
+            logFileParserXLS.generateAndWriteExcelFile(outputStream, logRecordListAssembled);
+            return;
+        }
+
+        //every record is kept if records are not unique and not joined, so they are written to the book one by one
+        if (parseRequest.isWrittenByRecords()) {
+            logFileParserXLS.startExcelFile(outputStream);
+            if (parseRequest.isStreaming) {
+                logFileParser.parseLogFiles(logFileParserXLS::writeRecord);
+            } else {
+                logFileParser.parseAndSortLogFiles(logFileParserXLS::writeRecord);
+            }
+            onWriting.run();
+            logFileParserXLS.finishExcelFile();
+            return;
+        }
+
+        List<List<LogRecord>> logRecordListAssembled = logFileParser.parseLogFiles();
+        onWriting.run();
+        logFileParserXLS.generateAndWriteExcelFile(outputStream, logRecordListAssembled);
+    }
+
+    // the same parsing is run by a job, the client asks its status and downloads the book by sendParseJobResult().
+    // Options and source files are checked before the job is submitted
+    public LogFileParserJob submitParseJob(HttpServletRequest request) throws TEAppException {
+        try {
+            ParseRequest parseRequest = getParseRequest(request);
+            return LogFileParserJobs.submit(parseRequest.outputFileName, (job, outputStream) -> runParseJob(parseRequest, job, outputStream));
+        } catch (TEAppException e) {
+            logger.error("submitParseJob()", e);
+            throw e;
+        }
+    }
+
+    public void sendParseJobResult(HttpServletRequest request, HttpServletResponse response) throws TEAppException {
+        LogFileParserJob job = LogFileParserJobs.get(request.getParameter("jobId"));
+        if (job.getStage() != LogFileParserJob.Stage.DONE)
+            throw new TEAppException("Parsing job is not done: " + job.getStage());
+        try {
+            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            response.setHeader("Content-Disposition", "attachment; filename=" + job.getOutputFileName());
+            response.setHeader("Set-Cookie", "fileDownload=true; path=/");
+            response.setContentLengthLong(job.getResultFile().length());
+            OutputStream outputStream = response.getOutputStream();
+            Files.copy(job.getResultFile().toPath(), outputStream);
+            outputStream.close();
+            logger.info("sendParseJobResult(): file of job " + job.getId() + " has been sent: " + job.getOutputFileName() + ".");
+        } catch (IOException e) {
+            logger.error("sendParseJobResult()", e);
+            throw new TEAppException("Error while sending file: " + job.getOutputFileName(), e);
+        }
+    }
+
+    private void runParseJob(ParseRequest parseRequest, LogFileParserJob job, OutputStream outputStream) throws TEAppException {
+        LogFileParser logFileParser = parseRequest.createLogFileParser(job.getProgress());
+        LogFileParserXLS logFileParserXLS = new LogFileParserXLS(job.getProgress().getMetrics());
+        writeExcelFile(parseRequest, logFileParser, logFileParserXLS, outputStream, () -> job.setStage(LogFileParserJob.Stage.WRITING));
+    }
+
+    // records of the source files matching the query, by pages in JSON. Files are parsed once into indexes kept in memory
+    public JSONObject searchLogRecords(HttpServletRequest request) throws TEAppException {
+        try {
+            ParseRequest parseRequest = getParseRequest(request);
+            LogRecordQuery query = LogRecordQuery.of(new JSONObject(request.getParameter("data")));
+            return LogRecordIndexes.search(parseRequest.sourceFiles, parseRequest.charset, query);
+        } catch (TEAppException e) {
+            logger.error("searchLogRecords()", e);
+            throw e;
+        }
+    }
+
+    private ParseRequest getParseRequest(HttpServletRequest request) throws TEAppException {
         try {
             JSONObject jsonIn = new JSONObject(request.getParameter("data"));
-            boolean isUniqRecords = jsonIn.optBoolean("isUniqRecords");
-            boolean isGatherMessages = jsonIn.optBoolean("isGatherMessages");
-            boolean isErrorsOnly = jsonIn.optBoolean("isErrorsOnly");
-            boolean isTeStackTraceOnly = jsonIn.optBoolean("isTeStackTraceOnly");
-            int startRow = jsonIn.optInt("startRow");
-            int finishRow = jsonIn.optInt("finishRow");
+            ParseRequest parseRequest = new ParseRequest();
+            parseRequest.isUniqRecords = jsonIn.optBoolean("isUniqRecords");
+            parseRequest.isGatherMessages = jsonIn.optBoolean("isGatherMessages");
+            parseRequest.isErrorsOnly = jsonIn.optBoolean("isErrorsOnly");
+            parseRequest.isTeStackTraceOnly = jsonIn.optBoolean("isTeStackTraceOnly");
+            parseRequest.isFollow = jsonIn.optBoolean("isFollow");
+            parseRequest.isStreaming = jsonIn.optBoolean("isStreaming") && !parseRequest.isUniqRecords && !parseRequest.isGatherMessages && !parseRequest.isFollow;
+            parseRequest.startRow = jsonIn.optInt("startRow");
+            parseRequest.finishRow = jsonIn.optInt("finishRow");
             String filePath = jsonIn.optString("filePath");
             String fileName = jsonIn.optString("fileName");
+            parseRequest.charset = Charset.forName(jsonIn.optString("charset", "UTF-8"));
+            parseRequest.filter = LogRecordFilter.of(jsonIn);
 
-            List<File> sourceFiles;
-            String outputFileName;
             if(Objects.isNull(fileName) || fileName.isEmpty()) {
                 File sourceDir = new File(filePath);
                 if(!sourceDir.isDirectory())
                     throw new TEAppException("Source directory is not present.");
-                File[] filesArray = sourceDir.listFiles();
+                //plain and compressed (.gz, .zip) logs are read, subdirectories are skipped
+                File[] filesArray = sourceDir.listFiles(File::isFile);
                 if(Objects.isNull(filesArray) || filesArray.length == 0)
                     throw new TEAppException("Source directory is empty.");
-                sourceFiles = Arrays.stream(filesArray)
+                parseRequest.sourceFiles = Arrays.stream(filesArray)
                         .sorted(Comparator.comparing(File::getName))
                         .collect(Collectors.toList());
                 String[] pathNameTokens = filePath.split("/");
-                outputFileName = pathNameTokens[pathNameTokens.length - 1] + ".xlsx";
+                parseRequest.outputFileName = pathNameTokens[pathNameTokens.length - 1] + ".xlsx";
             } else {
-                sourceFiles = new ArrayList<>();
-                sourceFiles.add(new File(filePath + "/" + fileName));
-                outputFileName = fileName + ".xlsx";
+                parseRequest.sourceFiles = new ArrayList<>();
+                parseRequest.sourceFiles.add(new File(filePath + "/" + fileName));
+                parseRequest.outputFileName = fileName + ".xlsx";
             }
+            return parseRequest;
+        } catch (JSONException | IllegalCharsetNameException | UnsupportedCharsetException e) {
+            throw new TEAppException(e.getMessage(), e.getCause());
+        }
+    }
 
-            LogFileParser logFileParser = new LogFileParser(sourceFiles, isUniqRecords, isGatherMessages, isErrorsOnly, isTeStackTraceOnly, startRow, finishRow);
+    // options of parsing sent by the client
+    private static class ParseRequest {
+        private List<File> sourceFiles;
+        private String outputFileName;
+        private Charset charset;
+        private boolean isUniqRecords;
+        private boolean isGatherMessages;
+        private boolean isErrorsOnly;
+        private boolean isTeStackTraceOnly;
+        private boolean isFollow;
+        private boolean isStreaming;
+        private int startRow;
+        private int finishRow;
+        private LogRecordFilter filter;
 
-            List<List<LogRecord>> logRecordListAssembled = logFileParser.parseLogFiles();
+        private LogFileParser createLogFileParser(LogFileParserProgress progress) throws TEAppException {
+            LogFileParser logFileParser = new LogFileParser(sourceFiles, charset, isUniqRecords, isGatherMessages, isErrorsOnly, isTeStackTraceOnly, startRow, finishRow, progress);
+            logFileParser.setFilter(filter);
+            return logFileParser;
+        }
 
-            LogFileParserXLS logFileParserXLS = new LogFileParserXLS();
-            logFileParserXLS.generateAndSendExcelFile(response, logRecordListAssembled, outputFileName);
-        } catch (TEAppException | JSONException e) {
-            logger.error("parseLogFile()", e);
-            throw new TEAppException(e.getMessage(), e.getCause());
+        private boolean isWrittenByRecords() {
+            return isStreaming || (!isUniqRecords && !isGatherMessages);
         }
     }
 }
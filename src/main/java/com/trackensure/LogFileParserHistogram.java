@@ -0,0 +1,135 @@
+package com.trackensure;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// distribution of a metric over parsings: values are counted in buckets, every power of 2 is divided into
+// SUB_BUCKETS buckets, so percentiles are estimated with the error of 1/SUB_BUCKETS of the value at most
+public class LogFileParserHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[(Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    // negative values are counted as 0
+    public synchronized void add(long value) {
+        long countedValue = Math.max(value, 0);
+        counts[getBucket(countedValue)]++;
+        count++;
+        sum += countedValue;
+        min = Math.min(min, countedValue);
+        max = Math.max(max, countedValue);
+    }
+
+    public synchronized Snapshot getSnapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.count = count;
+        if (count == 0) return snapshot;
+        snapshot.min = min;
+        snapshot.max = max;
+        snapshot.mean = (double) sum / count;
+        snapshot.p50 = getPercentile(0.5);
+        snapshot.p90 = getPercentile(0.9);
+        snapshot.p99 = getPercentile(0.99);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) snapshot.buckets.put(getLowerBound(i), counts[i]);
+        }
+        return snapshot;
+    }
+
+    // the middle of the bucket of the value, but not out of min and max
+    private long getPercentile(double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long countedValues = 0;
+        for (int i = 0; i < counts.length; i++) {
+            countedValues += counts[i];
+            if (countedValues >= rank) {
+                long lowerBound = getLowerBound(i);
+                long middle = lowerBound + (getLowerBound(i + 1) - 1 - lowerBound) / 2;
+                return Math.min(Math.max(middle, min), max);
+            }
+        }
+        return max;
+    }
+
+    private static int getBucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    private static long getLowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        if (exponent >= Long.SIZE - 1) return Long.MAX_VALUE;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    // values of the histogram at some moment, buckets are lower bounds of not empty buckets with their counts
+    public static class Snapshot {
+        private long count;
+        private long min;
+        private long max;
+        private double mean;
+        private long p50;
+        private long p90;
+        private long p99;
+        private final Map<Long, Long> buckets = new LinkedHashMap<>();
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public Map<Long, Long> getBuckets() {
+            return buckets;
+        }
+
+        public JSONObject toJSONObject() {
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("count", count);
+            jsonObject.put("min", min);
+            jsonObject.put("max", max);
+            jsonObject.put("mean", mean);
+            jsonObject.put("p50", p50);
+            jsonObject.put("p90", p90);
+            jsonObject.put("p99", p99);
+            JSONArray bucketsJsonArray = new JSONArray();
+            for (Map.Entry<Long, Long> bucket : buckets.entrySet()) {
+                bucketsJsonArray.put(new JSONArray().put(bucket.getKey()).put(bucket.getValue()));
+            }
+            jsonObject.put("buckets", bucketsJsonArray);
+            return jsonObject;
+        }
+    }
+}
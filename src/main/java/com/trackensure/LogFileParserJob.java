@@ -0,0 +1,133 @@
+package com.trackensure;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.concurrent.Future;
+
+// parsing started by the client, which then asks its status and downloads the book from resultFile when it is DONE
+public class LogFileParserJob {
+    public enum Stage {QUEUED, PARSING, WRITING, DONE, FAILED, CANCELLED}
+
+    private final String id;
+    private final String outputFileName;
+    private final File resultFile;
+    private final LogFileParserProgress progress = new LogFileParserProgress();
+    private final long submitTime = System.currentTimeMillis();
+    private volatile Stage stage = Stage.QUEUED;
+    private volatile long startTime;
+    private volatile long finishTime;
+    private volatile String error;
+    private volatile boolean isCancelled = false;
+    private Future<?> future;
+
+    LogFileParserJob(String id, String outputFileName, File resultFile) {
+        this.id = id;
+        this.outputFileName = outputFileName;
+        this.resultFile = resultFile;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOutputFileName() {
+        return outputFileName;
+    }
+
+    public File getResultFile() {
+        return resultFile;
+    }
+
+    public LogFileParserProgress getProgress() {
+        return progress;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public void setStage(Stage stage) {
+        if (stage == Stage.PARSING) startTime = System.currentTimeMillis();
+        if (isFinished(stage)) finishTime = System.currentTimeMillis();
+        this.stage = stage;
+    }
+
+    public boolean isFinished() {
+        return isFinished(stage);
+    }
+
+    long getFinishTime() {
+        return finishTime;
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    void fail(String error) {
+        this.error = error;
+        setStage(Stage.FAILED);
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    // called by the job thread, returns false if the job is cancelled before it is started
+    synchronized boolean start() {
+        if (isCancelled) return false;
+        setStage(Stage.PARSING);
+        return true;
+    }
+
+    // called by the job thread when the book is written, returns false if the job has been cancelled, then it is not DONE
+    synchronized boolean finish() {
+        if (isCancelled) return false;
+        setStage(Stage.DONE);
+        return true;
+    }
+
+    // the job thread is interrupted, the job which is not started yet is not run
+    synchronized void cancel() {
+        if (isFinished()) return;
+        isCancelled = true;
+        if (stage == Stage.QUEUED) setStage(Stage.CANCELLED);
+        future.cancel(true);
+    }
+
+    // time left is estimated by the speed of reading of source files, so it is known only while they are read
+    public JSONObject toJSONObject() {
+        long now = isFinished() ? finishTime : System.currentTimeMillis();
+        long readBytes = progress.getReadBytes();
+        long totalBytes = progress.getTotalBytes();
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("jobId", id);
+        jsonObject.put("stage", stage.name());
+        jsonObject.put("fileName", outputFileName);
+        jsonObject.put("readBytes", readBytes);
+        jsonObject.put("totalBytes", totalBytes);
+        jsonObject.put("parsedRecords", progress.getParsedRecords());
+        jsonObject.put("waitingMs", ((startTime == 0) ? now : startTime) - submitTime);
+        jsonObject.put("elapsedMs", (startTime == 0) ? 0 : Math.max(now - startTime, 0));
+        if (stage == Stage.PARSING && readBytes > 0 && readBytes < totalBytes) {
+            jsonObject.put("etaMs", (now - startTime) * (totalBytes - readBytes) / readBytes);
+        }
+        if (error != null) jsonObject.put("error", error);
+        return jsonObject;
+    }
+
+    // metrics of parsing of the job, they are final when the job is finished
+    public JSONObject toMetricsJSONObject() {
+        JSONObject jsonObject = progress.getMetrics().toJSONObject();
+        jsonObject.put("jobId", id);
+        jsonObject.put("stage", stage.name());
+        jsonObject.put("readBytes", progress.getReadBytes());
+        jsonObject.put("totalBytes", progress.getTotalBytes());
+        return jsonObject;
+    }
+
+    private static boolean isFinished(Stage stage) {
+        return stage == Stage.DONE || stage == Stage.FAILED || stage == Stage.CANCELLED;
+    }
+}
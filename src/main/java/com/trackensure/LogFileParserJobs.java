@@ -0,0 +1,146 @@
+package com.trackensure;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// parsing jobs of the application: not more than LogFileParserConfig.getJobThreadsQuantity() jobs are run at the same time,
+// not more than LogFileParserConfig.getJobQueueSize() jobs wait for them, others are rejected. Jobs are kept in memory
+// with their books in the job directory until LogFileParserConfig.getJobTtl() passes after they are finished
+public final class LogFileParserJobs {
+    private static final Class<LogFileParserJobs> CLAZZ = LogFileParserJobs.class;
+    private static final Logger logger = Logger.getLogger(CLAZZ);
+
+    private static final String RESULT_FILE_SUFFIX = ".xlsx";
+    private static final Map<String, LogFileParserJob> JOB_MAP = new ConcurrentHashMap<>();
+    private static ThreadPoolExecutor executor;
+
+    public interface JobBody {
+        // writes the book to outputStream, the job thread is interrupted if the job is cancelled
+        void run(LogFileParserJob job, OutputStream outputStream) throws TEAppException;
+    }
+
+    private LogFileParserJobs() {
+    }
+
+    public static LogFileParserJob submit(String outputFileName, JobBody jobBody) throws TEAppException {
+        removeExpiredJobs();
+        String id = UUID.randomUUID().toString();
+        LogFileParserJob job = new LogFileParserJob(id, outputFileName, new File(LogFileParserConfig.getJobDir(), id + RESULT_FILE_SUFFIX));
+        try {
+            job.setFuture(getExecutor().submit(() -> run(job, jobBody)));
+        } catch (RejectedExecutionException e) {
+            logger.warn("submit(): job is rejected, there are too many jobs.");
+            throw new TEAppOverloadedException("Too many files are being parsed now. Try again later.", e);
+        }
+        JOB_MAP.put(id, job);
+        logger.info("submit(): job " + id + " is submitted for " + outputFileName + ".");
+        return job;
+    }
+
+    public static LogFileParserJob get(String id) throws TEAppException {
+        LogFileParserJob job = Objects.isNull(id) ? null : JOB_MAP.get(id);
+        if (Objects.isNull(job))
+            throw new TEAppException("Parsing job is not found: " + id);
+        return job;
+    }
+
+    public static LogFileParserJob cancel(String id) throws TEAppException {
+        LogFileParserJob job = get(id);
+        job.cancel();
+        removeCancelledJobs();
+        logger.info("cancel(): job " + id + " is cancelled.");
+        return job;
+    }
+
+    // cancelled jobs which are not started yet are not counted, they are removed from the queue by cancel()
+    public static synchronized int getQueuedJobsQuantity() {
+        if (Objects.isNull(executor)) return 0;
+        return (int) executor.getQueue().stream()
+                .filter(runnable -> !(runnable instanceof Future) || !((Future<?>) runnable).isCancelled())
+                .count();
+    }
+
+    // called when the application is stopped
+    public static synchronized void shutdown() {
+        if (Objects.isNull(executor)) return;
+        executor.shutdownNow();
+        executor = null;
+    }
+
+    // a cancelled job keeps its place in the queue until a job thread takes it, so it is removed not to reject new jobs
+    private static synchronized void removeCancelledJobs() {
+        if (Objects.nonNull(executor)) executor.purge();
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (Objects.isNull(executor)) {
+            int threadsQuantity = LogFileParserConfig.getJobThreadsQuantity();
+            int queueSize = LogFileParserConfig.getJobQueueSize();
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = new ThreadPoolExecutor(threadsQuantity, threadsQuantity, 0L, TimeUnit.MILLISECONDS,
+                    (queueSize == 0) ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueSize),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "logFileParser-job-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        return executor;
+    }
+
+    private static void run(LogFileParserJob job, JobBody jobBody) {
+        if (!job.start()) return;
+        LogFileParserStatistics.start(job.getProgress());
+        File resultFile = job.getResultFile();
+        try {
+            Files.createDirectories(resultFile.getParentFile().toPath());
+            try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(resultFile))) {
+                jobBody.run(job, outputStream);
+            }
+            if (!job.finish()) throw new TEAppException("Job has been cancelled.");
+            LogFileParserStatistics.finish(job.getProgress());
+            logger.info("run(): job " + job.getId() + " is done, " + resultFile.length() + " bytes are written to " + resultFile);
+        } catch (TEAppException | IOException | RuntimeException | Error e) {
+            deleteResultFile(job);
+            if (job.isCancelled()) {
+                job.setStage(LogFileParserJob.Stage.CANCELLED);
+                LogFileParserStatistics.cancel(job.getProgress());
+                logger.info("run(): job " + job.getId() + " has been cancelled.");
+            } else {
+                logger.error("run(): job " + job.getId() + " has failed", e);
+                job.fail(e.getMessage());
+                LogFileParserStatistics.fail(job.getProgress());
+            }
+        }
+    }
+
+    // books of jobs which are lost (e.g. the application has been restarted) are removed the same way
+    private static void removeExpiredJobs() {
+        long expiredTime = System.currentTimeMillis() - LogFileParserConfig.getJobTtl();
+        for (LogFileParserJob job : JOB_MAP.values()) {
+            if (job.isFinished() && job.getFinishTime() < expiredTime) {
+                JOB_MAP.remove(job.getId());
+                deleteResultFile(job);
+            }
+        }
+        File[] resultFiles = LogFileParserConfig.getJobDir().listFiles((dir, name) -> name.endsWith(RESULT_FILE_SUFFIX));
+        if (Objects.isNull(resultFiles)) return;
+        for (File resultFile : resultFiles) {
+            String id = resultFile.getName().substring(0, resultFile.getName().length() - RESULT_FILE_SUFFIX.length());
+            if (!JOB_MAP.containsKey(id) && resultFile.lastModified() < expiredTime && !resultFile.delete())
+                logger.warn("removeExpiredJobs(): file is not deleted: " + resultFile);
+        }
+    }
+
+    private static void deleteResultFile(LogFileParserJob job) {
+        File resultFile = job.getResultFile();
+        if (resultFile.exists() && !resultFile.delete()) logger.warn("deleteResultFile(): file is not deleted: " + resultFile);
+    }
+}
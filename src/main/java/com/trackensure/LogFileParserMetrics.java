@@ -0,0 +1,210 @@
+package com.trackensure;
+
+import org.json.JSONObject;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// metrics of one parsing, updated by all its threads: rows and records which are read, filtered out and deduplicated,
+// time and allocated memory of every stage and the peak of used heap. Time of a stage is the sum of times of the threads
+// which have done it (so it can be more than the time of parsing), stages don't include each other
+public class LogFileParserMetrics {
+    public enum Stage {READ, ASSEMBLE, TOKENIZE, CLUSTER, SORT, SPLIT, EXPORT}
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean IS_ALLOCATION_MEASURED = isAllocationMeasured();
+
+    private final AtomicLong readLines = new AtomicLong();
+    private final AtomicLong createdRecords = new AtomicLong();
+    private final AtomicLong filteredRecords = new AtomicLong();
+    private final AtomicLong duplicateRecords = new AtomicLong();
+    private final AtomicLong clusters = new AtomicLong(-1);
+    private final AtomicLong peakHeapBytes = new AtomicLong();
+    private final AtomicLongArray stageNanos = new AtomicLongArray(STAGES.length);
+    private final AtomicLongArray stageAllocatedBytes = new AtomicLongArray(STAGES.length);
+    private volatile long startNanos;
+    private volatile long finishNanos;
+
+    public void start() {
+        startNanos = System.nanoTime();
+        updatePeakHeap();
+    }
+
+    public void finish() {
+        updatePeakHeap();
+        finishNanos = System.nanoTime();
+    }
+
+    public long getElapsedMs() {
+        if (startNanos == 0) return 0;
+        return ((finishNanos == 0) ? System.nanoTime() - startNanos : finishNanos - startNanos) / 1_000_000;
+    }
+
+    public long getReadLines() {
+        return readLines.get();
+    }
+
+    public void addReadLines(long lines) {
+        readLines.addAndGet(lines);
+    }
+
+    public long getCreatedRecords() {
+        return createdRecords.get();
+    }
+
+    public void addCreatedRecords(long records) {
+        createdRecords.addAndGet(records);
+    }
+
+    // records which are not passed on because of the filter (isErrorsOnly, priorities, category, time range)
+    public long getFilteredRecords() {
+        return filteredRecords.get();
+    }
+
+    public void addFilteredRecords(long records) {
+        filteredRecords.addAndGet(records);
+    }
+
+    // records which are counted as duplicates of unique records
+    public long getDuplicateRecords() {
+        return duplicateRecords.get();
+    }
+
+    public void addDuplicateRecords(long records) {
+        duplicateRecords.addAndGet(records);
+    }
+
+    // part of records passed through the filter which are duplicates
+    public double getDuplicateRatio() {
+        long passedRecords = createdRecords.get() - filteredRecords.get();
+        return (passedRecords <= 0) ? 0 : (double) duplicateRecords.get() / passedRecords;
+    }
+
+    // records after joining of similar messages, -1 if they are not joined
+    public long getClusters() {
+        return clusters.get();
+    }
+
+    public void setClusters(long clusters) {
+        this.clusters.set(clusters);
+    }
+
+    public long getPeakHeapBytes() {
+        return peakHeapBytes.get();
+    }
+
+    // used heap is sampled when threads stop stages and by LogFileParserStatistics before every garbage collection
+    public void updatePeakHeap() {
+        updatePeakHeap(Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+    }
+
+    public void updatePeakHeap(long usedHeapBytes) {
+        peakHeapBytes.accumulateAndGet(usedHeapBytes, Math::max);
+    }
+
+    public long getStageMs(Stage stage) {
+        return stageNanos.get(stage.ordinal()) / 1_000_000;
+    }
+
+    // 0 if the JVM doesn't measure memory allocated by threads
+    public long getStageAllocatedBytes(Stage stage) {
+        return stageAllocatedBytes.get(stage.ordinal());
+    }
+
+    // clock of the current thread which is in the stage from now
+    public StageClock startClock(Stage stage) {
+        StageClock clock = new StageClock();
+        clock.switchTo(stage);
+        return clock;
+    }
+
+    // paused clock for the thread which switches it to a stage later
+    public StageClock createClock() {
+        return new StageClock();
+    }
+
+    public JSONObject toJSONObject() {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("elapsedMs", getElapsedMs());
+        jsonObject.put("readLines", getReadLines());
+        jsonObject.put("createdRecords", getCreatedRecords());
+        jsonObject.put("filteredRecords", getFilteredRecords());
+        jsonObject.put("duplicateRecords", getDuplicateRecords());
+        jsonObject.put("duplicateRatio", getDuplicateRatio());
+        if (getClusters() >= 0) jsonObject.put("clusters", getClusters());
+        jsonObject.put("peakHeapBytes", getPeakHeapBytes());
+        JSONObject stagesJsonObject = new JSONObject();
+        for (Stage stage : STAGES) {
+            JSONObject stageJsonObject = new JSONObject();
+            stageJsonObject.put("timeMs", getStageMs(stage));
+            stageJsonObject.put("allocatedBytes", getStageAllocatedBytes(stage));
+            stagesJsonObject.put(stage.name().toLowerCase(), stageJsonObject);
+        }
+        jsonObject.put("stages", stagesJsonObject);
+        return jsonObject;
+    }
+
+    private static boolean isAllocationMeasured() {
+        try {
+            return THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemoryEnabled();
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static long getAllocatedBytes() {
+        return IS_ALLOCATION_MEASURED ? ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    // time and allocation of stages done by one thread, which switches the clock between them. They are added to the
+    // metrics when the clock is stopped, so the clock is not shared by threads and costs two calls of JVM per switch
+    public class StageClock {
+        private final long[] nanos = new long[STAGES.length];
+        private final long[] allocatedBytes = new long[STAGES.length];
+        private Stage stage;
+        private long stageStartNanos;
+        private long stageStartAllocatedBytes;
+
+        private StageClock() {
+        }
+
+        // null if the clock is paused
+        public Stage getStage() {
+            return stage;
+        }
+
+        public void switchTo(Stage stage) {
+            if (this.stage == stage) return;
+            long nowNanos = System.nanoTime();
+            long nowAllocatedBytes = getAllocatedBytes();
+            if (Objects.nonNull(this.stage)) {
+                nanos[this.stage.ordinal()] += nowNanos - stageStartNanos;
+                allocatedBytes[this.stage.ordinal()] += nowAllocatedBytes - stageStartAllocatedBytes;
+            }
+            this.stage = stage;
+            stageStartNanos = nowNanos;
+            stageStartAllocatedBytes = nowAllocatedBytes;
+        }
+
+        // the thread waits for others or does something not measured
+        public void pause() {
+            switchTo(null);
+        }
+
+        public void stop() {
+            pause();
+            for (int i = 0; i < STAGES.length; i++) {
+                if (nanos[i] != 0) stageNanos.addAndGet(i, nanos[i]);
+                if (allocatedBytes[i] != 0) stageAllocatedBytes.addAndGet(i, allocatedBytes[i]);
+                nanos[i] = 0;
+                allocatedBytes[i] = 0;
+            }
+            updatePeakHeap();
+        }
+    }
+}
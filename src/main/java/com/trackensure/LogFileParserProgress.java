@@ -0,0 +1,40 @@
+package com.trackensure;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// progress of LogFileParser, updated by the parser and read by other threads: bytes of source files which are read
+// and records which are passed on after reading. Metrics of stages of the same parsing are kept with it
+public class LogFileParserProgress {
+    private final LogFileParserMetrics metrics = new LogFileParserMetrics();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong readBytes = new AtomicLong();
+    private final AtomicLong parsedRecords = new AtomicLong();
+
+    public LogFileParserMetrics getMetrics() {
+        return metrics;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes.set(totalBytes);
+    }
+
+    public long getReadBytes() {
+        return readBytes.get();
+    }
+
+    public void addReadBytes(long bytes) {
+        readBytes.addAndGet(bytes);
+    }
+
+    public long getParsedRecords() {
+        return parsedRecords.get();
+    }
+
+    public void addParsedRecords(long records) {
+        parsedRecords.addAndGet(records);
+    }
+}
@@ -5,43 +5,164 @@ import org.apache.log4j.Logger;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 
 public class LogFileParserServlet extends HttpServlet {
     private static final Class<LogFileParserServlet> CLAZZ = LogFileParserServlet.class;
     private static final Logger logger = Logger.getLogger(CLAZZ);
 
-    HttpServletRequest request;
-    HttpServletResponse response;
-
     public static final String ACTION_PARSE_LOG_FILE = "parseLogFile";
+    public static final String ACTION_SUBMIT_PARSE_JOB = "submitParseJob";
+    public static final String ACTION_GET_PARSE_JOB_STATUS = "getParseJobStatus";
+    public static final String ACTION_DOWNLOAD_PARSE_JOB_RESULT = "downloadParseJobResult";
+    public static final String ACTION_CANCEL_PARSE_JOB = "cancelParseJob";
+    public static final String ACTION_GET_METRICS = "getMetrics";
+    public static final String ACTION_SEARCH_LOG_RECORDS = "searchLogRecords";
 
+    // the servlet is shared by all requests, so nothing of a request is kept in its fields
+    private ThreadPoolExecutor exportExecutor;
 
     @Override
-    protected void service(HttpServletRequest request, HttpServletResponse response) {
-        this.request = request;
-        this.response = response;
+    public void init() {
+        int threadsQuantity = LogFileParserConfig.getExportThreadsQuantity();
+        int queueSize = LogFileParserConfig.getExportQueueSize();
+        AtomicInteger threadNumber = new AtomicInteger();
+        exportExecutor = new ThreadPoolExecutor(threadsQuantity, threadsQuantity, 0L, TimeUnit.MILLISECONDS,
+                (queueSize == 0) ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "logFileParser-export-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        LogFileParserStatistics.register();
+    }
 
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) {
         LogFileParserDelegate logFileParserDelegate = new LogFileParserDelegate();
         String actionName = request.getParameter("actionName");
         if (actionName == null || actionName.isEmpty()) {
-            sendStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Not correct actionName");
+            sendStatus(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Not correct actionName");
         } else if (ACTION_PARSE_LOG_FILE.equals(actionName)) {
+            startExport(request, response, (exportRequest, exportResponse) -> {
+                try {
+                    logFileParserDelegate.parseLogFile(exportRequest, exportResponse);
+                } catch (TEAppException e) {
+                    exportResponse.setHeader("Set-Cookie", "fileDownload=false; path=/");
+                    sendStatus(exportResponse, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+                }
+            });
+        } else if (ACTION_SUBMIT_PARSE_JOB.equals(actionName)) {
+            try {
+                sendJson(response, logFileParserDelegate.submitParseJob(request).toJSONObject());
+            } catch (TEAppOverloadedException e) {
+                sendOverloaded(response, e.getMessage());
+            } catch (TEAppException e) {
+                sendStatus(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            }
+        } else if (ACTION_GET_PARSE_JOB_STATUS.equals(actionName)) {
             try {
-                logFileParserDelegate.parseLogFile(request, response);
+                sendJson(response, LogFileParserJobs.get(request.getParameter("jobId")).toJSONObject());
             } catch (TEAppException e) {
-                response.setHeader("Set-Cookie", "fileDownload=false; path=/");
-                sendStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+                sendStatus(response, HttpServletResponse.SC_NOT_FOUND, e.getMessage());
             }
+        } else if (ACTION_DOWNLOAD_PARSE_JOB_RESULT.equals(actionName)) {
+            startExport(request, response, (exportRequest, exportResponse) -> {
+                try {
+                    logFileParserDelegate.sendParseJobResult(exportRequest, exportResponse);
+                } catch (TEAppException e) {
+                    exportResponse.setHeader("Set-Cookie", "fileDownload=false; path=/");
+                    sendStatus(exportResponse, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+                }
+            });
+        } else if (ACTION_CANCEL_PARSE_JOB.equals(actionName)) {
+            try {
+                sendJson(response, LogFileParserJobs.cancel(request.getParameter("jobId")).toJSONObject());
+            } catch (TEAppException e) {
+                sendStatus(response, HttpServletResponse.SC_NOT_FOUND, e.getMessage());
+            }
+        } else if (ACTION_GET_METRICS.equals(actionName)) {
+            //metrics of the job if jobId is sent, otherwise statistics of all parsings
+            try {
+                String jobId = request.getParameter("jobId");
+                sendJson(response, (jobId == null) ? LogFileParserStatistics.toJSONObject() : LogFileParserJobs.get(jobId).toMetricsJSONObject());
+            } catch (TEAppException e) {
+                sendStatus(response, HttpServletResponse.SC_NOT_FOUND, e.getMessage());
+            }
+        } else if (ACTION_SEARCH_LOG_RECORDS.equals(actionName)) {
+            //files are parsed into indexes by the first queries, so they are run by export threads as well
+            startExport(request, response, (exportRequest, exportResponse) -> {
+                try {
+                    sendJson(exportResponse, logFileParserDelegate.searchLogRecords(exportRequest));
+                } catch (TEAppBadRequestException e) {
+                    sendStatus(exportResponse, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                } catch (TEAppException e) {
+                    sendStatus(exportResponse, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+                }
+            });
+        }
+    }
+
+    @Override
+    public void destroy() {
+        exportExecutor.shutdownNow();
+        LogFileParserJobs.shutdown();
+        CompressedLogInputStream.shutdown();
+        LogFileParserStatistics.unregister();
+    }
+
+    // the container thread is released while the file is parsed and sent by an export thread
+    private void startExport(HttpServletRequest request, HttpServletResponse response,
+                             BiConsumer<HttpServletRequest, HttpServletResponse> export) {
+        AsyncContext asyncContext = request.startAsync(request, response);
+        //big files are sent longer than the default timeout of the container
+        asyncContext.setTimeout(0);
+        try {
+            exportExecutor.execute(() -> {
+                try {
+                    export.accept(request, response);
+                } catch (RuntimeException e) {
+                    logger.error("startExport(): ", e);
+                    if (!response.isCommitted())
+                        sendStatus(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+                } finally {
+                    asyncContext.complete();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("startExport(): request is rejected, there are too many exports.");
+            response.setHeader("Set-Cookie", "fileDownload=false; path=/");
+            sendOverloaded(response, "Too many files are being sent now. Try again later.");
+            asyncContext.complete();
         }
     }
 
-    public void sendStatus(int statusCode, String error) {
+    private void sendJson(HttpServletResponse response, JSONObject jsonObject) {
+        try {
+            response.setCharacterEncoding("UTF-8");
+            response.setContentType("application/json");
+            PrintWriter writer = response.getWriter();
+            writer.write(jsonObject.toString());
+        } catch (IOException e) {
+            logger.error("sendJson(): ", e);
+        }
+    }
+
+    private void sendOverloaded(HttpServletResponse response, String error) {
+        response.setHeader("Retry-After", String.valueOf(LogFileParserConfig.getRetryAfterSeconds()));
+        sendStatus(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, error);
+    }
+
+    private void sendStatus(HttpServletResponse response, int statusCode, String error) {
         try {
             JSONObject jsonObject = new JSONObject();
             jsonObject.put("error", error);
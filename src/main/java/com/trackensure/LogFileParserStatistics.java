@@ -0,0 +1,186 @@
+package com.trackensure;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.apache.log4j.Logger;
+import org.json.JSONObject;
+
+import javax.management.*;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// statistics of parsings since the application is started: quantities of parsings and histograms of metrics of finished
+// parsings, so nodes can be sized by them. They are sent by the servlet and registered as MXBean. Used heap is taken
+// from every garbage collection for the peak heap of running parsings
+public final class LogFileParserStatistics {
+    private static final Class<LogFileParserStatistics> CLAZZ = LogFileParserStatistics.class;
+    private static final Logger logger = Logger.getLogger(CLAZZ);
+
+    private static final String MX_BEAN_NAME = "com.trackensure:type=LogFileParserStatistics";
+    private static final Set<LogFileParserMetrics> RUNNING_METRICS = ConcurrentHashMap.newKeySet();
+    private static final AtomicLong FINISHED_PARSINGS = new AtomicLong();
+    private static final AtomicLong FAILED_PARSINGS = new AtomicLong();
+    private static final AtomicLong CANCELLED_PARSINGS = new AtomicLong();
+    private static final Map<String, LogFileParserHistogram> HISTOGRAM_MAP = createHistogramMap();
+    private static final NotificationListener GC_LISTENER = LogFileParserStatistics::updatePeakHeap;
+    private static volatile Set<String> heapPoolNames = Collections.emptySet();
+
+    private LogFileParserStatistics() {
+    }
+
+    // called when the application is started
+    public static synchronized void register() {
+        heapPoolNames = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(memoryPoolMXBean -> memoryPoolMXBean.getType() == MemoryType.HEAP)
+                .map(MemoryPoolMXBean::getName)
+                .collect(Collectors.toSet());
+        for (GarbageCollectorMXBean garbageCollectorMXBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (garbageCollectorMXBean instanceof NotificationEmitter)
+                ((NotificationEmitter) garbageCollectorMXBean).addNotificationListener(GC_LISTENER, null, null);
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StatisticsMXBean(), new ObjectName(MX_BEAN_NAME));
+        } catch (JMException e) {
+            //e.g. the other instance of the application is deployed to the same container
+            logger.warn("register(): MXBean " + MX_BEAN_NAME + " is not registered", e);
+        }
+    }
+
+    // called when the application is stopped
+    public static synchronized void unregister() {
+        for (GarbageCollectorMXBean garbageCollectorMXBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            try {
+                if (garbageCollectorMXBean instanceof NotificationEmitter)
+                    ((NotificationEmitter) garbageCollectorMXBean).removeNotificationListener(GC_LISTENER);
+            } catch (ListenerNotFoundException e) {
+                logger.debug("unregister(): listener of " + garbageCollectorMXBean.getName() + " is not found");
+            }
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(MX_BEAN_NAME));
+        } catch (JMException e) {
+            logger.warn("unregister(): MXBean " + MX_BEAN_NAME + " is not unregistered", e);
+        }
+    }
+
+    public static void start(LogFileParserProgress progress) {
+        progress.getMetrics().start();
+        RUNNING_METRICS.add(progress.getMetrics());
+    }
+
+    public static void finish(LogFileParserProgress progress) {
+        LogFileParserMetrics metrics = progress.getMetrics();
+        if (!RUNNING_METRICS.remove(metrics)) return;
+        metrics.finish();
+        FINISHED_PARSINGS.incrementAndGet();
+        HISTOGRAM_MAP.get("elapsedMs").add(metrics.getElapsedMs());
+        HISTOGRAM_MAP.get("readBytes").add(progress.getReadBytes());
+        HISTOGRAM_MAP.get("readLines").add(metrics.getReadLines());
+        HISTOGRAM_MAP.get("createdRecords").add(metrics.getCreatedRecords());
+        HISTOGRAM_MAP.get("filteredRecords").add(metrics.getFilteredRecords());
+        HISTOGRAM_MAP.get("duplicatePercent").add(Math.round(metrics.getDuplicateRatio() * 100));
+        if (metrics.getClusters() >= 0) HISTOGRAM_MAP.get("clusters").add(metrics.getClusters());
+        HISTOGRAM_MAP.get("peakHeapBytes").add(metrics.getPeakHeapBytes());
+        for (LogFileParserMetrics.Stage stage : LogFileParserMetrics.Stage.values()) {
+            HISTOGRAM_MAP.get(getStageName(stage) + "TimeMs").add(metrics.getStageMs(stage));
+            HISTOGRAM_MAP.get(getStageName(stage) + "AllocatedBytes").add(metrics.getStageAllocatedBytes(stage));
+        }
+    }
+
+    // nothing is counted if the parsing is not started (e.g. options are not correct) or it is finished
+    public static void fail(LogFileParserProgress progress) {
+        if (!RUNNING_METRICS.remove(progress.getMetrics())) return;
+        progress.getMetrics().finish();
+        FAILED_PARSINGS.incrementAndGet();
+    }
+
+    public static void cancel(LogFileParserProgress progress) {
+        if (!RUNNING_METRICS.remove(progress.getMetrics())) return;
+        progress.getMetrics().finish();
+        CANCELLED_PARSINGS.incrementAndGet();
+    }
+
+    public static JSONObject toJSONObject() {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("finishedParsings", FINISHED_PARSINGS.get());
+        jsonObject.put("failedParsings", FAILED_PARSINGS.get());
+        jsonObject.put("cancelledParsings", CANCELLED_PARSINGS.get());
+        jsonObject.put("runningParsings", RUNNING_METRICS.size());
+        jsonObject.put("queuedJobs", LogFileParserJobs.getQueuedJobsQuantity());
+        JSONObject histogramsJsonObject = new JSONObject();
+        for (Map.Entry<String, LogFileParserHistogram> histogram : HISTOGRAM_MAP.entrySet()) {
+            histogramsJsonObject.put(histogram.getKey(), histogram.getValue().getSnapshot().toJSONObject());
+        }
+        jsonObject.put("histograms", histogramsJsonObject);
+        return jsonObject;
+    }
+
+    private static Map<String, LogFileParserHistogram> createHistogramMap() {
+        Map<String, LogFileParserHistogram> histogramMap = new LinkedHashMap<>();
+        for (String name : Arrays.asList("elapsedMs", "readBytes", "readLines", "createdRecords", "filteredRecords",
+                "duplicatePercent", "clusters", "peakHeapBytes")) {
+            histogramMap.put(name, new LogFileParserHistogram());
+        }
+        for (LogFileParserMetrics.Stage stage : LogFileParserMetrics.Stage.values()) {
+            histogramMap.put(getStageName(stage) + "TimeMs", new LogFileParserHistogram());
+            histogramMap.put(getStageName(stage) + "AllocatedBytes", new LogFileParserHistogram());
+        }
+        return Collections.unmodifiableMap(histogramMap);
+    }
+
+    private static String getStageName(LogFileParserMetrics.Stage stage) {
+        return stage.name().toLowerCase();
+    }
+
+    // heap is used most of all just before garbage collection
+    private static void updatePeakHeap(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType()) || RUNNING_METRICS.isEmpty()) return;
+        GarbageCollectionNotificationInfo gcNotificationInfo = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        long usedHeapBytes = gcNotificationInfo.getGcInfo().getMemoryUsageBeforeGc().entrySet().stream()
+                .filter(memoryUsage -> heapPoolNames.contains(memoryUsage.getKey()))
+                .mapToLong(memoryUsage -> memoryUsage.getValue().getUsed())
+                .sum();
+        for (LogFileParserMetrics metrics : RUNNING_METRICS) {
+            metrics.updatePeakHeap(usedHeapBytes);
+        }
+    }
+
+    private static class StatisticsMXBean implements LogFileParserStatisticsMXBean {
+        @Override
+        public long getFinishedParsings() {
+            return FINISHED_PARSINGS.get();
+        }
+
+        @Override
+        public long getFailedParsings() {
+            return FAILED_PARSINGS.get();
+        }
+
+        @Override
+        public long getCancelledParsings() {
+            return CANCELLED_PARSINGS.get();
+        }
+
+        @Override
+        public int getRunningParsings() {
+            return RUNNING_METRICS.size();
+        }
+
+        @Override
+        public int getQueuedJobs() {
+            return LogFileParserJobs.getQueuedJobsQuantity();
+        }
+
+        @Override
+        public Map<String, LogFileParserHistogram.Snapshot> getHistograms() {
+            Map<String, LogFileParserHistogram.Snapshot> snapshotMap = new LinkedHashMap<>();
+            for (Map.Entry<String, LogFileParserHistogram> histogram : HISTOGRAM_MAP.entrySet()) {
+                snapshotMap.put(histogram.getKey(), histogram.getValue().getSnapshot());
+            }
+            return snapshotMap;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.trackensure;
+
+import java.util.Map;
+
+// statistics of parsings registered by LogFileParserStatistics.register() as com.trackensure:type=LogFileParserStatistics
+public interface LogFileParserStatisticsMXBean {
+    long getFinishedParsings();
+
+    long getFailedParsings();
+
+    long getCancelledParsings();
+
+    int getRunningParsings();
+
+    int getQueuedJobs();
+
+    // histograms of metrics of finished parsings by names of metrics
+    Map<String, LogFileParserHistogram.Snapshot> getHistograms();
+}
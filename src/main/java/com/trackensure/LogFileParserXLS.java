@@ -6,8 +6,15 @@ import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.apache.poi.ss.usermodel.CellStyle.*;
 
@@ -15,26 +22,52 @@ public class LogFileParserXLS {
 
     private static final Class<LogFileParserXLS> CLAZZ = LogFileParserXLS.class;
     private static final Logger logger = Logger.getLogger(CLAZZ);
-    final int MAX_CELL_LENGTH = 32_767;
+    static final int MAX_CELL_LENGTH = 32_767;
 
     CellStyle arial12BoldFontCellStyle;
     CellStyle arial11CellStyleError;
 
+    private LogRecordXlsxWriter streamingWriter;
+    private final LogFileParserMetrics metrics;
+    private LogFileParserMetrics.StageClock clock;
+
+    public LogFileParserXLS() {
+        this(new LogFileParserMetrics());
+    }
+
+    // writing of the book is measured as the stage of export of the parsing
+    public LogFileParserXLS(LogFileParserMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public void generateAndSendExcelFile(HttpServletResponse response, List<List<LogRecord>> logRecordListAssembled, String fileName) throws TEAppException {
+        generateAndWriteExcelFile(response, null, logRecordListAssembled, fileName);
+    }
+
+    // the same, but the book is written to outputStream (e.g. a file of parsing job), which is not closed
+    public void generateAndWriteExcelFile(OutputStream outputStream, List<List<LogRecord>> logRecordListAssembled) throws TEAppException {
+        generateAndWriteExcelFile(null, outputStream, logRecordListAssembled, null);
+    }
+
+    private void generateAndWriteExcelFile(HttpServletResponse response, OutputStream outputStream,
+                                           List<List<LogRecord>> logRecordListAssembled, String fileName) throws TEAppException {
         SXSSFWorkbook wb = null;
+        clock = metrics.startClock(LogFileParserMetrics.Stage.EXPORT);
         try {
             wb = new SXSSFWorkbook();
             wb.setCompressTempFiles(true);
+            initStyleOfCells(wb);
             logger.info("generateAndSendExcelFile(): start write book.");
-            for (int i = 0; i < logRecordListAssembled.size(); i++) {
-                List<LogRecord> dataList = logRecordListAssembled.get(i);
-                generateSheet(wb, dataList, ((Integer)i).toString());
-            }
+            generateSheets(wb, logRecordListAssembled);
             logger.info("generateAndSendExcelFile(): finish write book.");
+            if (Objects.isNull(response)) {
+                wb.write(outputStream);
+                return;
+            }
             prepareResponseToSendExcelFile(response, fileName);
-            OutputStream outputStream = response.getOutputStream();
-            wb.write(outputStream);
-            outputStream.close();
+            OutputStream responseOutputStream = response.getOutputStream();
+            wb.write(responseOutputStream);
+            responseOutputStream.close();
             logger.info("generateAndSendExcelFile(): file has been sent: " + fileName + ".");
         } catch (Exception e) {
             logger.error("Exception in LogFileParserXLS generateExcelFile()", e);
@@ -43,10 +76,12 @@ public class LogFileParserXLS {
             if (wb != null) {
                 wb.dispose ();
             }
+            clock.stop();
         }
     }
 
-    private void prepareResponseToSendExcelFile(HttpServletResponse response, String fileName) throws TEAppException {
+    // headers of the book sent as the response
+    public void prepareResponseToSendExcelFile(HttpServletResponse response, String fileName) throws TEAppException {
         try {
             response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
             response.setHeader("Content-Disposition", "attachment; filename=" + fileName);
@@ -57,10 +92,98 @@ public class LogFileParserXLS {
         }
     }
 
-    private void generateSheet(SXSSFWorkbook wb, List<LogRecord> dataList, String sheetName) throws TEAppException {
+    // streaming mode: the book is written by records as they are read straight to outputStream, which is not closed,
+    // without temp files, so the download starts with the first records
+    public void startExcelFile(OutputStream outputStream) {
+        this.streamingWriter = new LogRecordXlsxWriter(outputStream);
+        logger.info("startExcelFile(): start write book.");
+    }
+
+    public void writeRecord(LogRecord data) throws TEAppException {
+        try {
+            if (streamingWriter.getRowCount() == LogFileParser.MAX_ROWS_FOR_SHEET) streamingWriter.startSheet();
+            streamingWriter.writeRecord(data);
+        } catch (IOException e) {
+            logger.error("writeRecord(). rowNumber = " + data.getRowNumber(), e);
+            throw new TEAppException(e.getMessage(), e);
+        }
+    }
+
+    public void finishExcelFile() throws TEAppException {
+        clock = metrics.startClock(LogFileParserMetrics.Stage.EXPORT);
+        try {
+            streamingWriter.finish();
+            logger.info("finishExcelFile(): finish write book.");
+        } catch (IOException e) {
+            logger.error("Exception in LogFileParserXLS finishExcelFile()", e);
+            throw new TEAppException(e.getMessage(), e);
+        } finally {
+            clock.stop();
+        }
+    }
+
+    // sheets are created and finished one by one, because the workbook is changed then, but rows of sheets are written
+    // by LogFileParserConfig.getXlsThreadsQuantity() threads at the same time: every sheet has its own temp file, which is
+    // compressed by the thread writing the sheet, styles are shared read only, and strings are written inline, so there is
+    // no shared strings table
+    private void generateSheets(SXSSFWorkbook wb, List<List<LogRecord>> logRecordListAssembled) throws TEAppException {
+        List<Sheet> sheetList = new ArrayList<>();
+        for (int sheetIndex = 0; sheetIndex < logRecordListAssembled.size(); sheetIndex++) {
+            sheetList.add(createSheet(wb, ((Integer) sheetIndex).toString()));
+        }
+        int threadsQuantity = Math.min(LogFileParserConfig.getXlsThreadsQuantity(), sheetList.size());
+        if (threadsQuantity <= 1) {
+            for (int sheetIndex = 0; sheetIndex < sheetList.size(); sheetIndex++) {
+                generateSheet(sheetList.get(sheetIndex), logRecordListAssembled.get(sheetIndex));
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(threadsQuantity);
+            try {
+                List<Future<?>> futureList = new ArrayList<>();
+                for (int sheetIndex = 0; sheetIndex < sheetList.size(); sheetIndex++) {
+                    Sheet sh = sheetList.get(sheetIndex);
+                    List<LogRecord> dataList = logRecordListAssembled.get(sheetIndex);
+                    futureList.add(executor.submit(() -> {
+                        LogFileParserMetrics.StageClock sheetClock = metrics.startClock(LogFileParserMetrics.Stage.EXPORT);
+                        try {
+                            generateSheet(sh, dataList);
+                        } finally {
+                            sheetClock.stop();
+                        }
+                        return null;
+                    }));
+                }
+                //sheets are measured by their threads
+                clock.pause();
+                for (Future<?> future : futureList) {
+                    future.get();
+                }
+                clock.switchTo(LogFileParserMetrics.Stage.EXPORT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TEAppException("Writing of book has been interrupted.", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof TEAppException) throw (TEAppException) e.getCause();
+                throw new TEAppException(e.getCause().getMessage(), e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        for (int sheetIndex = 0; sheetIndex < sheetList.size(); sheetIndex++) {
+            finishSheet(sheetList.get(sheetIndex), ((Integer) sheetIndex).toString());
+        }
+    }
+
+    private void generateSheet(Sheet sh, List<LogRecord> dataList) throws TEAppException {
+        int rowCount = 0;
+        for (LogRecord data : dataList) {
+            writeRow(sh, ++rowCount, data);
+        }
+    }
+
+    private Sheet createSheet(SXSSFWorkbook wb, String sheetName) {
         logger.info("generateSheet(): start generate sheet " + sheetName + ".");
         Sheet sh = wb.createSheet(sheetName);
-        initStyleOfCells(wb);
         Row row = sh.createRow(0);
         String[] titlesOfColumns = {"Row", "Log Name", "Date", "Time", "Priority", "Thread", "Category", "Message", "MessageValues", "Stack Trace", "Similar Rows Quantity", "Not parsed row"};
         for (int i = 0; i < titlesOfColumns.length; i++) {
@@ -68,62 +191,63 @@ public class LogFileParserXLS {
             cellHeader.setCellStyle(arial12BoldFontCellStyle);
             cellHeader.setCellValue(titlesOfColumns[i]);
         }
-        LogRecord data = null;
+        return sh;
+    }
+
+    private void writeRow(Sheet sh, int rowCount, LogRecord data) throws TEAppException {
         int column = 0;
         try {
             Cell cell;
-            for (int rowCount = 1; (rowCount <= dataList.size()); rowCount++) {
-                row = sh.createRow(rowCount);
-                data = dataList.get(rowCount - 1);
-
-                column = 0;
-                //A Row
-                cell = row.createCell(column++);
-                cell.setCellValue(data.getRowNumber());
-                //B Log Name
-                cell = row.createCell(column++);
-                cell.setCellValue((data.getLogName() != null) ? data.getLogName() : "");
-                //C Date
-                cell = row.createCell(column++);
-                cell.setCellValue((data.getDate() != null) ? data.getDate().toString() : "");
-                //D Time
-                cell = row.createCell(column++);
-                cell.setCellValue((data.getTime() != null) ? data.getTime().toString().replace('.',',') : "");
-                //E Priority
-                cell = row.createCell(column++);
-                cell.setCellValue((data.getPriority() != null) ? data.getPriority().toString() : "");
-                //F Thread
-                cell = row.createCell(column++);
-                cell.setCellValue((data.getThread() != null) ? data.getThread() : "");
-                //G Category
-                cell = row.createCell(column++);
-                cell.setCellValue((data.getCategory() != null) ? data.getCategory() : "");
-                //H Message
-                cell = row.createCell(column++);
-                String messageString = data.getMessageStr();
-                setStringValueWithCheck(cell, messageString);
-                //I Message Values
-                cell = row.createCell(column++);
-                String messageValuesString = data.getMessageValuesStr();
-                setStringValueWithCheck(cell, messageValuesString);
-                //J Stack Trace
-                cell = row.createCell(column++);
-                String stackTraceString = data.getStackTraceStr();
-                setStringValueWithCheck(cell, stackTraceString);
-                //K Similar Rows Quantity
-                cell = row.createCell(column++);
-                cell.setCellValue(data.getSimilarRowsQuantity());
-                //L Error
-                cell = row.createCell(column);
-                String errorString = data.getErrorStr();
-                setStringValueWithCheck(cell, errorString);
-            }
-            logger.info("generateSheet(): finish generate sheet " + sheetName + ".");
+            Row row = sh.createRow(rowCount);
+
+            //A Row
+            cell = row.createCell(column++);
+            cell.setCellValue(data.getRowNumber());
+            //B Log Name
+            cell = row.createCell(column++);
+            cell.setCellValue((data.getLogName() != null) ? data.getLogName() : "");
+            //C Date
+            cell = row.createCell(column++);
+            cell.setCellValue((data.getDate() != null) ? data.getDate().toString() : "");
+            //D Time
+            cell = row.createCell(column++);
+            cell.setCellValue((data.getTime() != null) ? data.getTime().toString().replace('.',',') : "");
+            //E Priority
+            cell = row.createCell(column++);
+            cell.setCellValue((data.getPriority() != null) ? data.getPriority().toString() : "");
+            //F Thread
+            cell = row.createCell(column++);
+            cell.setCellValue((data.getThread() != null) ? data.getThread() : "");
+            //G Category
+            cell = row.createCell(column++);
+            cell.setCellValue((data.getCategory() != null) ? data.getCategory() : "");
+            //H Message
+            cell = row.createCell(column++);
+            String messageString = data.getMessageStr();
+            setStringValueWithCheck(cell, messageString);
+            //I Message Values
+            cell = row.createCell(column++);
+            String messageValuesString = data.getMessageValuesStr();
+            setStringValueWithCheck(cell, messageValuesString);
+            //J Stack Trace
+            cell = row.createCell(column++);
+            String stackTraceString = data.getStackTraceStr();
+            setStringValueWithCheck(cell, stackTraceString);
+            //K Similar Rows Quantity
+            cell = row.createCell(column++);
+            cell.setCellValue(data.getSimilarRowsQuantity());
+            //L Error
+            cell = row.createCell(column);
+            String errorString = data.getErrorStr();
+            setStringValueWithCheck(cell, errorString);
         } catch (Exception e) {
             logger.error("generateSheet(). rowNumber = " + data.getRowNumber() + ". column = " + column, e);
             throw new TEAppException(e.getMessage(), e);
         }
+    }
 
+    private void finishSheet(Sheet sh, String sheetName) {
+        logger.info("generateSheet(): finish generate sheet " + sheetName + ".");
         int convertIndex = 34;
         int[] summaryColumnWidthArray = {50, 150, 75, 75, 50, 100, 130, 200, 200, 200, 150, 100};
         for (int x = 0; x < summaryColumnWidthArray.length; x++) {
@@ -134,6 +258,7 @@ public class LogFileParserXLS {
         sh.createFreezePane(0, 1);
     }
 
+    // styles are created once for the book and used by all its sheets
     private void initStyleOfCells(SXSSFWorkbook wb) {
         Font arial12BoldFont = wb.createFont();
         arial12BoldFont.setFontName("ARIAL");
@@ -0,0 +1,638 @@
+package com.trackensure;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+public class LogFileReader {
+    private static final Class<LogFileReader> CLAZZ = LogFileReader.class;
+    private static final Logger logger = Logger.getLogger(CLAZZ);
+
+    private static final byte[] START_LOG_LABEL = "** /".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END_LOG_LABEL = "## /".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STACK_TRACE_PREFIX = "at ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EMPTY_ROW = "--".getBytes(StandardCharsets.US_ASCII);
+    private static final List<byte[]> NOT_TE_STACK_TRACE_PREFIX_LIST = Collections.unmodifiableList(Arrays.asList(
+            "java".getBytes(StandardCharsets.US_ASCII),
+            "org.".getBytes(StandardCharsets.US_ASCII),
+            "com.zaxxer.hikari.pool".getBytes(StandardCharsets.US_ASCII),
+            "com.sun.".getBytes(StandardCharsets.US_ASCII),
+            "it.sauronsoftware.".getBytes(StandardCharsets.US_ASCII),
+            "sun.".getBytes(StandardCharsets.US_ASCII)));
+
+    private final File sourceFile;
+    private final Charset charset;
+    private final boolean isGatherMessages;
+    private final boolean isTeStackTraceOnly;
+    private final int startRow;
+    private final int finishRow;
+    private final UniqLogRecordCollection uniqLogRecordCollection;
+    private final Consumer<LogRecord> logRecordConsumer;
+    private final LogRecordHeaderParser headerParser = new LogRecordHeaderParser();
+    private final TokenDictionary tokenDictionary;
+    private final MessageTokenizer messageTokenizer;
+    private final int finisherThreadsQuantity;
+
+    private String logName;
+    private LogRecord record;
+    private List<String> stackTrace;
+    private BitSet notTeStackTraceRows;
+    private List<String> error;
+    private ParsedLogCache.RangeWriter rangeWriter;
+    private LogRecordPipeline pipeline;
+    private LogFileParserMetrics metrics = new LogFileParserMetrics();
+    private LogFileParserMetrics.StageClock clock;
+    private LogFileParserMetrics.StageClock aggregatorClock;
+    private LogRecordFilter filter;
+
+    private boolean wasMessage = false;
+    private boolean wasStackTrace = false;
+    //the record is rejected by its first row, so the rest of its rows are skipped
+    private boolean isRecordSkipped = false;
+    private boolean isMoreThanLimitRow = false;
+    private boolean isNeedToInterrupt = false;
+    private int rowsQuantity = 0;
+    private long readLinesQuantity = 0;
+    private long createdRecordsQuantity = 0;
+    private long filteredRecordsQuantity = 0;
+    private long duplicateRecordsQuantity = 0;
+
+    // tokenDictionary is used for tokens of messages if isGatherMessages.
+    // If uniqLogRecordCollection is not null, duplicates of its records are counted there and not passed to logRecordConsumer
+    public LogFileReader(File sourceFile, Charset charset, boolean isGatherMessages, boolean isErrorsOnly, boolean isTeStackTraceOnly,
+                         int startRow, int finishRow, TokenDictionary tokenDictionary, UniqLogRecordCollection uniqLogRecordCollection,
+                         Consumer<LogRecord> logRecordConsumer) {
+        this(sourceFile, charset, isGatherMessages, isErrorsOnly, isTeStackTraceOnly, startRow, finishRow, tokenDictionary,
+                uniqLogRecordCollection, logRecordConsumer, 0);
+    }
+
+    // if finisherThreadsQuantity > 0, records read from the file are finished by LogRecordPipeline and logRecordConsumer
+    // is called by its aggregator thread, otherwise everything is done by the thread which reads the file
+    public LogFileReader(File sourceFile, Charset charset, boolean isGatherMessages, boolean isErrorsOnly, boolean isTeStackTraceOnly,
+                         int startRow, int finishRow, TokenDictionary tokenDictionary, UniqLogRecordCollection uniqLogRecordCollection,
+                         Consumer<LogRecord> logRecordConsumer, int finisherThreadsQuantity) {
+        this.sourceFile = sourceFile;
+        this.charset = charset;
+        this.isGatherMessages = isGatherMessages;
+        this.filter = LogRecordFilter.ALL.withErrorsOnly(isErrorsOnly);
+        this.isTeStackTraceOnly = isTeStackTraceOnly;
+        this.startRow = startRow;
+        this.finishRow = finishRow;
+        this.uniqLogRecordCollection = uniqLogRecordCollection;
+        this.logRecordConsumer = logRecordConsumer;
+        this.tokenDictionary = tokenDictionary;
+        this.messageTokenizer = isGatherMessages ? new MessageTokenizer(tokenDictionary) : null;
+        this.finisherThreadsQuantity = finisherThreadsQuantity;
+    }
+
+    // rows and records which are read and time of stages are added to metrics after every reading
+    public void setMetrics(LogFileParserMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // records which are not kept by the filter are filtered out instead of the filter made of isErrorsOnly
+    public void setFilter(LogRecordFilter filter) {
+        this.filter = filter;
+    }
+
+    public void readFile() throws TEAppException {
+        if (CompressedLogInputStream.isCompressed(sourceFile)) {
+            readCompressedFile();
+        } else {
+            read(0, sourceFile.length());
+        }
+    }
+
+    // reads rows from fromByte (inclusive) to toByte (exclusive), both must be bounds returned by splitFileToRanges().
+    // Row numbers are counted from the start of the range and logName is null until the first label of log
+    // if the range is not the first one, the caller shifts them by the previous ranges (getRowsQuantity(), getLogName()).
+    // If rangeWriter is not null, all read records are written there before filtering, otherwise records rejected
+    // by the filter are skipped by their first row with the rest of their rows
+    public void readFileRange(long fromByte, long toByte, ParsedLogCache.RangeWriter rangeWriter) throws TEAppException {
+        this.rangeWriter = rangeWriter;
+        try {
+            read(fromByte, toByte);
+        } catch (TEAppException | RuntimeException e) {
+            if (Objects.nonNull(rangeWriter)) rangeWriter.abort();
+            throw e;
+        }
+    }
+
+    // passes records of the range saved by ParsedLogCache instead of reading the file,
+    // returns false if the records are already removed from the cache, so the range must be read from the file
+    public boolean readCachedRange(ParsedLogCache.CachedRange cachedRange) throws TEAppException {
+        ParsedLogCache.RangeReader rangeReader;
+        try {
+            rangeReader = cachedRange.openRangeReader();
+        } catch (IOException e) {
+            logger.warn("readCachedRange(): cached records of file " + sourceFile.getName() + " are not available", e);
+            return false;
+        }
+        clock = metrics.startClock(LogFileParserMetrics.Stage.READ);
+        try {
+            logger.info("readCachedRange(): start reading cached records of file " + sourceFile.getName() + " from " + cachedRange.getFromByte() + " to " + cachedRange.getToByte() + " byte.");
+            while (rangeReader.next(filter)) {
+                recordAdd(rangeReader.getRecord(), rangeReader.getStackTrace(), rangeReader.getNotTeStackTraceRows(), rangeReader.getError());
+            }
+            createdRecordsQuantity += rangeReader.getSkippedRecordsQuantity();
+            filteredRecordsQuantity += rangeReader.getSkippedRecordsQuantity();
+            rowsQuantity = cachedRange.getRowsQuantity();
+            readLinesQuantity = rowsQuantity;
+            logName = cachedRange.getLogName();
+            logger.info("readCachedRange(): finish reading cached records of file " + sourceFile.getName() + ".");
+            return true;
+        } catch (IOException e) {
+            logger.error("readCachedRange(): error while reading cached records of file " + sourceFile.getName(), e);
+            throw new TEAppException("Error while reading cached records of file: " + sourceFile.getName(), e);
+        } finally {
+            try {
+                rangeReader.close();
+            } catch (IOException e) {
+                logger.warn("readCachedRange(): file of cached records is not closed", e);
+            }
+            addMetrics();
+        }
+    }
+
+    private void read(long fromByte, long toByte) throws TEAppException {
+        clock = metrics.startClock(LogFileParserMetrics.Stage.READ);
+        try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+            logger.info("read(): start reading file " + sourceFile.getName() + " from " + fromByte + " to " + toByte + " byte.");
+            this.logName = (fromByte == 0) ? sourceFile.getName() : null;
+            //rows are read from the nearest indexed row before startRow and only up to finishRow
+            LogLineIndex lineIndex = (fromByte == 0 && (startRow != 0 || finishRow != 0))
+                    ? LogLineIndex.load(sourceFile, LogFileParserConfig.getLineIndexDir(), LogFileParserConfig.getLineIndexStep()) : null;
+            int firstRow = Objects.isNull(lineIndex) ? 1 : lineIndex.getNearestRow(startRow);
+            long firstRowOffset = Objects.isNull(lineIndex) ? fromByte : lineIndex.getOffset(firstRow);
+            int rowNumberShift = firstRow - 1;
+            startPipeline();
+            readLinesQuantity = new LogLineScanner(charset).scan(channel, firstRowOffset, toByte, (line, scannedRowNumber) -> {
+                int rowNumber = scannedRowNumber + rowNumberShift;
+                if (Objects.nonNull(lineIndex)) lineIndex.addRow(rowNumber, line.getOffset());
+                if (rowNumber < startRow) return true;
+                readRowFromFile(line, rowNumber);
+                return !isNeedToInterrupt && !Thread.currentThread().isInterrupted();
+            });
+            rowsQuantity = rowNumberShift + (int) readLinesQuantity;
+            checkInterrupted();
+            recordAdd(record, stackTrace, notTeStackTraceRows, error); //add last record of the range
+            finishPipeline();
+            if (Objects.nonNull(lineIndex)) lineIndex.save();
+            logger.info("read(): finish reading file " + sourceFile.getName() + " from " + fromByte + " to " + toByte + " byte.");
+        } catch (NoSuchFileException e) {
+            logger.error("read(): file " + sourceFile.getName() + " not exist." , e);
+            throw new TEAppException("File not exist: " + sourceFile.getName(), e);
+        } catch (IOException e) {
+            logger.error("read(): error while reading file " + sourceFile.getName(), e);
+            throw new TEAppException("Error while reading file: " + sourceFile.getName(), e);
+        } finally {
+            closePipeline();
+            addMetrics();
+        }
+    }
+
+    // compressed file is decompressed by other threads while its rows are read. It can't be read from the middle,
+    // so it is read from the start up to finishRow and is not split to ranges
+    private void readCompressedFile() throws TEAppException {
+        clock = metrics.startClock(LogFileParserMetrics.Stage.READ);
+        try (InputStream in = CompressedLogInputStream.open(sourceFile, LogFileParserConfig.getDecompressThreadsQuantity())) {
+            logger.info("readCompressedFile(): start reading file " + sourceFile.getName() + ".");
+            this.logName = CompressedLogInputStream.getUncompressedName(sourceFile);
+            startPipeline();
+            rowsQuantity = new LogLineScanner(charset).scan(in, (line, rowNumber) -> {
+                if (rowNumber < startRow) return true;
+                readRowFromFile(line, rowNumber);
+                return !isNeedToInterrupt && !Thread.currentThread().isInterrupted();
+            });
+            readLinesQuantity = rowsQuantity;
+            checkInterrupted();
+            recordAdd(record, stackTrace, notTeStackTraceRows, error); //add last record of the file
+            finishPipeline();
+            logger.info("readCompressedFile(): finish reading file " + sourceFile.getName() + ".");
+        } catch (NoSuchFileException e) {
+            logger.error("readCompressedFile(): file " + sourceFile.getName() + " not exist." , e);
+            throw new TEAppException("File not exist: " + sourceFile.getName(), e);
+        } catch (IOException e) {
+            logger.error("readCompressedFile(): error while reading file " + sourceFile.getName(), e);
+            throw new TEAppException("Error while reading file: " + sourceFile.getName(), e);
+        } finally {
+            closePipeline();
+            addMetrics();
+        }
+    }
+
+    // reading is stopped when the thread is interrupted (e.g. parsing job is cancelled)
+    private void checkInterrupted() throws TEAppException {
+        if (Thread.currentThread().isInterrupted())
+            throw new TEAppException("Reading of file " + sourceFile.getName() + " has been interrupted.");
+    }
+
+    private void startPipeline() {
+        if (finisherThreadsQuantity <= 0) return;
+        //the clock is used by the aggregator thread only while it aggregates a record, it waits for batches the rest of the time
+        LogFileParserMetrics.StageClock pipelineAggregatorClock = metrics.createClock();
+        aggregatorClock = pipelineAggregatorClock;
+        pipeline = new LogRecordPipeline(finisherThreadsQuantity, LogFileParserConfig.getPipelineBatchSize(), LogFileParserConfig.getPipelineQueueBatches(),
+                this::finishRecords, record -> {
+                    pipelineAggregatorClock.switchTo(LogFileParserMetrics.Stage.ASSEMBLE);
+                    aggregateRecord(record, uniqLogRecordCollection, logRecordConsumer, messageTokenizer, pipelineAggregatorClock);
+                    pipelineAggregatorClock.pause();
+                });
+    }
+
+    private void finishPipeline() throws TEAppException {
+        if (Objects.isNull(pipeline)) return;
+        pipeline.finish();
+        aggregatorClock.stop();
+    }
+
+    private void closePipeline() {
+        if (Objects.isNull(pipeline)) return;
+        pipeline.close();
+        pipeline = null;
+    }
+
+    // called by finisher threads of the pipeline, so the tokenizer and the clock are not shared
+    private List<LogRecord> finishRecords(List<LogRecordPipeline.AssembledRecord> assembledRecordList) {
+        LogFileParserMetrics.StageClock batchClock = metrics.startClock(LogFileParserMetrics.Stage.ASSEMBLE);
+        MessageTokenizer batchMessageTokenizer = isGatherMessages ? new MessageTokenizer(tokenDictionary) : null;
+        List<LogRecord> logRecordList = new ArrayList<>(assembledRecordList.size());
+        int batchFilteredRecordsQuantity = 0;
+        for (LogRecordPipeline.AssembledRecord assembledRecord : assembledRecordList) {
+            LogRecord record = assembledRecord.getRecord();
+            if (isFilteredOut(record)) {
+                batchFilteredRecordsQuantity++;
+                continue;
+            }
+            prepareRecord(record, assembledRecord.getStackTrace(), assembledRecord.getNotTeStackTraceRows(), assembledRecord.getError(),
+                    Objects.nonNull(uniqLogRecordCollection), batchMessageTokenizer, batchClock);
+            logRecordList.add(record);
+        }
+        metrics.addFilteredRecords(batchFilteredRecordsQuantity);
+        batchClock.stop();
+        return logRecordList;
+    }
+
+    // follow mode: reads complete rows appended to the file after followState (from the start of file if it is null)
+    // and returns the state after them. The last record can get more rows later, so it is kept in the state and only
+    // its copy is passed to lastLogRecordConsumer, without deduplication in uniqLogRecordCollection
+    public FollowState readAppendedRows(FollowState followState, Consumer<LogRecord> lastLogRecordConsumer) throws TEAppException {
+        FollowState state = Objects.isNull(followState) ? new FollowState() : followState;
+        clock = metrics.startClock(LogFileParserMetrics.Stage.READ);
+        try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            logger.info("readAppendedRows(): start reading file " + sourceFile.getName() + " from " + state.offset + " to " + fileSize + " byte.");
+            this.logName = Objects.isNull(followState) ? sourceFile.getName() : state.logName;
+            this.record = state.record;
+            this.stackTrace = state.stackTrace;
+            this.notTeStackTraceRows = state.notTeStackTraceRows;
+            this.error = state.error;
+            this.wasMessage = state.wasMessage;
+            this.wasStackTrace = state.wasStackTrace;
+            this.isRecordSkipped = state.isRecordSkipped;
+            LogLineScanner scanner = new LogLineScanner(charset);
+            int scannedRowsQuantity = scanner.scan(channel, state.offset, fileSize, true, (line, scannedRowNumber) -> {
+                readRowFromFile(line, state.rowsQuantity + scannedRowNumber);
+                return true;
+            });
+            FollowState newState = new FollowState();
+            newState.offset = scanner.getScannedToByte();
+            newState.rowsQuantity = state.rowsQuantity + scannedRowsQuantity;
+            readLinesQuantity = scannedRowsQuantity;
+            newState.headLength = (int) Math.min(newState.offset, ParsedLogCache.HASHED_BYTES);
+            newState.headHash = (newState.headLength == state.headLength) ? state.headHash : ParsedLogCache.getHash(channel, 0, newState.headLength);
+            newState.logName = logName;
+            newState.record = record;
+            newState.stackTrace = stackTrace;
+            newState.notTeStackTraceRows = notTeStackTraceRows;
+            newState.error = error;
+            newState.wasMessage = wasMessage;
+            newState.wasStackTrace = wasStackTrace;
+            newState.isRecordSkipped = isRecordSkipped;
+            rowsQuantity = newState.rowsQuantity;
+            if (Objects.nonNull(record)) {
+                LogRecord lastRecord = new LogRecord(record);
+                if (Objects.nonNull(record.getMessage())) lastRecord.setMessage(new ArrayList<>(record.getMessage()));
+                recordAdd(lastRecord, Objects.isNull(stackTrace) ? null : new ArrayList<>(stackTrace), notTeStackTraceRows,
+                        Objects.isNull(error) ? null : new ArrayList<>(error), null, lastLogRecordConsumer);
+            }
+            logger.info("readAppendedRows(): finish reading file " + sourceFile.getName() + " to " + newState.offset + " byte.");
+            return newState;
+        } catch (NoSuchFileException e) {
+            logger.error("readAppendedRows(): file " + sourceFile.getName() + " not exist." , e);
+            throw new TEAppException("File not exist: " + sourceFile.getName(), e);
+        } catch (IOException e) {
+            logger.error("readAppendedRows(): error while reading file " + sourceFile.getName(), e);
+            throw new TEAppException("Error while reading file: " + sourceFile.getName(), e);
+        } finally {
+            addMetrics();
+        }
+    }
+
+    // the file is rotated or truncated if it is shorter than the read part or the first bytes are changed
+    public static boolean isFollowedFile(File sourceFile, FollowState followState) throws TEAppException {
+        if (sourceFile.length() < followState.offset) return false;
+        try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+            return ParsedLogCache.getHash(channel, 0, followState.headLength) == followState.headHash;
+        } catch (IOException e) {
+            logger.error("isFollowedFile(): error while reading file " + sourceFile.getName(), e);
+            throw new TEAppException("Error while reading file: " + sourceFile.getName(), e);
+        }
+    }
+
+    // counters of the reading are added to metrics by the reader thread when the pipeline (if any) is finished or closed
+    private void addMetrics() {
+        metrics.addReadLines(readLinesQuantity);
+        metrics.addCreatedRecords(createdRecordsQuantity);
+        metrics.addFilteredRecords(filteredRecordsQuantity);
+        metrics.addDuplicateRecords(duplicateRecordsQuantity);
+        readLinesQuantity = 0;
+        createdRecordsQuantity = 0;
+        filteredRecordsQuantity = 0;
+        duplicateRecordsQuantity = 0;
+        clock.stop();
+    }
+
+    public int getRowsQuantity() {
+        return rowsQuantity;
+    }
+
+    public String getLogName() {
+        return logName;
+    }
+
+    // splits file to ranges of about rangeSize bytes, every range except the first one starts with a row
+    // with date-time, so each range can be read by separate LogFileReader. Returns bounds of ranges: 0, ..., file length
+    public static List<Long> splitFileToRanges(File sourceFile, Charset charset, long rangeSize) throws TEAppException {
+        return splitFileToRanges(sourceFile, charset, 0, rangeSize);
+    }
+
+    // the same for the part of file from fromByte, which must be 0 or the bound of range
+    public static List<Long> splitFileToRanges(File sourceFile, Charset charset, long fromByte, long rangeSize) throws TEAppException {
+        List<Long> rangeBoundList = new ArrayList<>();
+        rangeBoundList.add(fromByte);
+        try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            for (long nextRangeStart = fromByte + rangeSize; nextRangeStart < fileSize; nextRangeStart += rangeSize) {
+                long lastRangeBound = rangeBoundList.get(rangeBoundList.size() - 1);
+                if (nextRangeStart <= lastRangeBound) continue;
+                long rangeBound = findRecordStart(channel, charset, nextRangeStart, fileSize);
+                if (rangeBound >= fileSize) break;
+                if (rangeBound > lastRangeBound) rangeBoundList.add(rangeBound);
+            }
+            rangeBoundList.add(fileSize);
+        } catch (IOException e) {
+            logger.error("splitFileToRanges(): error while reading file " + sourceFile.getName(), e);
+            throw new TEAppException("Error while reading file: " + sourceFile.getName(), e);
+        }
+        return rangeBoundList;
+    }
+
+    private static long findRecordStart(FileChannel channel, Charset charset, long fromByte, long fileSize) throws IOException, TEAppException {
+        long[] recordStart = {fileSize};
+        new LogLineScanner(charset).scan(channel, fromByte - 1, fileSize, (line, rowNumber) -> {
+            //the first row is the tail of row started before fromByte or empty row if fromByte is the start of row
+            if (rowNumber == 1 || !line.isDateTime() || line.contains(START_LOG_LABEL)) return true;
+            recordStart[0] = line.getOffset();
+            return false;
+        });
+        return recordStart[0];
+    }
+
+    private void readRowFromFile(LogLine line, int rowNumber) throws RuntimeException {
+        try {
+            if (finishRow != 0 && rowNumber > finishRow)
+                isMoreThanLimitRow = true;
+            if (line.contains(START_LOG_LABEL)) { // label of start log
+                String row = line.toString();
+                this.logName = row.substring(row.lastIndexOf("/") + 1, row.indexOf(" **"));
+                if (Objects.nonNull(error)) {
+                    if (Objects.isNull(record)) {
+                        record = new LogRecord();
+                        record.setRowNumber(rowNumber);
+                    }
+                    record.setError(error);
+                }
+                wasMessage = false;
+                wasStackTrace = false;
+                isRecordSkipped = false;
+            } else if (line.isDateTime()) { //row starts with date-time
+                if (!isMoreThanLimitRow) {
+                    recordAdd(record, stackTrace, notTeStackTraceRows, error);
+                    error = null;
+                    stackTrace = null;
+                    notTeStackTraceRows = null;
+                    //records written to the cache are not filtered, so they are all created
+                    isRecordSkipped = Objects.isNull(rangeWriter) && !filter.isEmpty() && headerParser.isRejected(line, filter);
+                    if (isRecordSkipped) {
+                        record = null;
+                        createdRecordsQuantity++;
+                        filteredRecordsQuantity++;
+                    } else {
+                        record = headerParser.parse(line, logName);
+                        if (Objects.isNull(record)) {
+                            record = fillMainFields(line.toString());
+                        }
+                        record.setRowNumber(rowNumber);
+                    }
+                    wasMessage = true;
+                    wasStackTrace = false;
+                } else
+                    isNeedToInterrupt = true;
+            } else if (isRecordSkipped && !line.contains(END_LOG_LABEL)) { //row of the rejected record
+                return;
+            } else if (line.startsWith(STACK_TRACE_PREFIX) || line.isStackTraceMore()) { //if stackTrace row
+                fillStackTrace(line);
+                wasMessage = false;
+                wasStackTrace = true;
+            } else if (line.contains(END_LOG_LABEL)) { //label of end log)
+                    if (!isMoreThanLimitRow) {
+                    recordAdd(record, stackTrace, notTeStackTraceRows, error);
+                    error = null;
+                    stackTrace = null;
+                    notTeStackTraceRows = null;
+                    logName = "";
+                    record = null;
+                    wasMessage = false;
+                    wasStackTrace = false;
+                    isRecordSkipped = false;
+                } else
+                    isNeedToInterrupt = true;
+            } else if (!line.isEmpty() && !line.equalsBytes(EMPTY_ROW)) { //other (unparsed) row
+                String row = line.toString();
+                if (wasMessage) {
+                    if (Objects.isNull(record.getMessage())) {
+                        record.setMessage(new ArrayList<>());
+                    }
+                    record.getMessage().add(row);
+                } else if (wasStackTrace) {
+                    stackTrace.add(row);
+                } else {
+                    if (!isMoreThanLimitRow) {
+                        if (Objects.isNull(record)) {
+                            record = new LogRecord();
+                            record.setRowNumber(rowNumber);
+                        }
+                        if (Objects.isNull(error)) {
+                            error = new ArrayList<>();
+                        }
+                        error.add(row);
+                    } else
+                        isNeedToInterrupt = true;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("readRowFromFile()", e);
+            throw new RuntimeException(e.getMessage(), e.getCause());
+        }
+    }
+
+    private LogRecord fillMainFields(String row) {
+        String dateString = row.substring(0, 10);
+        String timeString = row.substring(11, 23).replace(',', '.');
+        String priorityString = row.substring(24, 29).trim();
+        String thread = row.substring(row.indexOf("[") + 1, row.indexOf("] ")).trim();
+        String category = row.substring(row.indexOf("] ") + 1, row.indexOf(" -", row.indexOf("] ") + 1)).trim();
+        String messageString = row.substring((row.indexOf(" -", row.indexOf("] ") + 1) + 2))
+                .replace("\t\t", "\t")
+                .replace("\\s\t", "\\s")
+                .replace("\t\\s", "\\s")
+                .trim();
+        List<String> message = null;
+        if (!messageString.equals("")) {
+            message = new ArrayList<>();
+            message.add(messageString);
+        }
+        LocalDate date = LocalDate.parse(dateString);
+        LocalTime time = LocalTime.parse(timeString);
+        Level priority = Level.toLevel(priorityString);
+        return new LogRecord(logName, date, time, priority, thread, category, message);
+    }
+
+    // all rows are kept, not TE rows are marked and removed by recordAdd() if only TE stack trace is needed
+    private void fillStackTrace(LogLine line) {
+        if (Objects.isNull(stackTrace)) {
+            stackTrace = new ArrayList<>();
+            notTeStackTraceRows = new BitSet();
+        }
+        int stackTraceRowStart = (line.startsWith(STACK_TRACE_PREFIX)) ? STACK_TRACE_PREFIX.length : 0;
+        if (NOT_TE_STACK_TRACE_PREFIX_LIST.stream().anyMatch(prefix -> line.startsWith(prefix, stackTraceRowStart))) {
+            notTeStackTraceRows.set(stackTrace.size());
+        }
+        stackTrace.add(line.toString(stackTraceRowStart));
+    }
+
+    private void recordAdd(LogRecord record, List<String> stackTrace, BitSet notTeStackTraceRows, List<String> error) {
+        if (Objects.isNull(record)) return;
+        createdRecordsQuantity++;
+        if (Objects.nonNull(rangeWriter)) rangeWriter.write(record, stackTrace, notTeStackTraceRows, error);
+        if (Objects.nonNull(pipeline)) {
+            pipeline.add(record, stackTrace, notTeStackTraceRows, error);
+        } else if (!recordAdd(record, stackTrace, notTeStackTraceRows, error, uniqLogRecordCollection, logRecordConsumer)) {
+            filteredRecordsQuantity++;
+        }
+    }
+
+    // returns false if the record is filtered out, the clock of the reader is switched only for records which are kept
+    private boolean recordAdd(LogRecord record, List<String> stackTrace, BitSet notTeStackTraceRows, List<String> error,
+                              UniqLogRecordCollection uniqLogRecordCollection, Consumer<LogRecord> logRecordConsumer) {
+        if (isFilteredOut(record)) return false;
+        clock.switchTo(LogFileParserMetrics.Stage.ASSEMBLE);
+        prepareRecord(record, stackTrace, notTeStackTraceRows, error, Objects.nonNull(uniqLogRecordCollection), messageTokenizer, clock);
+        aggregateRecord(record, uniqLogRecordCollection, logRecordConsumer, messageTokenizer, clock);
+        clock.switchTo(LogFileParserMetrics.Stage.READ);
+        return true;
+    }
+
+    private boolean isFilteredOut(LogRecord record) {
+        return filter.isFilteredOut(record);
+    }
+
+    // the part of adding the record which doesn't depend on other records, called for records which are not filtered out.
+    // Strings and tokens of record are created later if it is not a duplicate
+    private void prepareRecord(LogRecord record, List<String> stackTrace, BitSet notTeStackTraceRows, List<String> error,
+                               boolean isUniqRecords, MessageTokenizer messageTokenizer, LogFileParserMetrics.StageClock clock) {
+        if (isTeStackTraceOnly && Objects.nonNull(stackTrace) && !notTeStackTraceRows.isEmpty()) {
+            List<String> teStackTrace = new ArrayList<>(stackTrace.size() - notTeStackTraceRows.cardinality());
+            for (int i = 0; i < stackTrace.size(); i++) {
+                if (!notTeStackTraceRows.get(i)) teStackTrace.add(stackTrace.get(i));
+            }
+            stackTrace = teStackTrace;
+        }
+        if (Objects.nonNull(stackTrace)) {
+            record.setStackTrace(stackTrace);
+        }
+        if (Objects.nonNull(error)) {
+            record.setError(error);
+        }
+        record.setSimilarRowsQuantity(1);
+        if (isUniqRecords) {
+            record.setFingerprint(LogRecordFingerprint.of(record.getPriority(), record.getCategory(), record.getMessage(), stackTrace));
+        } else {
+            fillStrings(record, messageTokenizer, clock);
+        }
+    }
+
+    // the part of adding the record which depends on the records added before, called in the order of rows
+    private void aggregateRecord(LogRecord record, UniqLogRecordCollection uniqLogRecordCollection, Consumer<LogRecord> logRecordConsumer,
+                                 MessageTokenizer messageTokenizer, LogFileParserMetrics.StageClock clock) {
+        if (Objects.nonNull(uniqLogRecordCollection)) {
+            //strings and tokens of duplicate are not needed
+            if (uniqLogRecordCollection.countDuplicate(record)) {
+                duplicateRecordsQuantity++;
+                return;
+            }
+            fillStrings(record, messageTokenizer, clock);
+        }
+        logRecordConsumer.accept(record);
+    }
+
+    // called in the stage of assembling, tokens are created in the stage of tokenizing
+    private void fillStrings(LogRecord record, MessageTokenizer messageTokenizer, LogFileParserMetrics.StageClock clock) {
+        if (Objects.nonNull(record.getStackTrace())) {
+            record.setStackTraceStr(String.join(System.lineSeparator(), record.getStackTrace()));
+        }
+        if (Objects.nonNull(record.getMessage()) && !record.getMessage().isEmpty()) {
+            String messageStr = String.join(System.lineSeparator(), record.getMessage());
+            record.setMessageStr(messageStr);
+            //tokens are needed only for joining of similar messages
+            if (isGatherMessages) {
+                clock.switchTo(LogFileParserMetrics.Stage.TOKENIZE);
+                record.setMessageTokens(messageTokenizer.createTokens(messageStr));
+                clock.switchTo(LogFileParserMetrics.Stage.ASSEMBLE);
+            }
+        }
+        if (Objects.nonNull(record.getError())) {
+            record.setErrorStr(String.join(System.lineSeparator(), record.getError()));
+        }
+    }
+
+    // where reading of the file in follow mode has stopped: the end of the last complete row and the state of
+    // the record which is not finished yet
+    public static class FollowState {
+        private long offset;
+        private int rowsQuantity;
+        private int headLength;
+        private long headHash;
+        private String logName;
+        private LogRecord record;
+        private List<String> stackTrace;
+        private BitSet notTeStackTraceRows;
+        private List<String> error;
+        private boolean wasMessage;
+        private boolean wasStackTrace;
+        private boolean isRecordSkipped;
+    }
+}
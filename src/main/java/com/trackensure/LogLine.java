@@ -0,0 +1,149 @@
+package com.trackensure;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+// one row of log file as bytes of the buffer, trimmed the same way as String.trim() does.
+// The instance is reused by LogLineScanner for every row, so it must not be kept after handleLine()
+public class LogLine {
+    private static final byte[] DATE_TIME_TEMPLATE = "0000-00-00 00:00:00,000 ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MORE_SUFFIX = " more".getBytes(StandardCharsets.US_ASCII);
+
+    private final Charset charset;
+    private ByteBuffer buffer;
+    private ByteBuffer bufferView;
+    private int start;
+    private int end;
+    private long offset;
+    private byte[] decodeBytes = new byte[256];
+
+    public LogLine(Charset charset) {
+        this.charset = charset;
+    }
+
+    void set(ByteBuffer buffer, int rowStart, int rowEnd, long offset) {
+        if (this.buffer != buffer) {
+            this.buffer = buffer;
+            this.bufferView = buffer.duplicate();
+        }
+        this.offset = offset;
+        while (rowStart < rowEnd && (buffer.get(rowStart) & 0xFF) <= ' ') rowStart++;
+        while (rowEnd > rowStart && (buffer.get(rowEnd - 1) & 0xFF) <= ' ') rowEnd--;
+        this.start = rowStart;
+        this.end = rowEnd;
+    }
+
+    // offset of the row start in the file
+    public long getOffset() {
+        return offset;
+    }
+
+    public int length() {
+        return end - start;
+    }
+
+    public boolean isEmpty() {
+        return end == start;
+    }
+
+    public byte byteAt(int index) {
+        return buffer.get(start + index);
+    }
+
+    public boolean equalsBytes(byte[] bytes) {
+        return length() == bytes.length && startsWith(bytes, 0);
+    }
+
+    public boolean startsWith(byte[] bytes) {
+        return startsWith(bytes, 0);
+    }
+
+    public boolean startsWith(byte[] bytes, int from) {
+        if (length() - from < bytes.length) return false;
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(start + from + i) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    public int indexOf(byte b, int from) {
+        for (int i = from; i < length(); i++) {
+            if (buffer.get(start + i) == b) return i;
+        }
+        return -1;
+    }
+
+    public int hashCode(int from, int to) {
+        int hash = 1;
+        for (int i = start + from; i < start + to; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        return hash;
+    }
+
+    public boolean equalsBytes(int from, int to, byte[] bytes) {
+        return to - from == bytes.length && startsWith(bytes, from);
+    }
+
+    public byte[] toBytes(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + from + i);
+        }
+        return bytes;
+    }
+
+    public boolean contains(byte[] bytes) {
+        return indexOf(bytes, 0) >= 0;
+    }
+
+    public int indexOf(byte[] bytes, int from) {
+        for (int i = from; i <= length() - bytes.length; i++) {
+            if (startsWith(bytes, i)) return i;
+        }
+        return -1;
+    }
+
+    // row starts with "yyyy-MM-dd HH:mm:ss,SSS "
+    public boolean isDateTime() {
+        if (length() < DATE_TIME_TEMPLATE.length) return false;
+        for (int i = 0; i < DATE_TIME_TEMPLATE.length; i++) {
+            byte b = buffer.get(start + i);
+            if (DATE_TIME_TEMPLATE[i] == '0' ? (b < '0' || b > '9') : b != DATE_TIME_TEMPLATE[i]) return false;
+        }
+        return true;
+    }
+
+    // row matches "... \d+ more", the first three characters may be any
+    public boolean isStackTraceMore() {
+        if (length() < 4 + 1 + MORE_SUFFIX.length) return false;
+        for (int i = 0; i < 3; i++) {
+            if (buffer.get(start + i) < 0) return toString().matches("... \\d+ more");
+        }
+        if (buffer.get(start + 3) != ' ' || !startsWith(MORE_SUFFIX, length() - MORE_SUFFIX.length)) return false;
+        for (int i = 4; i < length() - MORE_SUFFIX.length; i++) {
+            byte b = buffer.get(start + i);
+            if (b < '0' || b > '9') return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return toString(0);
+    }
+
+    public String toString(int from) {
+        return toString(from, length());
+    }
+
+    public String toString(int from, int to) {
+        int length = to - from;
+        if (decodeBytes.length < length) decodeBytes = new byte[Math.max(length, decodeBytes.length * 2)];
+        ((Buffer) bufferView).position(start + from);
+        bufferView.get(decodeBytes, 0, length);
+        return new String(decodeBytes, 0, length, charset);
+    }
+}
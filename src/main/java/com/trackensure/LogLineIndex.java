@@ -0,0 +1,108 @@
+package com.trackensure;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+// sparse index of rows of log file: offset of every step-th row (1, step + 1, 2 * step + 1, ...), so reading from
+// a row doesn't scan rows before it. The index is filled by the rows which are read and kept in the index directory
+// while the length and modification time of log file are the same. Not thread safe
+public class LogLineIndex {
+    private static final Class<LogLineIndex> CLAZZ = LogLineIndex.class;
+    private static final Logger logger = Logger.getLogger(CLAZZ);
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final File sourceFile;
+    private final File indexFile;
+    private final long fileLength;
+    private final long lastModified;
+    private final int step;
+    private long[] offsets = new long[16];
+    private int size = 1; //the first row starts at 0 byte
+    private boolean isChanged = false;
+
+    private LogLineIndex(File sourceFile, File indexFile, int step) {
+        this.sourceFile = sourceFile;
+        this.indexFile = indexFile;
+        this.fileLength = sourceFile.length();
+        this.lastModified = sourceFile.lastModified();
+        this.step = step;
+    }
+
+    // returns the saved index of the file or an empty one if the file is changed or not indexed yet
+    public static LogLineIndex load(File sourceFile, File indexDir, int step) {
+        String sourcePath = sourceFile.getAbsolutePath();
+        File indexFile = new File(indexDir, sourceFile.getName() + "-" + Integer.toHexString(sourcePath.hashCode()) + ".idx");
+        LogLineIndex lineIndex = new LogLineIndex(sourceFile, indexFile, step);
+        if (!indexFile.isFile()) return lineIndex;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != FORMAT_VERSION || !in.readUTF().equals(sourcePath) || in.readLong() != lineIndex.fileLength
+                    || in.readLong() != lineIndex.lastModified || in.readInt() != step) {
+                logger.info("load(): index of file " + sourceFile.getName() + " is out of date.");
+                return lineIndex;
+            }
+            int size = in.readInt();
+            long[] offsets = new long[Math.max(size, 16)];
+            for (int i = 0; i < size; i++) {
+                offsets[i] = in.readLong();
+            }
+            lineIndex.offsets = offsets;
+            lineIndex.size = size;
+        } catch (IOException e) {
+            logger.warn("load(): index of file " + sourceFile.getName() + " is not read from " + indexFile, e);
+        }
+        return lineIndex;
+    }
+
+    // the nearest indexed row which is not after rowNumber
+    public int getNearestRow(int rowNumber) {
+        int entry = Math.min(size - 1, Math.max(0, rowNumber - 1) / step);
+        return entry * step + 1;
+    }
+
+    // offset of the row returned by getNearestRow()
+    public long getOffset(int indexedRow) {
+        return offsets[(indexedRow - 1) / step];
+    }
+
+    // called for every read row in the order of rows, rows after the last indexed one are added to the index
+    public void addRow(int rowNumber, long offset) {
+        if ((rowNumber - 1) % step != 0 || (rowNumber - 1) / step != size) return;
+        if (size == offsets.length) offsets = Arrays.copyOf(offsets, size * 2);
+        offsets[size++] = offset;
+        isChanged = true;
+    }
+
+    // the index is only a cache, so it is not an error if it is not saved
+    public void save() {
+        if (!isChanged) return;
+        File tempFile = null;
+        try {
+            Files.createDirectories(indexFile.getParentFile().toPath());
+            tempFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(sourceFile.getAbsolutePath());
+                out.writeLong(fileLength);
+                out.writeLong(lastModified);
+                out.writeInt(step);
+                out.writeInt(size);
+                for (int i = 0; i < size; i++) {
+                    out.writeLong(offsets[i]);
+                }
+            }
+            //readers of the same file see the old or the new index, not a part of it
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            isChanged = false;
+            logger.info("save(): " + size + " rows of file " + sourceFile.getName() + " are indexed in " + indexFile);
+        } catch (IOException e) {
+            logger.warn("save(): index of file " + sourceFile.getName() + " is not saved to " + indexFile, e);
+            if (Objects.nonNull(tempFile) && !tempFile.delete()) logger.warn("save(): file is not deleted: " + tempFile);
+        }
+    }
+}
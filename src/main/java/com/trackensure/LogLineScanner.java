@@ -0,0 +1,141 @@
+package com.trackensure;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// splits bytes of file to rows the same way as BufferedReader.readLine() does ("\n", "\r" or "\r\n"),
+// reading the file through memory mapped windows, so no String is created for a row
+public class LogLineScanner {
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int STREAM_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+    public interface LogLineHandler {
+        // returns false if the rest of rows is not needed
+        boolean handleLine(LogLine line, int rowNumber);
+    }
+
+    private final LogLine line;
+    private long scannedToByte;
+
+    public LogLineScanner(Charset charset) throws TEAppException {
+        if (!isAsciiCompatible(charset))
+            throw new TEAppException("Not supported charset of log file: " + charset.name());
+        this.line = new LogLine(charset);
+    }
+
+    // scans rows from fromByte (inclusive) to toByte (exclusive), returns quantity of scanned rows
+    public int scan(FileChannel channel, long fromByte, long toByte, LogLineHandler handler) throws IOException {
+        return scan(channel, fromByte, toByte, false, handler);
+    }
+
+    // if isCompleteRowsOnly, the last row without line terminator is not scanned, because it can be not written completely.
+    // getScannedToByte() returns where the next scan has to start then
+    public int scan(FileChannel channel, long fromByte, long toByte, boolean isCompleteRowsOnly, LogLineHandler handler) throws IOException {
+        int rowNumber = 0;
+        scannedToByte = fromByte;
+        long windowStart = fromByte;
+        int windowSize = WINDOW_SIZE;
+        while (windowStart < toByte) {
+            long windowEnd = Math.min(toByte, windowStart + windowSize);
+            boolean isLastWindow = windowEnd == toByte;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+            int limit = buffer.limit();
+            int rowStart = 0;
+            for (int i = 0; i < limit; i++) {
+                byte b = buffer.get(i);
+                if (b != '\n' && b != '\r') continue;
+                if (b == '\r' && i + 1 == limit && (!isLastWindow || isCompleteRowsOnly)) break; //"\r\n" can be split by the window end
+                line.set(buffer, rowStart, i, windowStart + rowStart);
+                if (!handler.handleLine(line, ++rowNumber)) return rowNumber;
+                if (b == '\r' && i + 1 < limit && buffer.get(i + 1) == '\n') i++;
+                rowStart = i + 1;
+            }
+            if (isLastWindow) {
+                scannedToByte = windowStart + rowStart;
+                if (rowStart < limit && !isCompleteRowsOnly) {
+                    line.set(buffer, rowStart, limit, windowStart + rowStart);
+                    handler.handleLine(line, ++rowNumber);
+                }
+                break;
+            }
+            if (rowStart == 0) {
+                //the row is longer than the window
+                if (windowSize == Integer.MAX_VALUE) throw new IOException("Row is too long at " + windowStart + " byte.");
+                windowSize = (int) Math.min(Integer.MAX_VALUE, windowSize * 2L);
+            } else {
+                windowStart += rowStart;
+                windowSize = WINDOW_SIZE;
+            }
+        }
+        return rowNumber;
+    }
+
+    // scans rows of the stream (e.g. decompressed file), offsets of rows are counted in bytes of the stream
+    public int scan(InputStream in, LogLineHandler handler) throws IOException {
+        int rowNumber = 0;
+        byte[] bytes = new byte[STREAM_BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long bufferOffset = 0;
+        int limit = 0;
+        int rowStart = 0;
+        int i = 0;
+        boolean isEndOfStream = false;
+        while (true) {
+            if (i + 1 >= limit && !isEndOfStream) {
+                //the byte after "\r" is needed to know whether it is "\r\n"
+                if (rowStart > 0) {
+                    System.arraycopy(bytes, rowStart, bytes, 0, limit - rowStart);
+                    bufferOffset += rowStart;
+                    limit -= rowStart;
+                    i -= rowStart;
+                    rowStart = 0;
+                }
+                if (limit == bytes.length) {
+                    //the row is longer than the buffer
+                    if (bytes.length == MAX_BUFFER_SIZE) throw new IOException("Row is too long at " + bufferOffset + " byte.");
+                    bytes = Arrays.copyOf(bytes, (int) Math.min(MAX_BUFFER_SIZE, bytes.length * 2L));
+                    buffer = ByteBuffer.wrap(bytes);
+                }
+                int readBytes = in.read(bytes, limit, bytes.length - limit);
+                if (readBytes < 0) {
+                    isEndOfStream = true;
+                } else {
+                    limit += readBytes;
+                }
+                continue;
+            }
+            if (i >= limit) break;
+            byte b = bytes[i];
+            if (b == '\n' || b == '\r') {
+                line.set(buffer, rowStart, i, bufferOffset + rowStart);
+                if (!handler.handleLine(line, ++rowNumber)) return rowNumber;
+                if (b == '\r' && i + 1 < limit && bytes[i + 1] == '\n') i++;
+                rowStart = i + 1;
+            }
+            i++;
+        }
+        if (rowStart < limit) {
+            line.set(buffer, rowStart, limit, bufferOffset + rowStart);
+            handler.handleLine(line, ++rowNumber);
+        }
+        return rowNumber;
+    }
+
+    // the end of the last scanned row with its line terminator
+    public long getScannedToByte() {
+        return scannedToByte;
+    }
+
+    // rows are split and classified by ASCII bytes, so charsets like UTF-16 can't be scanned
+    private static boolean isAsciiCompatible(Charset charset) {
+        String asciiChars = "\r\n\t -.,0123456789:*#/[]abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        return charset.canEncode() && Arrays.equals(asciiChars.getBytes(charset), asciiChars.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -23,10 +23,11 @@ public class LogRecord implements Comparable<LogRecord> {
     private String stackTraceStr;
     private List<String> error;
     private String errorStr;
-    private List<String> messageTokens;
+    private int[] messageTokens;
     private Map<Integer, Set<String>> messageValues;
     private String messageValuesStr;
     private int similarRowsQuantity;
+    private LogRecordFingerprint fingerprint;
 
     public LogRecord() {
     }
@@ -41,6 +42,28 @@ public class LogRecord implements Comparable<LogRecord> {
         this.message = message;
     }
 
+    // copy of all fields, tokens are copied because joining of records changes them
+    public LogRecord(LogRecord logRecord) {
+        this.rowNumber = logRecord.rowNumber;
+        this.logName = logRecord.logName;
+        this.date = logRecord.date;
+        this.time = logRecord.time;
+        this.priority = logRecord.priority;
+        this.thread = logRecord.thread;
+        this.category = logRecord.category;
+        this.message = logRecord.message;
+        this.messageStr = logRecord.messageStr;
+        this.stackTrace = logRecord.stackTrace;
+        this.stackTraceStr = logRecord.stackTraceStr;
+        this.error = logRecord.error;
+        this.errorStr = logRecord.errorStr;
+        this.messageTokens = Objects.isNull(logRecord.messageTokens) ? null : logRecord.messageTokens.clone();
+        this.messageValues = logRecord.messageValues;
+        this.messageValuesStr = logRecord.messageValuesStr;
+        this.similarRowsQuantity = logRecord.similarRowsQuantity;
+        this.fingerprint = logRecord.fingerprint;
+    }
+
     public int getRowNumber() {
         return rowNumber;
     }
@@ -53,6 +76,10 @@ public class LogRecord implements Comparable<LogRecord> {
         return logName;
     }
 
+    public void setLogName(String logName) {
+        this.logName = logName;
+    }
+
     public LocalDate getDate() {
         return date;
     }
@@ -133,11 +160,11 @@ public class LogRecord implements Comparable<LogRecord> {
         this.errorStr = errorStr;
     }
 
-    public List<String> getMessageTokens() {
+    public int[] getMessageTokens() {
         return messageTokens;
     }
 
-    public void setMessageTokens(List<String> messageTokens) {
+    public void setMessageTokens(int[] messageTokens) {
         this.messageTokens = messageTokens;
     }
 
@@ -165,6 +192,14 @@ public class LogRecord implements Comparable<LogRecord> {
         this.similarRowsQuantity = similarRowsQuantity;
     }
 
+    public LogRecordFingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(LogRecordFingerprint fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
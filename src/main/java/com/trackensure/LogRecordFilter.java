@@ -0,0 +1,135 @@
+package com.trackensure;
+
+import org.apache.log4j.Level;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+// records which are kept by parsing and search: priorities, prefix of category and time range [fromDateTime, toDateTime)
+// as yyyy-MM-dd HH:mm:ss.SSS (or with T). Absent conditions are not checked. Conditions are checked by LogRecordHeaderParser
+// straight from bytes of the first row of record and by ParsedLogCache.RangeReader before texts of record, so records
+// which are rejected are not created by LogFileReader
+public class LogRecordFilter {
+    private static final Set<Level> ERROR_PRIORITIES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(Level.ERROR, Level.FATAL, Level.OFF)));
+
+    public static final LogRecordFilter ALL = new LogRecordFilter(null, null, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    private final Set<Level> priorities;
+    private final String categoryPrefix;
+    //null if the prefix is not ASCII, then the category is checked only by the record
+    private final byte[] categoryPrefixBytes;
+    private final long fromDateTime;
+    private final long toDateTime;
+
+    private LogRecordFilter(Set<Level> priorities, String categoryPrefix, long fromDateTime, long toDateTime) {
+        this.priorities = Objects.isNull(priorities) ? null : Collections.unmodifiableSet(priorities);
+        this.categoryPrefix = categoryPrefix;
+        this.categoryPrefixBytes = (Objects.isNull(categoryPrefix) || !categoryPrefix.chars().allMatch(c -> c < 0x80))
+                ? null : categoryPrefix.getBytes(StandardCharsets.US_ASCII);
+        this.fromDateTime = fromDateTime;
+        this.toDateTime = toDateTime;
+    }
+
+    public static LogRecordFilter of(JSONObject jsonIn) throws TEAppBadRequestException {
+        try {
+            long fromDateTime = jsonIn.has("fromDateTime") ? toDateTime(jsonIn.getString("fromDateTime")) : Long.MIN_VALUE;
+            long toDateTime = jsonIn.has("toDateTime") ? toDateTime(jsonIn.getString("toDateTime")) : Long.MAX_VALUE;
+            Set<Level> priorities = null;
+            JSONArray prioritiesJsonArray = jsonIn.optJSONArray("priorities");
+            if (Objects.nonNull(prioritiesJsonArray)) {
+                priorities = new HashSet<>();
+                for (int i = 0; i < prioritiesJsonArray.length(); i++) {
+                    String priority = prioritiesJsonArray.getString(i);
+                    Level level = Level.toLevel(priority, null);
+                    if (Objects.isNull(level)) throw new TEAppBadRequestException("Not correct priority: " + priority);
+                    priorities.add(level);
+                }
+            }
+            String categoryPrefix = jsonIn.optString("category", null);
+            return new LogRecordFilter(priorities, (Objects.isNull(categoryPrefix) || categoryPrefix.isEmpty()) ? null : categoryPrefix,
+                    fromDateTime, toDateTime);
+        } catch (JSONException e) {
+            throw new TEAppBadRequestException(e.getMessage(), e.getCause());
+        }
+    }
+
+    // the same filter which keeps only ERROR, FATAL and OFF records if isErrorsOnly
+    public LogRecordFilter withErrorsOnly(boolean isErrorsOnly) {
+        if (!isErrorsOnly) return this;
+        Set<Level> errorPriorities = new HashSet<>(ERROR_PRIORITIES);
+        if (Objects.nonNull(priorities)) errorPriorities.retainAll(priorities);
+        return new LogRecordFilter(errorPriorities, categoryPrefix, fromDateTime, toDateTime);
+    }
+
+    // all records are kept
+    public boolean isEmpty() {
+        return Objects.isNull(priorities) && Objects.isNull(categoryPrefix) && fromDateTime == Long.MIN_VALUE && toDateTime == Long.MAX_VALUE;
+    }
+
+    // null if priorities are not checked
+    public Set<Level> getPriorities() {
+        return priorities;
+    }
+
+    // null if categories are not checked
+    public String getCategoryPrefix() {
+        return categoryPrefix;
+    }
+
+    byte[] getCategoryPrefixBytes() {
+        return categoryPrefixBytes;
+    }
+
+    // date-time of records as it is kept in LogRecordStore
+    public long getFromDateTime() {
+        return fromDateTime;
+    }
+
+    // Long.MAX_VALUE if records are not limited
+    public long getToDateTime() {
+        return toDateTime;
+    }
+
+    public boolean isPriorityRejected(Level priority) {
+        return Objects.nonNull(priorities) && (Objects.isNull(priority) || !priorities.contains(priority));
+    }
+
+    public boolean isCategoryRejected(String category) {
+        return Objects.nonNull(categoryPrefix) && (Objects.isNull(category) || !category.startsWith(categoryPrefix));
+    }
+
+    public boolean isDateTimeRejected(long dateTime) {
+        return dateTime < fromDateTime || dateTime >= toDateTime;
+    }
+
+    // the record without date, priority or category is rejected if they are checked
+    public boolean isFilteredOut(LogRecord record) {
+        return isPriorityRejected(record.getPriority()) || isCategoryRejected(record.getCategory())
+                || isDateTimeRejected(LogRecordStore.toDateTime(record.getDate(), record.getTime()));
+    }
+
+    // the same for the same conditions, used as a key of states of followed files
+    @Override
+    public String toString() {
+        String prioritiesString = Objects.isNull(priorities) ? "*" : priorities.stream()
+                .sorted(Comparator.comparingInt(Level::toInt))
+                .map(Level::toString)
+                .collect(Collectors.joining(","));
+        return prioritiesString + "|" + categoryPrefix + "|" + fromDateTime + "|" + toDateTime;
+    }
+
+    private static long toDateTime(String dateTime) throws TEAppBadRequestException {
+        try {
+            LocalDateTime localDateTime = LocalDateTime.parse(dateTime.trim().replace(' ', 'T'));
+            return LogRecordStore.toDateTime(localDateTime.toLocalDate(), localDateTime.toLocalTime());
+        } catch (DateTimeParseException e) {
+            throw new TEAppBadRequestException("Not correct date-time: " + dateTime, e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.trackensure;
+
+import org.apache.log4j.Level;
+
+import java.util.List;
+import java.util.Objects;
+
+// 128-bit hash of the fields compared by LogRecord.equals() (priority, category, message, stack trace).
+// It is calculated from rows of message and stack trace before they are joined to strings,
+// rows never contain line separators, so equal joined strings have equal rows
+public final class LogRecordFingerprint {
+    private static final long MULTIPLIER_1 = 0x9E3779B97F4A7C15L;
+    private static final long MULTIPLIER_2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final long high;
+    private final long low;
+
+    private LogRecordFingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static LogRecordFingerprint of(Level priority, String category, List<String> message, List<String> stackTrace) {
+        Hash hash = new Hash();
+        hash.add(Objects.isNull(priority) ? -1 : priority.toInt());
+        hash.add(category);
+        //messageStr is null for empty message
+        hash.add(Objects.isNull(message) || message.isEmpty() ? null : message);
+        hash.add(stackTrace);
+        return new LogRecordFingerprint(fmix(hash.high ^ hash.length), fmix(hash.low + hash.length));
+    }
+
+    private static long fmix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LogRecordFingerprint fingerprint = (LogRecordFingerprint) o;
+        return high == fingerprint.high && low == fingerprint.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (high ^ (high >>> 32));
+    }
+
+    private static class Hash {
+        private long high = 0x243F6A8885A308D3L;
+        private long low = 0x13198A2E03707344L;
+        private long length = 0;
+
+        private void add(int value) {
+            high = (high ^ value) * MULTIPLIER_1;
+            low = Long.rotateLeft((low + value) * MULTIPLIER_2, 31);
+            length++;
+        }
+
+        // null, empty string and strings of list are hashed differently
+        private void add(String value) {
+            if (Objects.isNull(value)) {
+                add(-1);
+                return;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                add(value.charAt(i));
+            }
+            add(-2);
+        }
+
+        private void add(List<String> values) {
+            if (Objects.isNull(values)) {
+                add(-1);
+                return;
+            }
+            for (String value : values) {
+                add(value);
+            }
+            add(-3);
+        }
+    }
+}
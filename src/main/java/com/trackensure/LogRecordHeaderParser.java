@@ -0,0 +1,162 @@
+package com.trackensure;
+
+import org.apache.log4j.Level;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// parses the first row of record written by log4j layout "%d %5p [%t] %c - %m" straight from bytes of row.
+// Keeps the last date and time and interns thread and category, so it is not thread safe
+public class LogRecordHeaderParser {
+    private static final int PRIORITY_START = 24;
+    private static final int PRIORITY_END = 29;
+    private static final byte[] THREAD_END = "] ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CATEGORY_END = " -".getBytes(StandardCharsets.US_ASCII);
+    private static final Level[] LEVELS = {Level.ALL, Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR, Level.FATAL, Level.OFF};
+    private static final byte[][] LEVEL_NAMES = new byte[LEVELS.length][];
+
+    static {
+        for (int i = 0; i < LEVELS.length; i++) {
+            LEVEL_NAMES[i] = LEVELS[i].toString().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final LogStringInterner threadInterner = new LogStringInterner();
+    private final LogStringInterner categoryInterner = new LogStringInterner();
+    private int lastDateValue = -1;
+    private LocalDate lastDate;
+    private long lastTimeValue = -1;
+    private LocalTime lastTime;
+    //columns of the last row found by findColumns()
+    private int threadStart;
+    private int threadEnd;
+    private int categoryEnd;
+
+    // returns null if the row doesn't follow the layout, such row is parsed as String by LogFileReader
+    public LogRecord parse(LogLine line, String logName) {
+        if (!findColumns(line)) return null;
+        LocalDate date = parseDate(line);
+        LocalTime time = parseTime(line);
+        Level priority = parsePriority(line);
+        String thread = intern(threadInterner, line, threadStart, threadEnd);
+        String category = intern(categoryInterner, line, threadEnd + 1, categoryEnd);
+        List<String> message = null;
+        String messageString = parseMessage(line, categoryEnd + CATEGORY_END.length);
+        if (!messageString.isEmpty()) {
+            message = new ArrayList<>();
+            message.add(messageString);
+        }
+        return new LogRecord(logName, date, time, priority, thread, category, message);
+    }
+
+    // checks the filter by bytes of the first row of record without creating it: priority, category and date-time are
+    // compared the same way parse() gets them. Returns false if the row doesn't follow the layout, such record is
+    // created and filtered as usual
+    public boolean isRejected(LogLine line, LogRecordFilter filter) {
+        if (!findColumns(line)) return false;
+        if (Objects.nonNull(filter.getPriorities()) && filter.isPriorityRejected(parsePriority(line))) return true;
+        if ((filter.getFromDateTime() != Long.MIN_VALUE || filter.getToDateTime() != Long.MAX_VALUE)
+                && filter.isDateTimeRejected(parseDateTime(line))) return true;
+        byte[] categoryPrefixBytes = filter.getCategoryPrefixBytes();
+        if (Objects.isNull(categoryPrefixBytes)) return false;
+        int categoryStart = threadEnd + 1;
+        int trimmedCategoryEnd = categoryEnd;
+        while (categoryStart < trimmedCategoryEnd && (line.byteAt(categoryStart) & 0xFF) <= ' ') categoryStart++;
+        while (trimmedCategoryEnd > categoryStart && (line.byteAt(trimmedCategoryEnd - 1) & 0xFF) <= ' ') trimmedCategoryEnd--;
+        return trimmedCategoryEnd - categoryStart < categoryPrefixBytes.length || !line.startsWith(categoryPrefixBytes, categoryStart);
+    }
+
+    // checks the layout of the row for parse() and isRejected() and finds its thread and category
+    private boolean findColumns(LogLine line) {
+        if (line.length() < PRIORITY_END) return false;
+        for (int i = 0; i < PRIORITY_END; i++) {
+            if (line.byteAt(i) < 0) return false;
+        }
+        threadStart = line.indexOf((byte) '[', 0) + 1;
+        threadEnd = line.indexOf(THREAD_END, 0);
+        if (threadStart == 0 || threadEnd < threadStart) return false;
+        categoryEnd = line.indexOf(CATEGORY_END, threadEnd + 1);
+        return categoryEnd >= 0;
+    }
+
+    // the same as LogRecordStore.toDateTime() of parsed date and time, only the date is created when it is changed
+    private long parseDateTime(LogLine line) {
+        long millisOfDay = ((digits(line, 11, 2) * 60L + digits(line, 14, 2)) * 60L + digits(line, 17, 2)) * 1000L + digits(line, 20, 3);
+        return LogRecordStore.toDateTime(parseDate(line).toEpochDay(), millisOfDay);
+    }
+
+    private LocalDate parseDate(LogLine line) {
+        int dateValue = digits(line, 0, 4) * 10_000 + digits(line, 5, 2) * 100 + digits(line, 8, 2);
+        if (dateValue != lastDateValue) {
+            lastDate = LocalDate.of(dateValue / 10_000, dateValue / 100 % 100, dateValue % 100);
+            lastDateValue = dateValue;
+        }
+        return lastDate;
+    }
+
+    private LocalTime parseTime(LogLine line) {
+        int hour = digits(line, 11, 2);
+        int minute = digits(line, 14, 2);
+        int second = digits(line, 17, 2);
+        int millisecond = digits(line, 20, 3);
+        long timeValue = ((hour * 100L + minute) * 100L + second) * 1000L + millisecond;
+        if (timeValue != lastTimeValue) {
+            lastTime = LocalTime.of(hour, minute, second, millisecond * 1_000_000);
+            lastTimeValue = timeValue;
+        }
+        return lastTime;
+    }
+
+    // the same as Level.toLevel(String) for %5p column
+    private Level parsePriority(LogLine line) {
+        int from = PRIORITY_START;
+        int to = PRIORITY_END;
+        while (from < to && (line.byteAt(from) & 0xFF) <= ' ') from++;
+        while (to > from && (line.byteAt(to - 1) & 0xFF) <= ' ') to--;
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (equalsIgnoreCase(line, from, to, LEVEL_NAMES[i])) return LEVELS[i];
+        }
+        return Level.toLevel(line.toString(from, to));
+    }
+
+    private String parseMessage(LogLine line, int from) {
+        int to = line.length();
+        while (from < to && (line.byteAt(from) & 0xFF) <= ' ') from++;
+        if (from == to) return "";
+        String messageString = line.toString(from, to);
+        if (messageString.indexOf('\t') < 0) return messageString;
+        return messageString
+                .replace("\t\t", "\t")
+                .replace("\\s\t", "\\s")
+                .replace("\t\\s", "\\s")
+                .trim();
+    }
+
+    private static String intern(LogStringInterner interner, LogLine line, int from, int to) {
+        while (from < to && (line.byteAt(from) & 0xFF) <= ' ') from++;
+        while (to > from && (line.byteAt(to - 1) & 0xFF) <= ' ') to--;
+        return interner.intern(line, from, to);
+    }
+
+    private static int digits(LogLine line, int from, int length) {
+        int value = 0;
+        for (int i = from; i < from + length; i++) {
+            value = value * 10 + (line.byteAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static boolean equalsIgnoreCase(LogLine line, int from, int to, byte[] upperCaseBytes) {
+        if (to - from != upperCaseBytes.length) return false;
+        for (int i = 0; i < upperCaseBytes.length; i++) {
+            int b = line.byteAt(from + i);
+            if (b >= 'a' && b <= 'z') b -= 'a' - 'A';
+            if (b != upperCaseBytes[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,305 @@
+package com.trackensure;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// index of all records of one source file for search: records are kept in LogRecordStore, positions are numbers of
+// records in the order of date-time (records without date are the first), postings of every priority, category and thread
+// are their positions in ascending order. A query takes candidates from the time range or from the smallest postings
+// and checks the rest of conditions by columns of the store. Immutable after it is built, so it is shared by queries
+public class LogRecordIndex {
+    private static final Class<LogRecordIndex> CLAZZ = LogRecordIndex.class;
+    private static final Logger logger = Logger.getLogger(CLAZZ);
+
+    // int order, long date-time, 3 int postings
+    private static final int POSITION_SIZE = 24;
+
+    private final File sourceFile;
+    private final long fileLength;
+    private final long fileLastModified;
+    private final long buildTime = System.currentTimeMillis();
+    private final LogRecordStore store;
+    private final int[] order;
+    private final long[] dateTimes;
+    private final int[][] priorityPostings;
+    private final int[][] categoryPostings;
+    private final int[][] threadPostings;
+
+    private LogRecordIndex(File sourceFile, long fileLength, long fileLastModified, LogRecordStore store) {
+        this.sourceFile = sourceFile;
+        this.fileLength = fileLength;
+        this.fileLastModified = fileLastModified;
+        this.store = store;
+        this.order = sortByDateTime(store);
+        this.dateTimes = new long[order.length];
+        int[] priorityIds = new int[order.length];
+        int[] categoryIds = new int[order.length];
+        int[] threadIds = new int[order.length];
+        for (int position = 0; position < order.length; position++) {
+            dateTimes[position] = store.getDateTime(order[position]);
+            priorityIds[position] = store.getPriorityId(order[position]);
+            categoryIds[position] = store.getCategoryId(order[position]);
+            threadIds[position] = store.getThreadId(order[position]);
+        }
+        this.priorityPostings = createPostings(priorityIds, store.getPriorityList().size());
+        this.categoryPostings = createPostings(categoryIds, store.getCategoryDictionary().size());
+        this.threadPostings = createPostings(threadIds, store.getThreadDictionary().size());
+    }
+
+    // the file is read as it is now by LogFileParser without filters, so its parsed records can be taken from ParsedLogCache
+    public static LogRecordIndex build(File sourceFile, Charset charset) throws TEAppException {
+        logger.info("build(): start indexing file " + sourceFile.getName() + ".");
+        long fileLength = sourceFile.length();
+        long fileLastModified = sourceFile.lastModified();
+        LogRecordStore store = new LogRecordStore();
+        new LogFileParser(Collections.singletonList(sourceFile), charset, false, false, false, false, 0, 0).parseLogFiles(store::add);
+        LogRecordIndex logRecordIndex = new LogRecordIndex(sourceFile, fileLength, fileLastModified, store);
+        logger.info("build(): finish indexing file " + sourceFile.getName() + ", " + store.size() + " records are indexed.");
+        return logRecordIndex;
+    }
+
+    public File getSourceFile() {
+        return sourceFile;
+    }
+
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    // the file has changed after the index was built
+    public boolean isChanged() {
+        return sourceFile.length() != fileLength || sourceFile.lastModified() != fileLastModified;
+    }
+
+    public int size() {
+        return order.length;
+    }
+
+    // approximate size of the index in heap
+    public long getMemorySize() {
+        return store.getMemorySize() + (long) order.length * POSITION_SIZE;
+    }
+
+    public long getDateTime(int position) {
+        return dateTimes[position];
+    }
+
+    public LogRecord getLogRecord(int position) {
+        return store.get(order[position]);
+    }
+
+    // positions of records matching the query in ascending order, they are checked while they are taken
+    public Matcher match(LogRecordQuery query) {
+        return new Matcher(query);
+    }
+
+    private int[] sortByDateTime(LogRecordStore store) {
+        int size = store.size();
+        int[] sortedOrder = new int[size];
+        for (int i = 0; i < size; i++) {
+            sortedOrder[i] = i;
+        }
+        //records of log files are mostly in the order of date-time already, sorted runs are not merged again
+        int[] buffer = new int[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int from = 0; from < size - width; from += 2 * width) {
+                int middle = from + width;
+                int to = Math.min(from + 2 * width, size);
+                if (store.getDateTime(sortedOrder[middle - 1]) <= store.getDateTime(sortedOrder[middle])) continue;
+                System.arraycopy(sortedOrder, from, buffer, from, to - from);
+                int left = from;
+                int right = middle;
+                for (int i = from; i < to; i++) {
+                    if (right >= to || (left < middle && store.getDateTime(buffer[left]) <= store.getDateTime(buffer[right]))) {
+                        sortedOrder[i] = buffer[left++];
+                    } else {
+                        sortedOrder[i] = buffer[right++];
+                    }
+                }
+            }
+        }
+        return sortedOrder;
+    }
+
+    // positions of every id in ascending order, records with null value are not in postings
+    private static int[][] createPostings(int[] ids, int idsQuantity) {
+        int[] counts = new int[idsQuantity];
+        for (int id : ids) {
+            if (id >= 0) counts[id]++;
+        }
+        int[][] postings = new int[idsQuantity][];
+        for (int id = 0; id < idsQuantity; id++) {
+            postings[id] = new int[counts[id]];
+        }
+        Arrays.fill(counts, 0);
+        for (int position = 0; position < ids.length; position++) {
+            int id = ids[position];
+            if (id >= 0) postings[id][counts[id]++] = position;
+        }
+        return postings;
+    }
+
+    // first position with date-time not less than dateTime
+    private int findPosition(long dateTime) {
+        int low = 0;
+        int high = dateTimes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (dateTimes[middle] < dateTime) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    // iterates positions of records matching the query, not thread safe
+    public class Matcher {
+        private final LogRecordQuery query;
+        private final boolean[] isPriorityMatched;
+        private final boolean[] isCategoryMatched;
+        private final int threadId;
+        private final boolean[] isStackTraceMatched;
+        private final byte[] text;
+        private final int fromPosition;
+        private final int toPosition;
+        //positions taken from postings, null if positions from fromPosition to toPosition are checked
+        private final int[] candidates;
+        private int nextCandidate = 0;
+        private int nextPosition;
+
+        private Matcher(LogRecordQuery query) {
+            this.query = query;
+            this.isPriorityMatched = Objects.isNull(query.getPriorities()) ? null : matchPriorities(query.getPriorities());
+            this.isCategoryMatched = Objects.isNull(query.getCategoryPrefix()) ? null : matchCategories(query.getCategoryPrefix());
+            this.threadId = Objects.isNull(query.getThread()) ? -1 : findThreadId(query.getThread());
+            this.isStackTraceMatched = Objects.isNull(query.getText()) ? null : matchStackTraces(query.getText());
+            this.text = Objects.isNull(query.getText()) ? null : query.getText().getBytes(StandardCharsets.UTF_8);
+            this.fromPosition = findPosition(query.getFromDateTime());
+            this.toPosition = (query.getToDateTime() == Long.MAX_VALUE) ? dateTimes.length : findPosition(query.getToDateTime());
+            this.candidates = selectCandidates();
+            this.nextPosition = fromPosition;
+        }
+
+        // the next matching position or -1
+        public int next() {
+            if (Objects.nonNull(candidates)) {
+                while (nextCandidate < candidates.length) {
+                    int position = candidates[nextCandidate++];
+                    if (isMatched(position)) return position;
+                }
+                return -1;
+            }
+            while (nextPosition < toPosition) {
+                int position = nextPosition++;
+                if (isMatched(position)) return position;
+            }
+            return -1;
+        }
+
+        // all records are checked by columns without text, so they are counted fast
+        public boolean isCountedFast() {
+            return Objects.isNull(text);
+        }
+
+        private boolean isMatched(int position) {
+            int index = order[position];
+            if (Objects.nonNull(isPriorityMatched) && !isMatched(isPriorityMatched, store.getPriorityId(index))) return false;
+            if (Objects.nonNull(isCategoryMatched) && !isMatched(isCategoryMatched, store.getCategoryId(index))) return false;
+            if (Objects.nonNull(query.getThread()) && (threadId < 0 || store.getThreadId(index) != threadId)) return false;
+            if (Objects.isNull(text)) return true;
+            return isMatched(isStackTraceMatched, store.getStackTraceId(index)) || store.isTextContaining(index, text);
+        }
+
+        private boolean isMatched(boolean[] isIdMatched, int id) {
+            return id >= 0 && isIdMatched[id];
+        }
+
+        // postings of the condition with the least positions in the time range are merged, all positions of the
+        // range are checked if there is no condition by postings or it has more positions
+        private int[] selectCandidates() {
+            List<int[]> selectedPostingsList = null;
+            int selectedSize = toPosition - fromPosition;
+            for (int[][] postings : Arrays.asList(priorityPostings, categoryPostings, threadPostings)) {
+                boolean[] isIdMatched = getMatchedIds(postings);
+                if (Objects.isNull(isIdMatched)) continue;
+                List<int[]> postingsList = new ArrayList<>();
+                int size = 0;
+                for (int id = 0; id < isIdMatched.length; id++) {
+                    if (!isIdMatched[id]) continue;
+                    postingsList.add(postings[id]);
+                    size += findPostingsIndex(postings[id], toPosition) - findPostingsIndex(postings[id], fromPosition);
+                }
+                if (size >= selectedSize) continue;
+                selectedPostingsList = postingsList;
+                selectedSize = size;
+            }
+            if (Objects.isNull(selectedPostingsList)) return null;
+            int[] selectedCandidates = new int[selectedSize];
+            int size = 0;
+            for (int[] postings : selectedPostingsList) {
+                int from = findPostingsIndex(postings, fromPosition);
+                int to = findPostingsIndex(postings, toPosition);
+                System.arraycopy(postings, from, selectedCandidates, size, to - from);
+                size += to - from;
+            }
+            if (selectedPostingsList.size() > 1) Arrays.sort(selectedCandidates);
+            return selectedCandidates;
+        }
+
+        // ids matched by the condition on these postings, null if there is no such condition
+        private boolean[] getMatchedIds(int[][] postings) {
+            if (postings == priorityPostings) return isPriorityMatched;
+            if (postings == categoryPostings) return isCategoryMatched;
+            if (Objects.isNull(query.getThread())) return null;
+            boolean[] isThreadMatched = new boolean[threadPostings.length];
+            if (threadId >= 0) isThreadMatched[threadId] = true;
+            return isThreadMatched;
+        }
+
+        // first index of postings with position not less than the position
+        private int findPostingsIndex(int[] postings, int position) {
+            int index = Arrays.binarySearch(postings, position);
+            return (index < 0) ? -index - 1 : index;
+        }
+
+        private boolean[] matchPriorities(Set<Level> priorities) {
+            List<Level> priorityList = store.getPriorityList();
+            boolean[] isMatched = new boolean[priorityList.size()];
+            for (int id = 0; id < isMatched.length; id++) {
+                isMatched[id] = priorities.contains(priorityList.get(id));
+            }
+            return isMatched;
+        }
+
+        private boolean[] matchCategories(String categoryPrefix) {
+            TokenDictionary categoryDictionary = store.getCategoryDictionary();
+            boolean[] isMatched = new boolean[categoryPostings.length];
+            for (int id = 0; id < isMatched.length; id++) {
+                isMatched[id] = categoryDictionary.getToken(id).startsWith(categoryPrefix);
+            }
+            return isMatched;
+        }
+
+        private int findThreadId(String thread) {
+            TokenDictionary threadDictionary = store.getThreadDictionary();
+            for (int id = 0; id < threadPostings.length; id++) {
+                if (threadDictionary.getToken(id).equals(thread)) return id;
+            }
+            return -1;
+        }
+
+        // stack traces are kept once for all records with the same stack trace, so they are checked once
+        private boolean[] matchStackTraces(String text) {
+            TokenDictionary stackTraceDictionary = store.getStackTraceDictionary();
+            boolean[] isMatched = new boolean[stackTraceDictionary.size()];
+            for (int id = 0; id < isMatched.length; id++) {
+                isMatched[id] = stackTraceDictionary.getToken(id).contains(text);
+            }
+            return isMatched;
+        }
+    }
+}
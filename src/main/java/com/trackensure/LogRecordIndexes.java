@@ -0,0 +1,156 @@
+package com.trackensure;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.*;
+
+// indexes of files for search of records, kept in memory for the same file and charset. The least recently used
+// indexes are removed if they take more than LogFileParserConfig.getSearchIndexMemorySize(), a file bigger than that
+// is not indexed, an index which is bigger anyway is used only by the query which has built it. An index of the changed
+// file is built again, but not more often than LogFileParserConfig.getSearchIndexRefreshTime(), so following queries
+// of a growing log don't parse it every time
+public class LogRecordIndexes {
+    private static final Class<LogRecordIndexes> CLAZZ = LogRecordIndexes.class;
+    private static final Logger logger = Logger.getLogger(CLAZZ);
+
+    private static final Map<String, Holder> HOLDER_MAP = new LinkedHashMap<>(16, 0.75f, true);
+
+    private LogRecordIndexes() {
+    }
+
+    // page of records matching the query in all files in the order of date-time, records of the same date-time are
+    // in the order of files and rows. total is sent if it is counted without reading of texts
+    public static JSONObject search(List<File> sourceFiles, Charset charset, LogRecordQuery query) throws TEAppException {
+        long startTime = System.currentTimeMillis();
+        List<LogRecordIndex> indexList = new ArrayList<>();
+        for (File sourceFile : sourceFiles) {
+            indexList.add(get(sourceFile, charset));
+        }
+
+        //the next matching position of every index, the least date-time is taken first
+        PriorityQueue<int[]> headQueue = new PriorityQueue<>(Math.max(1, indexList.size()), (head1, head2) -> {
+            int result = Long.compare(indexList.get(head1[0]).getDateTime(head1[1]), indexList.get(head2[0]).getDateTime(head2[1]));
+            return (result != 0) ? result : Integer.compare(head1[0], head2[0]);
+        });
+        List<LogRecordIndex.Matcher> matcherList = new ArrayList<>();
+        boolean isCountedFast = true;
+        int indexedRecordsQuantity = 0;
+        for (int i = 0; i < indexList.size(); i++) {
+            LogRecordIndex.Matcher matcher = indexList.get(i).match(query);
+            matcherList.add(matcher);
+            isCountedFast &= matcher.isCountedFast();
+            indexedRecordsQuantity += indexList.get(i).size();
+            int position = matcher.next();
+            if (position >= 0) headQueue.add(new int[]{i, position});
+        }
+
+        JSONArray recordsJsonArray = new JSONArray();
+        int matchedQuantity = 0;
+        while (!headQueue.isEmpty() && matchedQuantity < query.getOffset() + query.getLimit()) {
+            int[] head = headQueue.poll();
+            if (matchedQuantity >= query.getOffset())
+                recordsJsonArray.put(toJSONObject(indexList.get(head[0]).getLogRecord(head[1])));
+            matchedQuantity++;
+            head[1] = matcherList.get(head[0]).next();
+            if (head[1] >= 0) headQueue.add(head);
+        }
+
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("records", recordsJsonArray);
+        jsonObject.put("offset", query.getOffset());
+        jsonObject.put("limit", query.getLimit());
+        jsonObject.put("hasMore", !headQueue.isEmpty());
+        if (isCountedFast) {
+            long total = matchedQuantity + headQueue.size();
+            for (int[] head : headQueue) {
+                while (matcherList.get(head[0]).next() >= 0) total++;
+            }
+            jsonObject.put("total", total);
+        }
+        jsonObject.put("indexedRecords", indexedRecordsQuantity);
+        jsonObject.put("searchMs", System.currentTimeMillis() - startTime);
+        return jsonObject;
+    }
+
+    // the index is built by the first query of the file, other queries of the same file wait for it
+    private static LogRecordIndex get(File sourceFile, Charset charset) throws TEAppException {
+        if (!sourceFile.isFile()) throw new TEAppException("Source file is not present: " + sourceFile.getName());
+        //records keep the text of the file, so its size is the least size of the index
+        long memoryBudget = LogFileParserConfig.getSearchIndexMemorySize();
+        if (sourceFile.length() > memoryBudget)
+            throw new TEAppException("Source file " + sourceFile.getName() + " is bigger than the memory of search indexes ("
+                    + memoryBudget / (1024 * 1024) + " MB).");
+        String key = sourceFile.getAbsolutePath() + "|" + charset.name();
+        Holder holder;
+        synchronized (HOLDER_MAP) {
+            holder = HOLDER_MAP.computeIfAbsent(key, k -> new Holder());
+        }
+        LogRecordIndex logRecordIndex;
+        boolean isBuilt;
+        synchronized (holder) {
+            isBuilt = holder.isExpired();
+            if (isBuilt) holder.logRecordIndex = LogRecordIndex.build(sourceFile, charset);
+            logRecordIndex = holder.logRecordIndex;
+        }
+        if (isBuilt) removeEldest(key, holder);
+        return logRecordIndex;
+    }
+
+    // the index which is just built is removed if it alone is bigger than the budget, otherwise the least recently
+    // used indexes are removed until all indexes fit into the budget
+    private static void removeEldest(String builtKey, Holder builtHolder) {
+        long memoryBudget = LogFileParserConfig.getSearchIndexMemorySize();
+        synchronized (HOLDER_MAP) {
+            if (builtHolder.getMemorySize() > memoryBudget) {
+                HOLDER_MAP.remove(builtKey, builtHolder);
+                logger.warn("removeEldest(): index of " + builtKey + " takes " + builtHolder.getMemorySize() + " bytes, it is not kept.");
+            }
+            long memorySize = 0;
+            for (Holder holder : HOLDER_MAP.values()) {
+                memorySize += holder.getMemorySize();
+            }
+            Iterator<Holder> holderIterator = HOLDER_MAP.values().iterator();
+            while (memorySize > memoryBudget && holderIterator.hasNext()) {
+                Holder holder = holderIterator.next();
+                if (holder == builtHolder) continue;
+                memorySize -= holder.getMemorySize();
+                holderIterator.remove();
+            }
+        }
+        logger.info("removeEldest(): " + HOLDER_MAP.size() + " indexes are kept.");
+    }
+
+    private static JSONObject toJSONObject(LogRecord logRecord) {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("logName", logRecord.getLogName());
+        jsonObject.put("rowNumber", logRecord.getRowNumber());
+        jsonObject.put("date", Objects.toString(logRecord.getDate(), null));
+        jsonObject.put("time", Objects.toString(logRecord.getTime(), null));
+        jsonObject.put("priority", Objects.toString(logRecord.getPriority(), null));
+        jsonObject.put("thread", logRecord.getThread());
+        jsonObject.put("category", logRecord.getCategory());
+        jsonObject.put("message", logRecord.getMessageStr());
+        jsonObject.put("stackTrace", logRecord.getStackTraceStr());
+        jsonObject.put("error", logRecord.getErrorStr());
+        return jsonObject;
+    }
+
+    // index of one file, null until the first query builds it
+    private static class Holder {
+        private volatile LogRecordIndex logRecordIndex;
+
+        private boolean isExpired() {
+            return Objects.isNull(logRecordIndex) || (logRecordIndex.isChanged()
+                    && System.currentTimeMillis() - logRecordIndex.getBuildTime() >= LogFileParserConfig.getSearchIndexRefreshTime());
+        }
+
+        private long getMemorySize() {
+            LogRecordIndex index = logRecordIndex;
+            return Objects.isNull(index) ? 0 : index.getMemorySize();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.trackensure;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// stages of reading after the reader has assembled records in the order of rows: batches of records are finished
+// (filtered, fingerprinted, joined to strings, tokenized) by finisher threads at the same time, and finished batches
+// are aggregated (deduplicated and passed to the consumer) by one thread in the order of rows. Queues between stages
+// are bounded, so the reader waits while the finishers or the aggregator are queueBatches batches behind
+public class LogRecordPipeline {
+    private static final Future<List<LogRecord>> END_OF_RECORDS = CompletableFuture.completedFuture(null);
+
+    private final int batchSize;
+    private final Function<List<AssembledRecord>, List<LogRecord>> batchFinisher;
+    private final ExecutorService finisherExecutor;
+    private final ExecutorService aggregatorExecutor = Executors.newSingleThreadExecutor();
+    private final BlockingQueue<Future<List<LogRecord>>> finishedBatchQueue;
+    private final Future<?> aggregatorFuture;
+    private List<AssembledRecord> batch;
+
+    // batchFinisher returns finished records of the batch which are not filtered out, aggregator is called
+    // for them by one thread
+    public LogRecordPipeline(int finisherThreadsQuantity, int batchSize, int queueBatches,
+                             Function<List<AssembledRecord>, List<LogRecord>> batchFinisher, Consumer<LogRecord> aggregator) {
+        this.batchSize = batchSize;
+        this.batchFinisher = batchFinisher;
+        this.finisherExecutor = Executors.newFixedThreadPool(finisherThreadsQuantity);
+        this.finishedBatchQueue = new ArrayBlockingQueue<>(queueBatches);
+        this.batch = new ArrayList<>(batchSize);
+        this.aggregatorFuture = aggregatorExecutor.submit(() -> {
+            Future<List<LogRecord>> finishedBatch;
+            while ((finishedBatch = finishedBatchQueue.take()) != END_OF_RECORDS) {
+                for (LogRecord record : finishedBatch.get()) {
+                    aggregator.accept(record);
+                }
+            }
+            return null;
+        });
+    }
+
+    public void add(LogRecord record, List<String> stackTrace, BitSet notTeStackTraceRows, List<String> error) {
+        batch.add(new AssembledRecord(record, stackTrace, notTeStackTraceRows, error));
+        if (batch.size() == batchSize) submitBatch();
+    }
+
+    // waits until all added records are aggregated
+    public void finish() throws TEAppException {
+        if (!batch.isEmpty()) submitBatch();
+        putToQueue(END_OF_RECORDS);
+        try {
+            aggregatorFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TEAppException("Reading of file has been interrupted.", e);
+        } catch (ExecutionException e) {
+            throw getCause(e);
+        }
+    }
+
+    // stops all stages, records which are not aggregated yet are dropped
+    public void close() {
+        finisherExecutor.shutdownNow();
+        aggregatorExecutor.shutdownNow();
+    }
+
+    private void submitBatch() {
+        List<AssembledRecord> assembledBatch = batch;
+        batch = new ArrayList<>(batchSize);
+        putToQueue(finisherExecutor.submit(() -> batchFinisher.apply(assembledBatch)));
+    }
+
+    private void putToQueue(Future<List<LogRecord>> finishedBatch) {
+        try {
+            while (!finishedBatchQueue.offer(finishedBatch, 100, TimeUnit.MILLISECONDS)) {
+                //the aggregator doesn't take batches any more if it has failed
+                if (aggregatorFuture.isDone()) {
+                    aggregatorFuture.get();
+                    throw new IllegalStateException("Aggregator of records has stopped.");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Reading of file has been interrupted.", e);
+        } catch (ExecutionException e) {
+            throw getCause(e);
+        }
+    }
+
+    // the exception of finisher is thrown by the aggregator, which gets its batch
+    private static RuntimeException getCause(ExecutionException e) {
+        Throwable cause = e.getCause();
+        while (cause instanceof ExecutionException && Objects.nonNull(cause.getCause())) {
+            cause = cause.getCause();
+        }
+        return (cause instanceof RuntimeException) ? (RuntimeException) cause : new RuntimeException(cause.getMessage(), cause);
+    }
+
+    // record with the rows which are kept apart until the record is finished
+    public static class AssembledRecord {
+        private final LogRecord record;
+        private final List<String> stackTrace;
+        private final BitSet notTeStackTraceRows;
+        private final List<String> error;
+
+        private AssembledRecord(LogRecord record, List<String> stackTrace, BitSet notTeStackTraceRows, List<String> error) {
+            this.record = record;
+            this.stackTrace = stackTrace;
+            this.notTeStackTraceRows = notTeStackTraceRows;
+            this.error = error;
+        }
+
+        public LogRecord getRecord() {
+            return record;
+        }
+
+        public List<String> getStackTrace() {
+            return stackTrace;
+        }
+
+        public BitSet getNotTeStackTraceRows() {
+            return notTeStackTraceRows;
+        }
+
+        public List<String> getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.trackensure;
+
+import org.apache.log4j.Level;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Objects;
+import java.util.Set;
+
+// conditions of search of records sent by the client: conditions of LogRecordFilter, thread and text which is searched
+// case-sensitively in the message, the stack trace and the error. Absent conditions are not checked.
+// Records are returned by pages of limit records
+public class LogRecordQuery {
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+
+    private LogRecordFilter filter;
+    private String thread;
+    private String text;
+    private int offset;
+    private int limit = DEFAULT_LIMIT;
+
+    public static LogRecordQuery of(JSONObject jsonIn) throws TEAppBadRequestException {
+        try {
+            LogRecordQuery query = new LogRecordQuery();
+            query.filter = LogRecordFilter.of(jsonIn);
+            query.thread = getNotEmptyString(jsonIn, "thread");
+            query.text = getNotEmptyString(jsonIn, "text");
+            query.offset = Math.max(0, jsonIn.optInt("offset"));
+            query.limit = Math.min(MAX_LIMIT, Math.max(1, jsonIn.optInt("limit", DEFAULT_LIMIT)));
+            return query;
+        } catch (JSONException e) {
+            throw new TEAppBadRequestException(e.getMessage(), e.getCause());
+        }
+    }
+
+    public long getFromDateTime() {
+        return filter.getFromDateTime();
+    }
+
+    public long getToDateTime() {
+        return filter.getToDateTime();
+    }
+
+    public Set<Level> getPriorities() {
+        return filter.getPriorities();
+    }
+
+    public String getCategoryPrefix() {
+        return filter.getCategoryPrefix();
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    private static String getNotEmptyString(JSONObject jsonIn, String key) {
+        String value = jsonIn.optString(key, null);
+        return (Objects.isNull(value) || value.isEmpty()) ? null : value;
+    }
+}
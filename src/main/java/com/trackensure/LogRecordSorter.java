@@ -0,0 +1,213 @@
+package com.trackensure;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+// sorts records in LogRecordStore.LOG_RECORD_ORDER with limited memory (external merge sort).
+// Records are kept in LogRecordStore, when it is bigger than the memory budget it is sorted and written to a temporary
+// file (sorted run) and a new store is started. At the end runs are merged by k-way merge. Not thread safe
+public class LogRecordSorter implements Closeable {
+    private static final Class<LogRecordSorter> CLAZZ = LogRecordSorter.class;
+    private static final Logger logger = Logger.getLogger(CLAZZ);
+
+    private static final int MAX_MERGED_CHAINS = 64;
+
+    private final long memoryBudget;
+    private final File tempDir;
+    private LogRecordStore logRecordStore = new LogRecordStore();
+    private final List<Run> runList = new ArrayList<>();
+
+    public LogRecordSorter(long memoryBudget, File tempDir) {
+        this.memoryBudget = memoryBudget;
+        this.tempDir = tempDir;
+    }
+
+    public void add(LogRecord logRecord) throws TEAppException {
+        logRecordStore.add(logRecord);
+        if (logRecordStore.getMemorySize() > memoryBudget) writeRun();
+    }
+
+    // passes all records to logRecordConsumer in sorted order
+    public void forEachSorted(LogFileParser.LogRecordConsumer logRecordConsumer) throws TEAppException {
+        if (runList.isEmpty()) {
+            for (LogRecord logRecord : logRecordStore.getSortedLogRecordList()) {
+                logRecordConsumer.accept(logRecord);
+            }
+            return;
+        }
+        if (logRecordStore.size() > 0) writeRun();
+        logRecordStore = null;
+        List<List<Run>> chainList = getChainList();
+        logger.info("forEachSorted(): " + runList.size() + " runs are merged as " + chainList.size() + " chains.");
+        //not more than MAX_MERGED_CHAINS files are open at the same time, first chains are merged to one chain if needed
+        while (chainList.size() > MAX_MERGED_CHAINS) {
+            List<List<Run>> mergedChainList = chainList.subList(0, MAX_MERGED_CHAINS);
+            List<Run> chain = mergeToChain(mergedChainList);
+            for (List<Run> mergedChain : mergedChainList) {
+                deleteRuns(mergedChain);
+            }
+            mergedChainList.clear();
+            chainList.add(0, chain);
+        }
+        mergeChains(chainList, logRecordConsumer);
+    }
+
+    // deletes temporary files of runs
+    @Override
+    public void close() {
+        deleteRuns(new ArrayList<>(runList));
+    }
+
+    private Run writeRun() throws TEAppException {
+        File runFile = null;
+        try {
+            int[] order = logRecordStore.getSortedOrder();
+            runFile = File.createTempFile("logFileParser", ".run", tempDir);
+            //the file is added before it is written, so it is deleted by close() in case of error
+            Run run = new Run(runFile, logRecordStore.get(order[0]), logRecordStore.get(order[order.length - 1]));
+            runList.add(run);
+            logRecordStore.writeRun(runFile, order);
+            logger.debug("writeRun(): " + order.length + " records are written to " + runFile + ".");
+            logRecordStore = new LogRecordStore();
+            return run;
+        } catch (IOException e) {
+            logger.error("writeRun(): runFile = " + runFile, e);
+            throw new TEAppException("Error while writing sorted records to temporary file: " + e.getMessage(), e);
+        }
+    }
+
+    private void deleteRuns(List<Run> deletedRunList) {
+        for (Run run : deletedRunList) {
+            if (!run.runFile.delete()) logger.warn("deleteRuns(): file is not deleted: " + run.runFile);
+        }
+        runList.removeAll(deletedRunList);
+    }
+
+    // consecutive runs which don't overlap (usual for log files which are already in time order) are one chain,
+    // records of the chain are read from runs one by one without merging
+    private List<List<Run>> getChainList() {
+        List<List<Run>> chainList = new ArrayList<>();
+        List<Run> chain = null;
+        for (Run run : runList) {
+            if (Objects.isNull(chain) || LogRecordStore.LOG_RECORD_ORDER.compare(chain.get(chain.size() - 1).lastLogRecord, run.firstLogRecord) > 0) {
+                chain = new ArrayList<>();
+                chainList.add(chain);
+            }
+            chain.add(run);
+        }
+        return chainList;
+    }
+
+    private List<Run> mergeToChain(List<List<Run>> mergedChainList) throws TEAppException {
+        List<Run> chain = new ArrayList<>();
+        logRecordStore = new LogRecordStore();
+        mergeChains(mergedChainList, logRecord -> {
+            logRecordStore.add(logRecord);
+            if (logRecordStore.getMemorySize() > memoryBudget) chain.add(writeRun());
+        });
+        if (logRecordStore.size() > 0) chain.add(writeRun());
+        logRecordStore = null;
+        return chain;
+    }
+
+    // records with equal keys are taken from the earlier chain first, so the merge is stable
+    private static void mergeChains(List<List<Run>> chainList, LogFileParser.LogRecordConsumer logRecordConsumer) throws TEAppException {
+        List<ChainReader> chainReaderList = new ArrayList<>();
+        try {
+            PriorityQueue<ChainHead> chainHeadQueue = new PriorityQueue<>(Math.max(1, chainList.size()), (head1, head2) -> {
+                int result = LogRecordStore.LOG_RECORD_ORDER.compare(head1.logRecord, head2.logRecord);
+                return (result != 0) ? result : Integer.compare(head1.chainIndex, head2.chainIndex);
+            });
+            for (int i = 0; i < chainList.size(); i++) {
+                ChainReader chainReader = new ChainReader(chainList.get(i));
+                chainReaderList.add(chainReader);
+                if (chainReader.hasNext()) chainHeadQueue.add(new ChainHead(i, chainReader.next()));
+            }
+            while (!chainHeadQueue.isEmpty()) {
+                ChainHead chainHead = chainHeadQueue.poll();
+                logRecordConsumer.accept(chainHead.logRecord);
+                ChainReader chainReader = chainReaderList.get(chainHead.chainIndex);
+                if (chainReader.hasNext()) {
+                    chainHead.logRecord = chainReader.next();
+                    chainHeadQueue.add(chainHead);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            logger.error("mergeChains()", e);
+            throw new TEAppException("Error while reading sorted records: " + e.getMessage(), e);
+        } finally {
+            for (ChainReader chainReader : chainReaderList) {
+                chainReader.close();
+            }
+        }
+    }
+
+    private static class Run {
+        private final File runFile;
+        private final LogRecord firstLogRecord;
+        private final LogRecord lastLogRecord;
+
+        private Run(File runFile, LogRecord firstLogRecord, LogRecord lastLogRecord) {
+            this.runFile = runFile;
+            this.firstLogRecord = firstLogRecord;
+            this.lastLogRecord = lastLogRecord;
+        }
+    }
+
+    // reads runs of the chain one by one, only one file is open at the same time
+    private static class ChainReader implements Iterator<LogRecord>, Closeable {
+        private final List<Run> chain;
+        private int nextRunIndex;
+        private LogRecordStore.RunReader runReader;
+
+        private ChainReader(List<Run> chain) {
+            this.chain = chain;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (Objects.isNull(runReader) || !runReader.hasNext()) {
+                close();
+                if (nextRunIndex == chain.size()) return false;
+                try {
+                    runReader = new LogRecordStore.RunReader(chain.get(nextRunIndex++).runFile);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public LogRecord next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return runReader.next();
+        }
+
+        @Override
+        public void close() {
+            if (Objects.isNull(runReader)) return;
+            try {
+                runReader.close();
+            } catch (IOException e) {
+                logger.warn("close(): run is not closed", e);
+            }
+            runReader = null;
+        }
+    }
+
+    private static class ChainHead {
+        private final int chainIndex;
+        private LogRecord logRecord;
+
+        private ChainHead(int chainIndex, LogRecord logRecord) {
+            this.chainIndex = chainIndex;
+            this.logRecord = logRecord;
+        }
+    }
+}
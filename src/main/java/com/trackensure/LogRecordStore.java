@@ -0,0 +1,438 @@
+package com.trackensure;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+
+// keeps records in columns instead of LogRecord objects: primitive arrays for row number, date-time and priority,
+// dictionary ids for repeated strings and UTF-8 bytes of messages and errors in pages of one arena.
+// Records are created again only when they are read for export, such records have no lists of rows (message, stack trace, error),
+// only their strings. Used for records which are not deduplicated or joined. Not thread safe
+public class LogRecordStore {
+    private static final Class<LogRecordStore> CLAZZ = LogRecordStore.class;
+    private static final Logger logger = Logger.getLogger(CLAZZ);
+
+    private static final int PAGE_SIZE = 1 << 20;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final long NULL_DATE_TIME = Long.MIN_VALUE;
+    private static final int NULL_ID = -1;
+    private static final long NULL_TEXT = -1;
+    // int row number, long date-time, byte priority, 4 int ids, 2 long references of text
+    private static final int ROW_SIZE = 45;
+    // records with the same log name, date and time are ordered by row number, nulls (rows before the first record) are the first
+    public static final Comparator<LogRecord> LOG_RECORD_ORDER = Comparator
+            .comparing(LogRecord::getLogName, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(LogRecord::getDate, Comparator.nullsFirst(Comparator.<LocalDate>naturalOrder()))
+            .thenComparing(LogRecord::getTime, Comparator.nullsFirst(Comparator.<LocalTime>naturalOrder()))
+            .thenComparingInt(LogRecord::getRowNumber);
+
+    private final TokenDictionary logNameDictionary = new TokenDictionary();
+    private final TokenDictionary threadDictionary = new TokenDictionary();
+    private final TokenDictionary categoryDictionary = new TokenDictionary();
+    private final TokenDictionary stackTraceDictionary = new TokenDictionary();
+    private final List<Level> priorityList = new ArrayList<>();
+    private final List<byte[]> pageList = new ArrayList<>();
+    private int pageFreeOffset = PAGE_SIZE;
+    private long dictionariesMemorySize = 0;
+    private long textMemorySize = 0;
+
+    private int size = 0;
+    private int[] rowNumbers = new int[1024];
+    private long[] dateTimes = new long[1024];
+    private byte[] priorities = new byte[1024];
+    private int[] logNameIds = new int[1024];
+    private int[] threadIds = new int[1024];
+    private int[] categoryIds = new int[1024];
+    private int[] stackTraceIds = new int[1024];
+    private long[] messages = new long[1024];
+    private long[] errors = new long[1024];
+
+    public void add(LogRecord logRecord) {
+        if (size == rowNumbers.length) grow();
+        rowNumbers[size] = logRecord.getRowNumber();
+        dateTimes[size] = toDateTime(logRecord.getDate(), logRecord.getTime());
+        priorities[size] = toPriority(logRecord.getPriority());
+        logNameIds[size] = toId(logNameDictionary, logRecord.getLogName());
+        threadIds[size] = toId(threadDictionary, logRecord.getThread());
+        categoryIds[size] = toId(categoryDictionary, logRecord.getCategory());
+        stackTraceIds[size] = toId(stackTraceDictionary, logRecord.getStackTraceStr());
+        messages[size] = addText(logRecord.getMessageStr());
+        errors[size] = addText(logRecord.getErrorStr());
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // approximate size of the store in heap
+    public long getMemorySize() {
+        return (long) rowNumbers.length * ROW_SIZE + textMemorySize + dictionariesMemorySize;
+    }
+
+    public LogRecord get(int index) {
+        LogRecord logRecord = new LogRecord(
+                toString(logNameDictionary, logNameIds[index]),
+                toDate(dateTimes[index]),
+                toTime(dateTimes[index]),
+                (priorities[index] < 0) ? null : priorityList.get(priorities[index]),
+                toString(threadDictionary, threadIds[index]),
+                toString(categoryDictionary, categoryIds[index]),
+                null);
+        logRecord.setRowNumber(rowNumbers[index]);
+        logRecord.setMessageStr(getText(messages[index]));
+        logRecord.setStackTraceStr(toString(stackTraceDictionary, stackTraceIds[index]));
+        logRecord.setErrorStr(getText(errors[index]));
+        logRecord.setSimilarRowsQuantity(1);
+        return logRecord;
+    }
+
+    // columns of records for LogRecordIndex: date-time is comparable as long, NULL_DATE_TIME is less than others,
+    // ids are NULL_ID for null values
+    long getDateTime(int index) {
+        return dateTimes[index];
+    }
+
+    int getPriorityId(int index) {
+        return priorities[index];
+    }
+
+    int getThreadId(int index) {
+        return threadIds[index];
+    }
+
+    int getCategoryId(int index) {
+        return categoryIds[index];
+    }
+
+    int getStackTraceId(int index) {
+        return stackTraceIds[index];
+    }
+
+    List<Level> getPriorityList() {
+        return priorityList;
+    }
+
+    TokenDictionary getThreadDictionary() {
+        return threadDictionary;
+    }
+
+    TokenDictionary getCategoryDictionary() {
+        return categoryDictionary;
+    }
+
+    TokenDictionary getStackTraceDictionary() {
+        return stackTraceDictionary;
+    }
+
+    // searches UTF-8 bytes of text in the message and the error of the record without decoding them
+    boolean isTextContaining(int index, byte[] text) {
+        return isTextContaining(messages[index], text) || isTextContaining(errors[index], text);
+    }
+
+    // records in the order of LogRecord.compareTo() (log name, date, time, row number), created when they are read
+    public List<LogRecord> getSortedLogRecordList() {
+        int[] order = getSortedOrder();
+        return new AbstractList<LogRecord>() {
+            @Override
+            public LogRecord get(int index) {
+                return LogRecordStore.this.get(order[index]);
+            }
+
+            @Override
+            public int size() {
+                return order.length;
+            }
+        };
+    }
+
+    // indexes of records in LOG_RECORD_ORDER
+    public int[] getSortedOrder() {
+        logger.info("getSortedOrder(): start sorting of " + size + " records.");
+        int[] logNameRanks = getLogNameRanks();
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        mergeSort(order, new int[size], logNameRanks);
+        logger.info("getSortedOrder(): finish sorting of " + size + " records.");
+        return order;
+    }
+
+    // writes records in the given order to the file of sorted run, the run is read by RunReader.
+    // Strings of dictionaries are written once, rows keep their ids, text is copied from pages as UTF-8 bytes
+    public void writeRun(File runFile, int[] order) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), 1 << 16))) {
+            for (TokenDictionary dictionary : Arrays.asList(logNameDictionary, threadDictionary, categoryDictionary, stackTraceDictionary)) {
+                out.writeInt(dictionary.size());
+                for (int i = 0; i < dictionary.size(); i++) {
+                    writeText(out, dictionary.getToken(i).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            out.writeInt(priorityList.size());
+            for (Level priority : priorityList) {
+                out.writeInt(priority.toInt());
+                writeText(out, priority.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            out.writeInt(order.length);
+            for (int index : order) {
+                out.writeInt(rowNumbers[index]);
+                out.writeLong(dateTimes[index]);
+                out.writeByte(priorities[index]);
+                out.writeInt(logNameIds[index]);
+                out.writeInt(threadIds[index]);
+                out.writeInt(categoryIds[index]);
+                out.writeInt(stackTraceIds[index]);
+                writeTextReference(out, messages[index]);
+                writeTextReference(out, errors[index]);
+            }
+        }
+    }
+
+    private void writeTextReference(DataOutputStream out, long reference) throws IOException {
+        if (reference == NULL_TEXT) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] page = pageList.get((int) (reference >>> 32));
+        int offset = (int) reference;
+        //the length is already written before bytes of text
+        out.write(page, offset, 4 + getTextLength(page, offset));
+    }
+
+    private static void writeText(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // reads records of the run written by writeRun()
+    public static class RunReader implements Iterator<LogRecord>, Closeable {
+        private final DataInputStream in;
+        private final String[][] dictionaries = new String[4][];
+        private final Level[] priorities;
+        private int rowsLeft;
+        private byte[] textBuffer = new byte[1024];
+
+        public RunReader(File runFile) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), 1 << 16));
+            try {
+                for (int i = 0; i < dictionaries.length; i++) {
+                    dictionaries[i] = new String[in.readInt()];
+                    for (int j = 0; j < dictionaries[i].length; j++) {
+                        dictionaries[i][j] = readText();
+                    }
+                }
+                priorities = new Level[in.readInt()];
+                for (int i = 0; i < priorities.length; i++) {
+                    int level = in.readInt();
+                    priorities[i] = Level.toLevel(readText(), Level.toLevel(level));
+                }
+                rowsLeft = in.readInt();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return rowsLeft > 0;
+        }
+
+        @Override
+        public LogRecord next() {
+            if (rowsLeft == 0) throw new NoSuchElementException();
+            try {
+                int rowNumber = in.readInt();
+                long dateTime = in.readLong();
+                byte priority = in.readByte();
+                String logName = getString(0, in.readInt());
+                String thread = getString(1, in.readInt());
+                String category = getString(2, in.readInt());
+                String stackTrace = getString(3, in.readInt());
+                LogRecord logRecord = new LogRecord(logName, toDate(dateTime), toTime(dateTime),
+                        (priority < 0) ? null : priorities[priority], thread, category, null);
+                logRecord.setRowNumber(rowNumber);
+                logRecord.setMessageStr(readText());
+                logRecord.setStackTraceStr(stackTrace);
+                logRecord.setErrorStr(readText());
+                logRecord.setSimilarRowsQuantity(1);
+                rowsLeft--;
+                return logRecord;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private String getString(int dictionary, int id) {
+            return (id == NULL_ID) ? null : dictionaries[dictionary][id];
+        }
+
+        private String readText() throws IOException {
+            int length = in.readInt();
+            if (length < 0) return null;
+            if (length > textBuffer.length) textBuffer = new byte[Math.max(length, textBuffer.length * 2)];
+            in.readFully(textBuffer, 0, length);
+            return new String(textBuffer, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    // stable bottom-up merge sort, sorted runs of rows (usual for log files) are not merged again
+    private void mergeSort(int[] order, int[] buffer, int[] logNameRanks) {
+        for (int width = 1; width < size; width *= 2) {
+            for (int from = 0; from < size - width; from += 2 * width) {
+                int middle = from + width;
+                int to = Math.min(from + 2 * width, size);
+                if (compare(order[middle - 1], order[middle], logNameRanks) <= 0) continue;
+                System.arraycopy(order, from, buffer, from, to - from);
+                int left = from;
+                int right = middle;
+                for (int i = from; i < to; i++) {
+                    if (right >= to || (left < middle && compare(buffer[left], buffer[right], logNameRanks) <= 0)) {
+                        order[i] = buffer[left++];
+                    } else {
+                        order[i] = buffer[right++];
+                    }
+                }
+            }
+        }
+    }
+
+    // records without log name or date (rows before the first record) are the first
+    private int compare(int index1, int index2, int[] logNameRanks) {
+        int result = Integer.compare(getLogNameRank(index1, logNameRanks), getLogNameRank(index2, logNameRanks));
+        if (result == 0) result = Long.compare(dateTimes[index1], dateTimes[index2]);
+        if (result == 0) result = rowNumbers[index1] - rowNumbers[index2];
+        return result;
+    }
+
+    private int getLogNameRank(int index, int[] logNameRanks) {
+        return (logNameIds[index] == NULL_ID) ? -1 : logNameRanks[logNameIds[index]];
+    }
+
+    // position of every log name in the sorted list of log names
+    private int[] getLogNameRanks() {
+        Integer[] ids = new Integer[logNameDictionary.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        Arrays.sort(ids, Comparator.comparing(logNameDictionary::getToken));
+        int[] logNameRanks = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            logNameRanks[ids[i]] = i;
+        }
+        return logNameRanks;
+    }
+
+    private void grow() {
+        int capacity = rowNumbers.length + (rowNumbers.length >> 1);
+        rowNumbers = Arrays.copyOf(rowNumbers, capacity);
+        dateTimes = Arrays.copyOf(dateTimes, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        logNameIds = Arrays.copyOf(logNameIds, capacity);
+        threadIds = Arrays.copyOf(threadIds, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+        stackTraceIds = Arrays.copyOf(stackTraceIds, capacity);
+        messages = Arrays.copyOf(messages, capacity);
+        errors = Arrays.copyOf(errors, capacity);
+    }
+
+    static long toDateTime(LocalDate date, LocalTime time) {
+        if (Objects.isNull(date) || Objects.isNull(time)) return NULL_DATE_TIME;
+        return toDateTime(date.toEpochDay(), time.toNanoOfDay() / 1_000_000L);
+    }
+
+    static long toDateTime(long epochDay, long millisOfDay) {
+        return epochDay * MILLIS_PER_DAY + millisOfDay;
+    }
+
+    private static LocalDate toDate(long dateTime) {
+        return (dateTime == NULL_DATE_TIME) ? null : LocalDate.ofEpochDay(Math.floorDiv(dateTime, MILLIS_PER_DAY));
+    }
+
+    private static LocalTime toTime(long dateTime) {
+        return (dateTime == NULL_DATE_TIME) ? null : LocalTime.ofNanoOfDay(Math.floorMod(dateTime, MILLIS_PER_DAY) * 1_000_000L);
+    }
+
+    private byte toPriority(Level priority) {
+        if (Objects.isNull(priority)) return -1;
+        int index = priorityList.indexOf(priority);
+        if (index < 0) {
+            index = priorityList.size();
+            priorityList.add(priority);
+        }
+        return (byte) index;
+    }
+
+    private int toId(TokenDictionary dictionary, String value) {
+        if (Objects.isNull(value)) return NULL_ID;
+        int dictionarySize = dictionary.size();
+        int id = dictionary.getId(value);
+        //chars of String, the String and the map entry
+        if (id == dictionarySize) dictionariesMemorySize += value.length() * 2L + 100;
+        return id;
+    }
+
+    private static String toString(TokenDictionary dictionary, int id) {
+        return (id == NULL_ID) ? null : dictionary.getToken(id);
+    }
+
+    // text is kept in one page: reference is (page << 32 | offset in page), the first 4 bytes are the length
+    private long addText(String text) {
+        if (Objects.isNull(text)) return NULL_TEXT;
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length + 4;
+        if (length > PAGE_SIZE - pageFreeOffset) {
+            pageList.add(new byte[Math.max(PAGE_SIZE, length)]);
+            pageFreeOffset = 0;
+        }
+        byte[] page = pageList.get(pageList.size() - 1);
+        long reference = ((long) (pageList.size() - 1) << 32) | pageFreeOffset;
+        page[pageFreeOffset] = (byte) (bytes.length >>> 24);
+        page[pageFreeOffset + 1] = (byte) (bytes.length >>> 16);
+        page[pageFreeOffset + 2] = (byte) (bytes.length >>> 8);
+        page[pageFreeOffset + 3] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, page, pageFreeOffset + 4, bytes.length);
+        textMemorySize += length;
+        //a big text takes the whole page
+        pageFreeOffset = (length > PAGE_SIZE) ? PAGE_SIZE : pageFreeOffset + length;
+        return reference;
+    }
+
+    private String getText(long reference) {
+        if (reference == NULL_TEXT) return null;
+        byte[] page = pageList.get((int) (reference >>> 32));
+        int offset = (int) reference;
+        return new String(page, offset + 4, getTextLength(page, offset), StandardCharsets.UTF_8);
+    }
+
+    private boolean isTextContaining(long reference, byte[] text) {
+        if (reference == NULL_TEXT) return false;
+        byte[] page = pageList.get((int) (reference >>> 32));
+        int from = (int) reference + 4;
+        int last = from + getTextLength(page, (int) reference) - text.length;
+        if (text.length == 0) return true;
+        byte first = text[0];
+        for (int i = from; i <= last; i++) {
+            if (page[i] != first) continue;
+            int j = 1;
+            while (j < text.length && page[i + j] == text[j]) j++;
+            if (j == text.length) return true;
+        }
+        return false;
+    }
+
+    private static int getTextLength(byte[] page, int offset) {
+        return ((page[offset] & 0xFF) << 24) | ((page[offset + 1] & 0xFF) << 16) | ((page[offset + 2] & 0xFF) << 8) | (page[offset + 3] & 0xFF);
+    }
+}
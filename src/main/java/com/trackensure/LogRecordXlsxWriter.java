@@ -0,0 +1,235 @@
+package com.trackensure;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// .xlsx book of LogRecords written straight to the output stream: zip entries of sheets are written as records come,
+// the workbook, its relations and styles are written at the end, when the quantity of sheets is known. There are no temp
+// files and no object model of the book, the columns and styles are the same as LogFileParserXLS makes with POI
+public class LogRecordXlsxWriter {
+    private static final int WRITER_BUFFER_SIZE = 64 * 1024;
+    private static final String[] COLUMN_NAMES = {"A", "B", "C", "D", "E", "F", "G", "H", "I", "J", "K", "L"};
+    private static final String[] TITLES_OF_COLUMNS = {"Row", "Log Name", "Date", "Time", "Priority", "Thread", "Category", "Message", "MessageValues", "Stack Trace", "Similar Rows Quantity", "Not parsed row"};
+    private static final int[] SUMMARY_COLUMN_WIDTH_ARRAY = {50, 150, 75, 75, 50, 100, 130, 200, 200, 200, 150, 100};
+    //indexes of cellXfs in styles.xml
+    private static final int HEADER_STYLE = 1;
+    private static final int ERROR_STYLE = 2;
+
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final String MAIN_NAMESPACE = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String RELATIONSHIPS_NAMESPACE = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String STYLES =
+            "<styleSheet xmlns=\"" + MAIN_NAMESPACE + "\">"
+            + "<fonts count=\"3\">"
+            + "<font><sz val=\"11\"/><name val=\"Calibri\"/><family val=\"2\"/></font>"
+            + "<font><b/><sz val=\"11\"/><name val=\"ARIAL\"/></font>"
+            + "<font><sz val=\"10\"/><color indexed=\"10\"/><name val=\"ARIAL\"/></font>"
+            + "</fonts>"
+            + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>"
+            + "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"
+            + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+            + "<cellXfs count=\"3\">"
+            + "<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+            + "<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\" applyAlignment=\"1\"><alignment horizontal=\"center\"/></xf>"
+            + "<xf numFmtId=\"0\" fontId=\"2\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\" applyAlignment=\"1\"><alignment horizontal=\"left\"/></xf>"
+            + "</cellXfs>"
+            + "<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>"
+            + "</styleSheet>";
+
+    private final ZipOutputStream zipOutputStream;
+    private final Writer writer;
+    private int sheetQuantity = 0;
+    private int rowCount = 0;
+    private boolean isSheetStarted = false;
+
+    // outputStream is not closed, so the book can be followed by nothing else but closing of the stream
+    public LogRecordXlsxWriter(OutputStream outputStream) {
+        this.zipOutputStream = new ZipOutputStream(outputStream, StandardCharsets.UTF_8);
+        this.writer = new BufferedWriter(new OutputStreamWriter(zipOutputStream, StandardCharsets.UTF_8), WRITER_BUFFER_SIZE);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public void startSheet() throws IOException {
+        if (isSheetStarted) finishSheet();
+        zipOutputStream.putNextEntry(new ZipEntry("xl/worksheets/sheet" + (++sheetQuantity) + ".xml"));
+        isSheetStarted = true;
+        rowCount = 0;
+        writer.write(XML_HEADER);
+        writer.write("<worksheet xmlns=\"" + MAIN_NAMESPACE + "\" xmlns:r=\"" + RELATIONSHIPS_NAMESPACE + "\">");
+        writer.write("<sheetViews><sheetView workbookViewId=\"0\">"
+                + "<pane ySplit=\"1\" topLeftCell=\"A2\" activePane=\"bottomLeft\" state=\"frozen\"/>"
+                + "<selection pane=\"bottomLeft\"/></sheetView></sheetViews>");
+        writer.write("<sheetFormatPr defaultRowHeight=\"15.0\"/><cols>");
+        int convertIndex = 34;
+        for (int x = 0; x < SUMMARY_COLUMN_WIDTH_ARRAY.length; x++) {
+            //width is kept in 1/256 of character, the same way as in Sheet.setColumnWidth()
+            writer.write("<col min=\"" + (x + 1) + "\" max=\"" + (x + 1) + "\" width=\""
+                    + (SUMMARY_COLUMN_WIDTH_ARRAY[x] * convertIndex / 256.0) + "\" customWidth=\"true\"/>");
+        }
+        writer.write("</cols><sheetData>");
+        writer.write("<row r=\"1\">");
+        for (int i = 0; i < TITLES_OF_COLUMNS.length; i++) {
+            writeStringCell(i, 1, TITLES_OF_COLUMNS[i], HEADER_STYLE);
+        }
+        writer.write("</row>");
+    }
+
+    public void writeRecord(LogRecord data) throws IOException {
+        if (!isSheetStarted) startSheet();
+        int rowNumber = ++rowCount + 1;
+        int column = 0;
+        writer.write("<row r=\"" + rowNumber + "\">");
+        //A Row
+        writeNumericCell(column++, rowNumber, data.getRowNumber());
+        //B Log Name
+        writeStringCell(column++, rowNumber, data.getLogName());
+        //C Date
+        writeStringCell(column++, rowNumber, (data.getDate() != null) ? data.getDate().toString() : null);
+        //D Time
+        writeStringCell(column++, rowNumber, (data.getTime() != null) ? data.getTime().toString().replace('.', ',') : null);
+        //E Priority
+        writeStringCell(column++, rowNumber, (data.getPriority() != null) ? data.getPriority().toString() : null);
+        //F Thread
+        writeStringCell(column++, rowNumber, data.getThread());
+        //G Category
+        writeStringCell(column++, rowNumber, data.getCategory());
+        //H Message
+        writeStringCellWithCheck(column++, rowNumber, data.getMessageStr());
+        //I Message Values
+        writeStringCellWithCheck(column++, rowNumber, data.getMessageValuesStr());
+        //J Stack Trace
+        writeStringCellWithCheck(column++, rowNumber, data.getStackTraceStr());
+        //K Similar Rows Quantity
+        writeNumericCell(column++, rowNumber, data.getSimilarRowsQuantity());
+        //L Error
+        writeStringCellWithCheck(column, rowNumber, data.getErrorStr());
+        writer.write("</row>");
+    }
+
+    // the book has one empty sheet at least
+    public void finish() throws IOException {
+        if (!isSheetStarted && sheetQuantity == 0) startSheet();
+        if (isSheetStarted) finishSheet();
+
+        writeEntry("[Content_Types].xml", getContentTypes());
+        writeEntry("_rels/.rels", "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + RELATIONSHIPS_NAMESPACE + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+        writeEntry("xl/workbook.xml", getWorkbook());
+        writeEntry("xl/_rels/workbook.xml.rels", getWorkbookRelationships());
+        writeEntry("xl/styles.xml", STYLES);
+        zipOutputStream.finish();
+        zipOutputStream.flush();
+    }
+
+    private void finishSheet() throws IOException {
+        writer.write("</sheetData><autoFilter ref=\"A1:L1\"/></worksheet>");
+        writer.flush();
+        zipOutputStream.closeEntry();
+        isSheetStarted = false;
+    }
+
+    private void writeEntry(String name, String content) throws IOException {
+        zipOutputStream.putNextEntry(new ZipEntry(name));
+        writer.write(XML_HEADER);
+        writer.write(content);
+        writer.flush();
+        zipOutputStream.closeEntry();
+    }
+
+    private String getContentTypes() {
+        StringBuilder sb = new StringBuilder("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+                .append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+                .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+                .append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>")
+                .append("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+        for (int sheetNumber = 1; sheetNumber <= sheetQuantity; sheetNumber++) {
+            sb.append("<Override PartName=\"/xl/worksheets/sheet").append(sheetNumber)
+                    .append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        return sb.append("</Types>").toString();
+    }
+
+    // sheets are named by their indexes, as LogFileParserXLS names them
+    private String getWorkbook() {
+        StringBuilder sb = new StringBuilder("<workbook xmlns=\"" + MAIN_NAMESPACE + "\" xmlns:r=\"" + RELATIONSHIPS_NAMESPACE + "\"><sheets>");
+        for (int sheetNumber = 1; sheetNumber <= sheetQuantity; sheetNumber++) {
+            sb.append("<sheet name=\"").append(sheetNumber - 1).append("\" sheetId=\"").append(sheetNumber)
+                    .append("\" r:id=\"rId").append(sheetNumber).append("\"/>");
+        }
+        sb.append("</sheets><definedNames>");
+        for (int sheetNumber = 1; sheetNumber <= sheetQuantity; sheetNumber++) {
+            sb.append("<definedName name=\"_xlnm._FilterDatabase\" localSheetId=\"").append(sheetNumber - 1)
+                    .append("\" hidden=\"1\">'").append(sheetNumber - 1).append("'!$A$1:$L$1</definedName>");
+        }
+        return sb.append("</definedNames></workbook>").toString();
+    }
+
+    private String getWorkbookRelationships() {
+        StringBuilder sb = new StringBuilder("<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">");
+        for (int sheetNumber = 1; sheetNumber <= sheetQuantity; sheetNumber++) {
+            sb.append("<Relationship Id=\"rId").append(sheetNumber).append("\" Type=\"").append(RELATIONSHIPS_NAMESPACE)
+                    .append("/worksheet\" Target=\"worksheets/sheet").append(sheetNumber).append(".xml\"/>");
+        }
+        sb.append("<Relationship Id=\"rId").append(sheetQuantity + 1).append("\" Type=\"").append(RELATIONSHIPS_NAMESPACE)
+                .append("/styles\" Target=\"styles.xml\"/>");
+        return sb.append("</Relationships>").toString();
+    }
+
+    private void writeNumericCell(int column, int rowNumber, int value) throws IOException {
+        writer.write("<c r=\"" + COLUMN_NAMES[column] + rowNumber + "\"><v>" + value + "</v></c>");
+    }
+
+    // the text which is longer than the cell can keep is cut and marked by the error style
+    private void writeStringCellWithCheck(int column, int rowNumber, String textString) throws IOException {
+        if (textString != null && textString.length() >= LogFileParserXLS.MAX_CELL_LENGTH) {
+            writeStringCell(column, rowNumber, textString.substring(0, LogFileParserXLS.MAX_CELL_LENGTH), ERROR_STYLE);
+        } else {
+            writeStringCell(column, rowNumber, textString);
+        }
+    }
+
+    private void writeStringCell(int column, int rowNumber, String textString) throws IOException {
+        writeStringCell(column, rowNumber, textString, 0);
+    }
+
+    // empty cells are not written
+    private void writeStringCell(int column, int rowNumber, String textString, int style) throws IOException {
+        if (textString == null || textString.isEmpty()) return;
+        writer.write("<c r=\"" + COLUMN_NAMES[column] + rowNumber + "\"");
+        if (style != 0) writer.write(" s=\"" + style + "\"");
+        writer.write(" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+        writeEscaped(textString);
+        writer.write("</t></is></c>");
+    }
+
+    // chars which are not allowed in XML are replaced by '?', as POI does
+    private void writeEscaped(String textString) throws IOException {
+        int start = 0;
+        for (int i = 0; i < textString.length(); i++) {
+            char c = textString.charAt(i);
+            String replacement;
+            if (c == '<') replacement = "&lt;";
+            else if (c == '>') replacement = "&gt;";
+            else if (c == '&') replacement = "&amp;";
+            else if (c == '"') replacement = "&quot;";
+            else if (c == '\r') replacement = "&#xd;";
+            else if (c == '\n' || c == '\t') continue;
+            else if (c < ' ' || c == '\uFFFE' || c == '\uFFFF') replacement = "?";
+            else continue;
+            writer.write(textString, start, i - start);
+            writer.write(replacement);
+            start = i + 1;
+        }
+        writer.write(textString, start, textString.length() - start);
+    }
+}
@@ -0,0 +1,55 @@
+package com.trackensure;
+
+// returns the same String for the same bytes of row without decoding them again,
+// used for values repeated in almost every record (thread, category). Not thread safe
+public class LogStringInterner {
+    private static final int MAX_SIZE = 1 << 16;
+
+    private byte[][] keys = new byte[256][];
+    private String[] values = new String[256];
+    private int size = 0;
+
+    public String intern(LogLine line, int from, int to) {
+        int hash = line.hashCode(from, to);
+        int mask = keys.length - 1;
+        int index = mix(hash) & mask;
+        while (keys[index] != null) {
+            if (line.equalsBytes(from, to, keys[index])) return values[index];
+            index = (index + 1) & mask;
+        }
+        String value = line.toString(from, to);
+        if (size < MAX_SIZE) {
+            keys[index] = line.toBytes(from, to);
+            values[index] = value;
+            if (++size * 2 > keys.length) resize();
+        }
+        return value;
+    }
+
+    private void resize() {
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        keys = new byte[oldKeys.length * 2][];
+        values = new String[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) continue;
+            int index = mix(hashCode(oldKeys[i])) & mask;
+            while (keys[index] != null) index = (index + 1) & mask;
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+        }
+    }
+
+    private static int hashCode(byte[] bytes) {
+        int hash = 1;
+        for (byte b : bytes) {
+            hash = 31 * hash + b;
+        }
+        return hash;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,128 @@
+package com.trackensure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// splits message to tokens: values found by MESSAGE_PATTERN_LIST (dates, IPs, numbers...) are single tokens,
+// the rest of message is split by word boundaries. Works with spans of the message, tokens are returned as ids of TokenDictionary.
+// The first pattern that matches the span splits it, the left and the right parts are tokenized the same way.
+// A pattern that doesn't match the span doesn't match its parts, so it is not tried for them again. Not thread safe
+public class MessageTokenizer {
+    // the token is group 1
+    private static final List<Pattern> MESSAGE_PATTERN_LIST = Collections.unmodifiableList(new ArrayList<Pattern>(){{
+        add(Pattern.compile("(\\d{2,4}-\\d{2}-\\d{2,4} \\d{2}:\\d{2}:\\d{2}[.,]?\\d*)"));   // 2023-02-02 22:25.123
+        add(Pattern.compile("(\\d{2}-\\w{3}-\\d{2}\\s\\d{2}:\\d{2}:\\d{2})"));              // 04-Dec-22 05:24:22
+        add(Pattern.compile("(\\d+\\.\\d+\\.\\d+\\.\\d+\\.\\d+)"));                         //14.123.02.86.7
+        add(Pattern.compile("(\\d+\\.\\d+\\.\\d+\\.\\d+)"));                                //141.101.238.127
+        add(Pattern.compile("deviceToke=([A-z0-9:-]+)"));                                   //deviceToke=cLZ5miNHQfmsMtlPRQvLIP:APA91bF3mKk1OwBjyvJ8P6pC6t-StR3wOuJTmTj--DYVoUZulsDWTWcMQ1WZ_t1tjHB_pjCQuSjoT6iRtLYEbUEZ1LgwIZdtO6yy3JhtIAkc90oVuO-WbJbRVb2Q1_GAFR2UzZX9z88_q13eJhWbLnkISqdZIjBeMnwa7W3cUrYn_i
+        add(Pattern.compile("(-\\d+\\.?\\d+)"));                                            // -25.897
+        add(Pattern.compile("(\\d+\\.\\d+)"));                                              // 25.897
+        add(Pattern.compile("(O\\w{1,2}-[Dd]uty)"));                                        //On-Duty
+    }});
+    // chars which must be in message to match the pattern of MESSAGE_PATTERN_LIST, '0' is any digit
+    private static final List<String> REQUIRED_CHARS_LIST = Arrays.asList("0-:", "0-:", "0.", "0.", "=", "0-", "0.", "-");
+    private static final String CHECKED_CHARS = "0-:.=";
+
+    private final TokenDictionary tokenDictionary;
+    private final Matcher[] matchers = MESSAGE_PATTERN_LIST.stream().map(pattern -> pattern.matcher("")).toArray(Matcher[]::new);
+    private String message;
+    private int[] tokens = new int[64];
+    private int tokensQuantity;
+
+    public MessageTokenizer(TokenDictionary tokenDictionary) {
+        this.tokenDictionary = tokenDictionary;
+    }
+
+    public int[] createTokens(String message) {
+        this.message = message;
+        this.tokensQuantity = 0;
+        for (Matcher matcher : matchers) {
+            matcher.reset(message);
+        }
+        tokenize(0, message.length(), getPossiblePatterns());
+        this.message = null;
+        return Arrays.copyOf(tokens, tokensQuantity);
+    }
+
+    private void tokenize(int from, int to, int patterns) {
+        if (from == to) return;
+        for (int i = 0; i < matchers.length; i++) {
+            if ((patterns & (1 << i)) == 0) continue;
+            Matcher matcher = matchers[i];
+            matcher.region(from, to);
+            if (matcher.find()) {
+                int tokenStart = matcher.start(1);
+                int tokenEnd = matcher.end(1);
+                tokenize(from, tokenStart, patterns);
+                addToken(message.substring(tokenStart, tokenEnd));
+                tokenize(tokenEnd, Math.max(tokenEnd, getEndWithoutLineTerminator(from, to)), patterns);
+                return;
+            }
+            patterns &= ~(1 << i);
+        }
+        splitByWordBoundaries(from, to);
+    }
+
+    // the right part of message was matched by "(.*?)$" before, so the last line terminator of the span is not a token
+    private int getEndWithoutLineTerminator(int from, int to) {
+        if (to - from >= 2 && message.charAt(to - 2) == '\r' && message.charAt(to - 1) == '\n') return to - 2;
+        if (to > from) {
+            char c = message.charAt(to - 1);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') return to - 1;
+        }
+        return to;
+    }
+
+    // one pass through message, returns bit mask of patterns which can match it
+    private int getPossiblePatterns() {
+        int checkedChars = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            int index = (c >= '0' && c <= '9') ? 0 : CHECKED_CHARS.indexOf(c);
+            if (index >= 0) checkedChars |= 1 << index;
+        }
+        int patterns = 0;
+        for (int i = 0; i < REQUIRED_CHARS_LIST.size(); i++) {
+            int requiredChars = 0;
+            for (char c : REQUIRED_CHARS_LIST.get(i).toCharArray()) {
+                requiredChars |= 1 << CHECKED_CHARS.indexOf(c);
+            }
+            if ((checkedChars & requiredChars) == requiredChars) patterns |= 1 << i;
+        }
+        return patterns;
+    }
+
+    // the same as split("\\b"), ASCII spans are split without regex
+    private void splitByWordBoundaries(int from, int to) {
+        if (from == to) return;
+        for (int i = from; i < to; i++) {
+            if (message.charAt(i) >= 0x80) {
+                for (String token : message.substring(from, to).split("\\b")) {
+                    addToken(token);
+                }
+                return;
+            }
+        }
+        int tokenStart = from;
+        for (int i = from + 1; i < to; i++) {
+            if (isWordChar(message.charAt(i - 1)) != isWordChar(message.charAt(i))) {
+                addToken(message.substring(tokenStart, i));
+                tokenStart = i;
+            }
+        }
+        addToken(message.substring(tokenStart, to));
+    }
+
+    private void addToken(String token) {
+        if (tokensQuantity == tokens.length) tokens = Arrays.copyOf(tokens, tokensQuantity * 2);
+        tokens[tokensQuantity++] = tokenDictionary.getId(token);
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
@@ -0,0 +1,502 @@
+package com.trackensure;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// cache of parsed records of log files in the cache directory, so a file is not parsed again by the next requests.
+// Records of every range of file are kept in a data file before filtering (errors only, TE stack trace only),
+// deduplication and joining, so the cache doesn't depend on options of request. The list of ranges is kept in
+// a meta file with length, modification time and hashes of the first and the last bytes of the log file. Records are
+// decoded strings, so files read with another charset are cached separately.
+// If the file only grew, all ranges except the last one are used and only the rest of the file is parsed.
+// Least recently used files are removed from the cache when it takes more than the disk budget
+public class ParsedLogCache {
+    private static final Class<ParsedLogCache> CLAZZ = ParsedLogCache.class;
+    private static final Logger logger = Logger.getLogger(CLAZZ);
+
+    private static final int FORMAT_VERSION = 2;
+    static final int HASHED_BYTES = 64 * 1024;
+    private static final String META_SUFFIX = ".meta";
+    private static final String DATA_SUFFIX = ".data";
+    //data files which are not in any meta file are left by failed requests, they are removed after that time
+    private static final long ORPHAN_DATA_FILE_AGE = 24 * 60 * 60 * 1000L;
+    //meta files of all caches of the JVM are changed one at a time
+    private static final Object LOCK = new Object();
+
+    private final File cacheDir;
+    private final long diskBudget;
+    private final Charset charset;
+
+    // records of files read with the charset are cached
+    public ParsedLogCache(File cacheDir, long diskBudget, Charset charset) {
+        this.cacheDir = cacheDir;
+        this.diskBudget = diskBudget;
+        this.charset = charset;
+    }
+
+    // returns cached ranges of the file from its start which are still valid, the list is empty if there are no such ranges
+    public List<CachedRange> getCachedRanges(File sourceFile) {
+        File metaFile = getMetaFile(sourceFile);
+        synchronized (LOCK) {
+            if (!metaFile.isFile()) return Collections.emptyList();
+            try {
+                Meta meta = readMeta(metaFile);
+                long fileLength = sourceFile.length();
+                boolean isSameFile = fileLength == meta.fileLength && sourceFile.lastModified() == meta.lastModified;
+                boolean isGrownFile = fileLength > meta.fileLength;
+                if (!meta.path.equals(sourceFile.getAbsolutePath()) || !meta.charsetName.equals(charset.name()) || (!isSameFile && !isGrownFile)
+                        || !Arrays.equals(getHashes(sourceFile, meta.fileLength), new long[]{meta.headHash, meta.tailHash})) {
+                    logger.info("getCachedRanges(): cache of file " + sourceFile.getName() + " is out of date.");
+                    return Collections.emptyList();
+                }
+                //the last range ends with the old end of file, which can be in the middle of the record
+                List<CachedRange> cachedRangeList = isSameFile ? meta.rangeList : meta.rangeList.subList(0, meta.rangeList.size() - 1);
+                if (!metaFile.setLastModified(System.currentTimeMillis())) logger.warn("getCachedRanges(): time of use is not set to " + metaFile);
+                logger.info("getCachedRanges(): " + cachedRangeList.size() + " of " + meta.rangeList.size() + " cached ranges of file " + sourceFile.getName() + " are used.");
+                return cachedRangeList;
+            } catch (IOException e) {
+                logger.warn("getCachedRanges(): cache of file " + sourceFile.getName() + " is not read from " + metaFile, e);
+                return Collections.emptyList();
+            }
+        }
+    }
+
+    // keeps ranges of the file which has had fileLength and lastModified when ranges were read,
+    // data files of the previous ranges of the file which are not in the list are removed
+    public void putCachedRanges(File sourceFile, long fileLength, long lastModified, List<CachedRange> rangeList) {
+        File metaFile = getMetaFile(sourceFile);
+        synchronized (LOCK) {
+            File tempFile = null;
+            try {
+                Meta oldMeta = metaFile.isFile() ? readMeta(metaFile) : null;
+                Meta meta = new Meta(sourceFile.getAbsolutePath(), charset.name(), fileLength, lastModified, getHashes(sourceFile, fileLength), rangeList);
+                tempFile = File.createTempFile(metaFile.getName(), ".tmp", cacheDir);
+                writeMeta(tempFile, meta);
+                Files.move(tempFile.toPath(), metaFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                if (Objects.nonNull(oldMeta)) {
+                    for (CachedRange oldRange : oldMeta.rangeList) {
+                        if (!rangeList.contains(oldRange)) deleteFile(oldRange.dataFile);
+                    }
+                }
+                logger.info("putCachedRanges(): " + rangeList.size() + " ranges of file " + sourceFile.getName() + " are cached.");
+            } catch (IOException e) {
+                logger.warn("putCachedRanges(): cache of file " + sourceFile.getName() + " is not saved to " + metaFile, e);
+                if (Objects.nonNull(tempFile)) deleteFile(tempFile);
+                for (CachedRange range : rangeList) {
+                    deleteFile(range.dataFile);
+                }
+            }
+            removeLeastRecentlyUsed();
+        }
+    }
+
+    // returns null if the cache directory is not available, the range is parsed without cache in that case
+    public RangeWriter createRangeWriter(File sourceFile, long fromByte, long toByte) {
+        try {
+            Files.createDirectories(cacheDir.toPath());
+            File dataFile = File.createTempFile(getKey(sourceFile) + "-" + fromByte + "-", DATA_SUFFIX, cacheDir);
+            return new RangeWriter(dataFile, fromByte, toByte);
+        } catch (IOException e) {
+            logger.warn("createRangeWriter(): records of file " + sourceFile.getName() + " are not cached", e);
+            return null;
+        }
+    }
+
+    // removes records of the range written by RangeWriter which are not put to the cache
+    public void deleteCachedRange(CachedRange cachedRange) {
+        deleteFile(cachedRange.dataFile);
+    }
+
+    private File getMetaFile(File sourceFile) {
+        return new File(cacheDir, getKey(sourceFile) + META_SUFFIX);
+    }
+
+    private String getKey(File sourceFile) {
+        return sourceFile.getName() + "-" + charset.name() + "-" + Integer.toHexString(sourceFile.getAbsolutePath().hashCode());
+    }
+
+    // hashes of the first and the last HASHED_BYTES bytes of the first fileLength bytes of the file
+    private static long[] getHashes(File sourceFile, long fileLength) throws IOException {
+        try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+            return new long[]{getHash(channel, 0, Math.min(fileLength, HASHED_BYTES)), getHash(channel, Math.max(0, fileLength - HASHED_BYTES), fileLength)};
+        }
+    }
+
+    // CRC32 of bytes of the file from fromByte to toByte, the range must not be longer than HASHED_BYTES
+    static long getHash(FileChannel channel, long fromByte, long toByte) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (toByte - fromByte));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, fromByte + buffer.position()) < 0) throw new EOFException("File is shorter than " + toByte + " bytes.");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array());
+        return crc.getValue();
+    }
+
+    // removes least recently used files from the cache while it takes more than diskBudget bytes
+    private void removeLeastRecentlyUsed() {
+        File[] files = cacheDir.listFiles();
+        if (Objects.isNull(files)) return;
+        long cacheSize = 0;
+        List<File> metaFileList = new ArrayList<>();
+        Set<String> dataFileNameSet = new HashSet<>();
+        for (File file : files) {
+            cacheSize += file.length();
+            if (!file.getName().endsWith(META_SUFFIX)) continue;
+            metaFileList.add(file);
+            try {
+                for (CachedRange range : readMeta(file).rangeList) {
+                    dataFileNameSet.add(range.dataFile.getName());
+                }
+            } catch (IOException e) {
+                logger.warn("removeLeastRecentlyUsed(): meta file is not read: " + file, e);
+            }
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(DATA_SUFFIX) && !dataFileNameSet.contains(file.getName())
+                    && file.lastModified() < System.currentTimeMillis() - ORPHAN_DATA_FILE_AGE) {
+                cacheSize -= file.length();
+                deleteFile(file);
+            }
+        }
+        metaFileList.sort(Comparator.comparingLong(File::lastModified));
+        for (File metaFile : metaFileList) {
+            if (cacheSize <= diskBudget) break;
+            cacheSize -= metaFile.length();
+            try {
+                for (CachedRange range : readMeta(metaFile).rangeList) {
+                    cacheSize -= range.dataFile.length();
+                    deleteFile(range.dataFile);
+                }
+            } catch (IOException e) {
+                logger.warn("removeLeastRecentlyUsed(): meta file is not read: " + metaFile, e);
+            }
+            deleteFile(metaFile);
+            logger.info("removeLeastRecentlyUsed(): " + metaFile + " is removed from cache.");
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) logger.warn("deleteFile(): file is not deleted: " + file);
+    }
+
+    private Meta readMeta(File metaFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(metaFile)))) {
+            if (in.readInt() != FORMAT_VERSION) throw new IOException("Not supported version of cache: " + metaFile);
+            String path = in.readUTF();
+            String charsetName = in.readUTF();
+            long fileLength = in.readLong();
+            long lastModified = in.readLong();
+            long[] hashes = {in.readLong(), in.readLong()};
+            int rangeQuantity = in.readInt();
+            List<CachedRange> rangeList = new ArrayList<>(rangeQuantity);
+            for (int i = 0; i < rangeQuantity; i++) {
+                long fromByte = in.readLong();
+                long toByte = in.readLong();
+                int rowsQuantity = in.readInt();
+                String logName = in.readBoolean() ? in.readUTF() : null;
+                File dataFile = new File(cacheDir, in.readUTF());
+                rangeList.add(new CachedRange(fromByte, toByte, rowsQuantity, logName, dataFile));
+            }
+            return new Meta(path, charsetName, fileLength, lastModified, hashes, rangeList);
+        }
+    }
+
+    private static void writeMeta(File metaFile, Meta meta) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(metaFile)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(meta.path);
+            out.writeUTF(meta.charsetName);
+            out.writeLong(meta.fileLength);
+            out.writeLong(meta.lastModified);
+            out.writeLong(meta.headHash);
+            out.writeLong(meta.tailHash);
+            out.writeInt(meta.rangeList.size());
+            for (CachedRange range : meta.rangeList) {
+                out.writeLong(range.fromByte);
+                out.writeLong(range.toByte);
+                out.writeInt(range.rowsQuantity);
+                out.writeBoolean(Objects.nonNull(range.logName));
+                if (Objects.nonNull(range.logName)) out.writeUTF(range.logName);
+                out.writeUTF(range.dataFile.getName());
+            }
+        }
+    }
+
+    private static class Meta {
+        private final String path;
+        private final String charsetName;
+        private final long fileLength;
+        private final long lastModified;
+        private final long headHash;
+        private final long tailHash;
+        private final List<CachedRange> rangeList;
+
+        private Meta(String path, String charsetName, long fileLength, long lastModified, long[] hashes, List<CachedRange> rangeList) {
+            this.path = path;
+            this.charsetName = charsetName;
+            this.fileLength = fileLength;
+            this.lastModified = lastModified;
+            this.headHash = hashes[0];
+            this.tailHash = hashes[1];
+            this.rangeList = rangeList;
+        }
+    }
+
+    // range of file with records in the data file, rowsQuantity and logName are the same as LogFileReader returns after the range
+    public static class CachedRange {
+        private final long fromByte;
+        private final long toByte;
+        private final int rowsQuantity;
+        private final String logName;
+        private final File dataFile;
+
+        private CachedRange(long fromByte, long toByte, int rowsQuantity, String logName, File dataFile) {
+            this.fromByte = fromByte;
+            this.toByte = toByte;
+            this.rowsQuantity = rowsQuantity;
+            this.logName = logName;
+            this.dataFile = dataFile;
+        }
+
+        public long getFromByte() {
+            return fromByte;
+        }
+
+        public long getToByte() {
+            return toByte;
+        }
+
+        public int getRowsQuantity() {
+            return rowsQuantity;
+        }
+
+        public String getLogName() {
+            return logName;
+        }
+
+        public RangeReader openRangeReader() throws IOException {
+            return new RangeReader(dataFile);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return dataFile.equals(((CachedRange) o).dataFile);
+        }
+
+        @Override
+        public int hashCode() {
+            return dataFile.hashCode();
+        }
+    }
+
+    // writes records of the range in the order of reading, errors of writing don't stop reading, the range is not cached then
+    public static class RangeWriter {
+        private final File dataFile;
+        private final long fromByte;
+        private final long toByte;
+        private DataOutputStream out;
+
+        private RangeWriter(File dataFile, long fromByte, long toByte) throws IOException {
+            this.dataFile = dataFile;
+            this.fromByte = fromByte;
+            this.toByte = toByte;
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile), 1 << 16));
+        }
+
+        // notTeStackTraceRows are indexes of rows of stackTrace which are removed if only TE stack trace is needed
+        public void write(LogRecord record, List<String> stackTrace, BitSet notTeStackTraceRows, List<String> error) {
+            if (Objects.isNull(out)) return;
+            try {
+                out.writeBoolean(true);
+                out.writeInt(record.getRowNumber());
+                writeText(out, record.getLogName());
+                out.writeLong(Objects.isNull(record.getDate()) ? Long.MIN_VALUE : record.getDate().toEpochDay());
+                out.writeLong(Objects.isNull(record.getTime()) ? -1 : record.getTime().toNanoOfDay());
+                out.writeInt(Objects.isNull(record.getPriority()) ? Integer.MIN_VALUE : record.getPriority().toInt());
+                writeText(out, Objects.isNull(record.getPriority()) ? null : record.getPriority().toString());
+                writeText(out, record.getThread());
+                writeText(out, record.getCategory());
+                writeTextList(out, record.getMessage());
+                writeTextList(out, stackTrace);
+                if (Objects.nonNull(stackTrace)) {
+                    for (int i = 0; i < stackTrace.size(); i++) {
+                        out.writeBoolean(notTeStackTraceRows.get(i));
+                    }
+                }
+                writeTextList(out, error);
+            } catch (IOException e) {
+                logger.warn("write(): records are not cached to " + dataFile, e);
+                abort();
+            }
+        }
+
+        // returns null if the records are not written
+        public CachedRange finish(int rowsQuantity, String logName) {
+            if (Objects.isNull(out)) return null;
+            try {
+                out.writeBoolean(false);
+                out.close();
+                out = null;
+                return new CachedRange(fromByte, toByte, rowsQuantity, logName, dataFile);
+            } catch (IOException e) {
+                logger.warn("finish(): records are not cached to " + dataFile, e);
+                abort();
+                return null;
+            }
+        }
+
+        public void abort() {
+            if (Objects.nonNull(out)) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    logger.warn("abort(): file is not closed: " + dataFile, e);
+                }
+                out = null;
+            }
+            deleteFile(dataFile);
+        }
+
+        private static void writeText(DataOutputStream out, String text) throws IOException {
+            if (Objects.isNull(text)) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static void writeTextList(DataOutputStream out, List<String> textList) throws IOException {
+            out.writeInt(Objects.isNull(textList) ? -1 : textList.size());
+            if (Objects.isNull(textList)) return;
+            for (String text : textList) {
+                writeText(out, text);
+            }
+        }
+    }
+
+    // reads records written by RangeWriter, fields of the current record are available after next() returns true
+    public static class RangeReader implements Closeable {
+        private final DataInputStream in;
+        private byte[] textBuffer = new byte[1024];
+        private LogRecord record;
+        private List<String> stackTrace;
+        private BitSet notTeStackTraceRows;
+        private List<String> error;
+        private long skippedRecordsQuantity = 0;
+
+        private RangeReader(File dataFile) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile), 1 << 16));
+        }
+
+        // records rejected by the filter are skipped without reading their messages, stack traces and errors,
+        // they are counted by getSkippedRecordsQuantity()
+        public boolean next(LogRecordFilter filter) throws IOException {
+            while (in.readBoolean()) {
+                int rowNumber = in.readInt();
+                String logName = readText();
+                long epochDay = in.readLong();
+                long nanoOfDay = in.readLong();
+                int level = in.readInt();
+                String levelName = readText();
+                String thread = readText();
+                String category = readText();
+                Level priority = Objects.isNull(levelName) ? null : Level.toLevel(levelName, Level.toLevel(level));
+                if (filter.isPriorityRejected(priority) || filter.isCategoryRejected(category) || filter.isDateTimeRejected(
+                        (epochDay == Long.MIN_VALUE || nanoOfDay < 0) ? Long.MIN_VALUE : LogRecordStore.toDateTime(epochDay, nanoOfDay / 1_000_000L))) {
+                    skipTextList();
+                    int stackTraceSize = skipTextList();
+                    if (stackTraceSize > 0) in.skipBytes(stackTraceSize);
+                    skipTextList();
+                    skippedRecordsQuantity++;
+                    continue;
+                }
+                List<String> message = readTextList();
+                record = new LogRecord(logName, (epochDay == Long.MIN_VALUE) ? null : LocalDate.ofEpochDay(epochDay),
+                        (nanoOfDay < 0) ? null : LocalTime.ofNanoOfDay(nanoOfDay), priority, thread, category, message);
+                record.setRowNumber(rowNumber);
+                stackTrace = readTextList();
+                notTeStackTraceRows = null;
+                if (Objects.nonNull(stackTrace)) {
+                    notTeStackTraceRows = new BitSet();
+                    for (int i = 0; i < stackTrace.size(); i++) {
+                        if (in.readBoolean()) notTeStackTraceRows.set(i);
+                    }
+                }
+                error = readTextList();
+                return true;
+            }
+            return false;
+        }
+
+        public long getSkippedRecordsQuantity() {
+            return skippedRecordsQuantity;
+        }
+
+        public LogRecord getRecord() {
+            return record;
+        }
+
+        public List<String> getStackTrace() {
+            return stackTrace;
+        }
+
+        public BitSet getNotTeStackTraceRows() {
+            return notTeStackTraceRows;
+        }
+
+        public List<String> getError() {
+            return error;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private String readText() throws IOException {
+            int length = in.readInt();
+            if (length < 0) return null;
+            if (length > textBuffer.length) textBuffer = new byte[Math.max(length, textBuffer.length * 2)];
+            in.readFully(textBuffer, 0, length);
+            return new String(textBuffer, 0, length, StandardCharsets.UTF_8);
+        }
+
+        // returns the size of the list, -1 if it is null
+        private int skipTextList() throws IOException {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                int length = in.readInt();
+                if (length > 0) in.skipBytes(length);
+            }
+            return size;
+        }
+
+        private List<String> readTextList() throws IOException {
+            int size = in.readInt();
+            if (size < 0) return null;
+            List<String> textList = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                textList.add(readText());
+            }
+            return textList;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.trackensure;
+
+import org.apache.log4j.Logger;
+
+import java.util.*;
+
+// joins records of one group (the same priority, category and stack trace) with similar messages.
+// A record is joined to the first unique record that has the same quantity of tokens and more than CONFORMITY_POWER
+// of equal tokens, as before, but unique records are not compared with the record one by one.
+// Unique records are indexed by (quantity of tokens, position, token id). A similar unique record differs from the record
+// in not more than maxNotEqualTokens positions, so it is in at least one of any (maxNotEqualTokens + 1) index lists
+// of the record's tokens. The shortest lists are merged in the order of unique records and only they are compared
+public class SimilarMessagesJoiner {
+    private static final Class<SimilarMessagesJoiner> CLAZZ = SimilarMessagesJoiner.class;
+    private static final Logger logger = Logger.getLogger(CLAZZ);
+
+    private static final double CONFORMITY_POWER = 0.80;
+    private static final int[] EMPTY_INDEXES = {0};
+
+    private final TokenDictionary tokenDictionary;
+    private final List<LogRecord> uniqLogRecordList = new ArrayList<>();
+    // index list: [size, indexes of unique records in ascending order...]
+    private final Map<Long, int[]> uniqLogRecordIndexMap = new HashMap<>();
+
+    public SimilarMessagesJoiner(TokenDictionary tokenDictionary) {
+        this.tokenDictionary = tokenDictionary;
+    }
+
+    // records are joined only within the same group
+    public static String getGroupKey(LogRecord logRecord) {
+        return logRecord.getPriority() + logRecord.getCategory() + logRecord.getStackTraceStr();
+    }
+
+    // returns the unique record which the record is joined to, or the record itself if it is added as unique
+    public LogRecord add(LogRecord logRecord) throws TEAppException {
+        int[] messageTokens = logRecord.getMessageTokens();
+        int joinedIndex = (Objects.isNull(messageTokens) || messageTokens.length <= 1) ? -1 : findSimilarUniqLogRecord(logRecord);
+        if (joinedIndex >= 0) {
+            LogRecord uniqLogRecord = uniqLogRecordList.get(joinedIndex);
+            int[] uniqMessageTokens = uniqLogRecord.getMessageTokens();
+            long[] oldTokenKeys = getTokenKeys(uniqMessageTokens);
+            join2LogRecords(uniqLogRecord, logRecord);
+            //joined tokens are replaced by variables
+            for (int i = 0; i < oldTokenKeys.length; i++) {
+                long newTokenKey = getTokenKey(uniqMessageTokens.length, i, uniqMessageTokens[i]);
+                if (newTokenKey != oldTokenKeys[i]) {
+                    removeFromIndex(oldTokenKeys[i], joinedIndex);
+                    addToIndex(newTokenKey, joinedIndex);
+                }
+            }
+            return uniqLogRecord;
+        } else {
+            int index = uniqLogRecordList.size();
+            uniqLogRecordList.add(logRecord);
+            //such record is never equal to other records, so it is not indexed
+            if (Objects.isNull(messageTokens) || messageTokens.length <= 1) return logRecord;
+            for (long tokenKey : getTokenKeys(messageTokens)) {
+                addToIndex(tokenKey, index);
+            }
+            return logRecord;
+        }
+    }
+
+    // returns the unique record which the record would be joined to or null, unique records are not changed
+    public LogRecord findSimilar(LogRecord logRecord) {
+        int[] messageTokens = logRecord.getMessageTokens();
+        if (Objects.isNull(messageTokens) || messageTokens.length <= 1) return null;
+        int index = findSimilarUniqLogRecord(logRecord);
+        return index >= 0 ? uniqLogRecordList.get(index) : null;
+    }
+
+    // joins the record to a copy of unique record, the copy is not indexed by the joiner
+    public void join(LogRecord mainLogRecord, LogRecord addedLogRecord) throws TEAppException {
+        join2LogRecords(mainLogRecord, addedLogRecord);
+    }
+
+    public List<LogRecord> getUniqLogRecordList() {
+        return uniqLogRecordList;
+    }
+
+    // returns index of the first similar unique record or -1
+    private int findSimilarUniqLogRecord(LogRecord logRecord) {
+        int[] messageTokens = logRecord.getMessageTokens();
+        int listsQuantity = getMaxNotEqualTokens(messageTokens.length) + 1;
+        int[][] indexLists = new int[messageTokens.length][];
+        for (int i = 0; i < indexLists.length; i++) {
+            indexLists[i] = uniqLogRecordIndexMap.getOrDefault(getTokenKey(messageTokens.length, i, messageTokens[i]), EMPTY_INDEXES);
+        }
+        Arrays.sort(indexLists, Comparator.comparingInt(indexes -> indexes[0]));
+
+        int[] positions = new int[listsQuantity];
+        Arrays.fill(positions, 1);
+        while (true) {
+            int minIndex = Integer.MAX_VALUE;
+            for (int i = 0; i < listsQuantity; i++) {
+                if (positions[i] <= indexLists[i][0]) minIndex = Math.min(minIndex, indexLists[i][positions[i]]);
+            }
+            if (minIndex == Integer.MAX_VALUE) return -1;
+            if (isEqualLogRecords(uniqLogRecordList.get(minIndex), logRecord)) return minIndex;
+            for (int i = 0; i < listsQuantity; i++) {
+                if (positions[i] <= indexLists[i][0] && indexLists[i][positions[i]] == minIndex) positions[i]++;
+            }
+        }
+    }
+
+    // the biggest quantity of not equal tokens, when records are still similar
+    private static int getMaxNotEqualTokens(int tokensQuantity) {
+        int maxNotEqualTokens = 0;
+        while ((double) (tokensQuantity - maxNotEqualTokens - 1) / tokensQuantity > CONFORMITY_POWER) {
+            maxNotEqualTokens++;
+        }
+        return maxNotEqualTokens;
+    }
+
+    private static long[] getTokenKeys(int[] messageTokens) {
+        long[] tokenKeys = new long[messageTokens.length];
+        for (int i = 0; i < tokenKeys.length; i++) {
+            tokenKeys[i] = getTokenKey(tokenKeys.length, i, messageTokens[i]);
+        }
+        return tokenKeys;
+    }
+
+    // messages longer than 65535 tokens can share keys, it only adds records to compare
+    private static long getTokenKey(int tokensQuantity, int position, int tokenId) {
+        return ((long) tokensQuantity << 48) ^ ((long) position << 32) ^ (tokenId & 0xFFFFFFFFL);
+    }
+
+    private void addToIndex(long tokenKey, int index) {
+        int[] indexes = uniqLogRecordIndexMap.get(tokenKey);
+        if (Objects.isNull(indexes)) {
+            indexes = new int[4];
+        } else if (indexes[0] + 1 == indexes.length) {
+            indexes = Arrays.copyOf(indexes, indexes.length * 2);
+        }
+        int position = -Arrays.binarySearch(indexes, 1, indexes[0] + 1, index) - 1;
+        System.arraycopy(indexes, position, indexes, position + 1, indexes[0] + 1 - position);
+        indexes[position] = index;
+        indexes[0]++;
+        uniqLogRecordIndexMap.put(tokenKey, indexes);
+    }
+
+    private void removeFromIndex(long tokenKey, int index) {
+        int[] indexes = uniqLogRecordIndexMap.get(tokenKey);
+        int position = Arrays.binarySearch(indexes, 1, indexes[0] + 1, index);
+        System.arraycopy(indexes, position + 1, indexes, position, indexes[0] - position);
+        indexes[0]--;
+        if (indexes[0] == 0) uniqLogRecordIndexMap.remove(tokenKey);
+    }
+
+    private boolean isEqualLogRecords (LogRecord logRecord1, LogRecord logRecord2) {
+        int notEqualTokenCount = 0;
+        int[] messageTokens1 = logRecord1.getMessageTokens();
+        int[] messageTokens2 = logRecord2.getMessageTokens();
+        if(Objects.isNull(messageTokens1) || Objects.isNull(messageTokens2)) return false;
+        else if (messageTokens1.length != messageTokens2.length) return false;
+        else if (messageTokens1.length <= 1) return false;
+        else {
+            int tokensQuantity = messageTokens1.length;
+            for (int i = 0; i < tokensQuantity; i++) {
+                if (messageTokens1[i] != messageTokens2[i]) {
+                    //stop as soon as records can't be similar
+                    if ((double) (tokensQuantity - ++notEqualTokenCount) / tokensQuantity <= CONFORMITY_POWER) return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private void join2LogRecords (LogRecord mainLogRecord, LogRecord addedLogRecord) throws TEAppException {
+        try {
+            Map<Integer, Set<String>> mainLogRecordValuesMap = mainLogRecord.getMessageValues();
+            int[] mainLogRecordMessageTokens = mainLogRecord.getMessageTokens();
+            int[] addedLogRecordMessageTokens = addedLogRecord.getMessageTokens();
+            for (int i = 0; i < addedLogRecordMessageTokens.length; i++) {
+                if (mainLogRecordMessageTokens[i] != addedLogRecordMessageTokens[i]) {
+                    String mainLogRecordMessageToken = tokenDictionary.getToken(mainLogRecordMessageTokens[i]);
+                    String addedLogRecordMessageToken = tokenDictionary.getToken(addedLogRecordMessageTokens[i]);
+                    if (mainLogRecordMessageToken.startsWith("${")) {
+                        mainLogRecordValuesMap.get(i).add(addedLogRecordMessageToken);
+                    } else {
+                        if (Objects.isNull(mainLogRecordValuesMap)) {
+                            mainLogRecordValuesMap = new TreeMap<>();
+                            mainLogRecord.setMessageValues(mainLogRecordValuesMap);
+                        }
+                        Set<String> mainLogRecordValuesSet = new TreeSet<>();
+                        mainLogRecordValuesSet.add(mainLogRecordMessageToken);
+                        mainLogRecordValuesSet.add(addedLogRecordMessageToken);
+                        mainLogRecordValuesMap.put(i,mainLogRecordValuesSet);
+                        mainLogRecordMessageTokens[i] = tokenDictionary.getId("${" + i + "}");
+                    }
+                }
+            }
+            mainLogRecord.setSimilarRowsQuantity(mainLogRecord.getSimilarRowsQuantity() + addedLogRecord.getSimilarRowsQuantity());
+        } catch (Exception e) {
+            logger.error("join2LogRecords(): mainLogRecord = " + mainLogRecord + "addedLogRecord = " + addedLogRecord, e);
+            throw new TEAppException(e.getMessage(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.trackensure;
+
+// the request has wrong options (e.g. conditions of search), the client must correct it
+public class TEAppBadRequestException extends TEAppException {
+    public TEAppBadRequestException(String message) {
+        super(message);
+    }
+
+    public TEAppBadRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
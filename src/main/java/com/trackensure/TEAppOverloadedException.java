@@ -0,0 +1,12 @@
+package com.trackensure;
+
+// the request is rejected because the application has no free threads for it, the client may retry it later
+public class TEAppOverloadedException extends TEAppException {
+    public TEAppOverloadedException(String message) {
+        super(message);
+    }
+
+    public TEAppOverloadedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,62 @@
+package com.trackensure;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// tokens of messages repeat in almost every record, so every token is kept once and the message is kept as ids of tokens.
+// One dictionary is shared by all readers of the parsing, so it is thread safe. Tokens are read without lock: a new token
+// is put into the array before size is increased, the array is copied when it grows, so a reader which sees the size
+// sees all tokens below it. Only new tokens take the lock
+public class TokenDictionary {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Integer> idMap = new ConcurrentHashMap<>();
+    private volatile String[] tokens = new String[INITIAL_CAPACITY];
+    private volatile int size;
+
+    public int getId(String token) {
+        Integer id = idMap.get(token);
+        if (Objects.nonNull(id)) return id;
+        synchronized (idMap) {
+            return idMap.computeIfAbsent(token, this::add);
+        }
+    }
+
+    public String getToken(int id) {
+        if (id >= size) throw new IndexOutOfBoundsException("Index: " + id + ", Size: " + size);
+        return tokens[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // the message from ids of tokens
+    public String join(int[] ids) {
+        int currentSize = size;
+        String[] currentTokens = tokens;
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int id : ids) {
+            if (id >= currentSize) throw new IndexOutOfBoundsException("Index: " + id + ", Size: " + currentSize);
+            stringBuilder.append(currentTokens[id]);
+        }
+        return stringBuilder.toString();
+    }
+
+    // called under the lock only
+    private int add(String token) {
+        int id = size;
+        String[] currentTokens = tokens;
+        if (id == currentTokens.length) {
+            currentTokens = Arrays.copyOf(currentTokens, currentTokens.length * 2);
+            currentTokens[id] = token;
+            tokens = currentTokens;
+        } else {
+            currentTokens[id] = token;
+        }
+        size = id + 1;
+        return id;
+    }
+}
@@ -0,0 +1,51 @@
+package com.trackensure;
+
+import java.util.*;
+
+// unique records in the order of their first rows. Records are found by fingerprint with one probe of the map,
+// records with the same fingerprint are compared by rows, so different records are never counted together.
+// Not thread safe
+public class UniqLogRecordCollection {
+    private final Map<LogRecordFingerprint, List<LogRecord>> uniqLogRecordMap = new HashMap<>();
+    private final List<LogRecord> uniqLogRecordList = new ArrayList<>();
+
+    // if the record is a duplicate, its rows are added to similarRowsQuantity of the unique record and true is returned
+    public boolean countDuplicate(LogRecord logRecord) {
+        LogRecord uniqLogRecord = find(logRecord);
+        if (Objects.isNull(uniqLogRecord)) return false;
+        uniqLogRecord.setSimilarRowsQuantity(uniqLogRecord.getSimilarRowsQuantity() + logRecord.getSimilarRowsQuantity());
+        return true;
+    }
+
+    // returns the unique record which the record is a duplicate of or null
+    public LogRecord find(LogRecord logRecord) {
+        List<LogRecord> sameFingerprintLogRecordList = uniqLogRecordMap.get(logRecord.getFingerprint());
+        if (Objects.isNull(sameFingerprintLogRecordList)) return null;
+        for (LogRecord uniqLogRecord : sameFingerprintLogRecordList) {
+            if (isEqualRows(uniqLogRecord, logRecord)) return uniqLogRecord;
+        }
+        return null;
+    }
+
+    // the record must not be a duplicate
+    public void add(LogRecord logRecord) {
+        uniqLogRecordMap.computeIfAbsent(logRecord.getFingerprint(), fingerprint -> new ArrayList<>(1)).add(logRecord);
+        uniqLogRecordList.add(logRecord);
+    }
+
+    public List<LogRecord> getUniqLogRecordList() {
+        return uniqLogRecordList;
+    }
+
+    // the same as LogRecord.equals(), but strings of message and stack trace are not needed
+    private static boolean isEqualRows(LogRecord logRecord1, LogRecord logRecord2) {
+        return Objects.equals(logRecord1.getPriority(), logRecord2.getPriority())
+                && Objects.equals(logRecord1.getCategory(), logRecord2.getCategory())
+                && Objects.equals(getMessage(logRecord1), getMessage(logRecord2))
+                && Objects.equals(logRecord1.getStackTrace(), logRecord2.getStackTrace());
+    }
+
+    private static List<String> getMessage(LogRecord logRecord) {
+        return Objects.isNull(logRecord.getMessage()) || logRecord.getMessage().isEmpty() ? null : logRecord.getMessage();
+    }
+}
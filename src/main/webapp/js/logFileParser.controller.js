@@ -13,10 +13,15 @@ function Controller($scope, logFileParserService) {
         isUniqRecords: true,
         isGatherMessages: false,
         isErrorsOnly: true,
-        isTeStackTraceOnly: true
+        isTeStackTraceOnly: true,
+        isStreaming: false,
+        isFollow: false
     };
 
+    vm.progress = null;
+
     vm.parseLogFile = parseLogFile;
+    vm.cancelParseJob = cancelParseJob;
     vm.selectFile = selectFile;
     vm.onChangeUniqRecords = onChangeUniqRecords;
 
@@ -28,11 +33,13 @@ function Controller($scope, logFileParserService) {
 
     function onChangeUniqRecords() {
         if (!vm.filter.isUniqRecords) vm.filter.isGatherMessages = false;
+        else vm.filter.isStreaming = false;
     }
 
     function parseLogFile() {
             vm.isParsingFile = true;
-            logFileParserService.parseLogFile(vm.filter)
+            vm.progress = null;
+            logFileParserService.parseLogFile(vm.filter, onProgress)
                 .then(function () {
                     vm.isParsingFile = false;
                 }).catch(function (error) {
@@ -40,4 +47,33 @@ function Controller($scope, logFileParserService) {
                     alert("Exception: " + error);
             });
     }
+
+    function cancelParseJob() {
+        if (!vm.progress) return;
+        logFileParserService.cancelParseJob(vm.progress.jobId)
+            .catch(function (error) {
+                alert("Exception: " + error);
+            });
+    }
+
+    function onProgress(status) {
+        vm.progress = status;
+        vm.progress.text = getProgressText(status);
+    }
+
+    function getProgressText(status) {
+        let text = status.stage;
+        if (status.totalBytes > 0) {
+            text += ': ' + toMegabytes(status.readBytes) + ' of ' + toMegabytes(status.totalBytes) + ' MB';
+        }
+        text += ', ' + status.parsedRecords + ' records';
+        if (status.etaMs !== undefined) {
+            text += ', ' + Math.ceil(status.etaMs / 1000) + ' s left';
+        }
+        return text;
+    }
+
+    function toMegabytes(bytes) {
+        return (bytes / (1024 * 1024)).toFixed(1);
+    }
 }
\ No newline at end of file
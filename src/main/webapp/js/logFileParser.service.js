@@ -1,24 +1,79 @@
 app.factory('logFileParserService', Service);
-Service.$inject = ['$http', '$q'];
-function Service($http, $q) {
+Service.$inject = ['$http', '$q', '$timeout'];
+function Service($http, $q, $timeout) {
+    const STATUS_POLL_INTERVAL_MS = 1000;
+
     return {
-        parseLogFile: parseLogFile
+        parseLogFile: parseLogFile,
+        cancelParseJob: cancelParseJob,
+        searchLogRecords: searchLogRecords
     };
 
-    function parseLogFile(filter) {
+    // parsing is run by a job on the server, its status is passed to onProgress until the book is downloaded
+    function parseLogFile(filter, onProgress) {
         let deferred = $q.defer();
-        $.fileDownload('./parseLogFile?actionName=parseLogFile',
+        postAction('submitParseJob', {data: JSON.stringify(filter)})
+            .then(function (status) {
+                pollParseJob(status, onProgress, deferred);
+            }).catch(function (error) {
+                deferred.reject(error);
+            });
+        return deferred.promise;
+    }
+
+    function cancelParseJob(jobId) {
+        return postAction('cancelParseJob', {jobId: jobId});
+    }
+
+    // page of records of the files of filter matching query (time range, priorities, category, thread, text, offset, limit)
+    function searchLogRecords(filter, query) {
+        return postAction('searchLogRecords', {data: JSON.stringify(angular.extend({}, filter, query))});
+    }
+
+    function pollParseJob(status, onProgress, deferred) {
+        onProgress(status);
+        if (status.stage === 'DONE') {
+            downloadParseJobResult(status.jobId, deferred);
+        } else if (status.stage === 'FAILED') {
+            deferred.reject(status.error);
+        } else if (status.stage === 'CANCELLED') {
+            deferred.reject('Parsing has been cancelled.');
+        } else {
+            $timeout(function () {
+                postAction('getParseJobStatus', {jobId: status.jobId})
+                    .then(function (nextStatus) {
+                        pollParseJob(nextStatus, onProgress, deferred);
+                    }).catch(function (error) {
+                        deferred.reject(error);
+                    });
+            }, STATUS_POLL_INTERVAL_MS);
+        }
+    }
+
+    function downloadParseJobResult(jobId, deferred) {
+        $.fileDownload('./parseLogFile?actionName=downloadParseJobResult&jobId=' + encodeURIComponent(jobId),
             {
-                httpMethod: 'POST',
-                data: {data: JSON.stringify(filter)},
-                successCallback: function (response) {
-                    deferred.resolve(response.data);
+                successCallback: function () {
+                    deferred.resolve();
                 },
                 failCallback: function (error) {
                     let errorMessage = JSON.parse((new DOMParser().parseFromString(error,"text/xml").getElementsByTagName("pre"))[0].childNodes[0].nodeValue).error;
                     deferred.reject(errorMessage);
                 }
             });
-        return deferred.promise;
     }
-}
\ No newline at end of file
+
+    function postAction(actionName, params) {
+        return $http({
+            method: 'POST',
+            url: './parseLogFile',
+            params: {actionName: actionName},
+            data: $.param(params),
+            headers: {'Content-Type': 'application/x-www-form-urlencoded'}
+        }).then(function (response) {
+            return response.data;
+        }).catch(function (response) {
+            return $q.reject((response.data && response.data.error) || response.statusText);
+        });
+    }
+}
@@ -0,0 +1,63 @@
+package com.trackensure;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogFileParserJobsTest {
+    private static final String JOB_THREADS_PROPERTY = "logFileParser.jobThreads";
+    private static final String JOB_QUEUE_SIZE_PROPERTY = "logFileParser.jobQueueSize";
+    private static final String JOB_DIR_PROPERTY = "logFileParser.jobDir";
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    public void shutdown() {
+        LogFileParserJobs.shutdown();
+        System.clearProperty(JOB_THREADS_PROPERTY);
+        System.clearProperty(JOB_QUEUE_SIZE_PROPERTY);
+        System.clearProperty(JOB_DIR_PROPERTY);
+    }
+
+    @Test
+    public void cancelledQueuedJobFreesQueue() throws TEAppException, InterruptedException {
+        System.setProperty(JOB_THREADS_PROPERTY, "1");
+        System.setProperty(JOB_QUEUE_SIZE_PROPERTY, "1");
+        System.setProperty(JOB_DIR_PROPERTY, tempDir.toString());
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        CountDownLatch finishLatch = new CountDownLatch(1);
+        LogFileParserJobs.submit("running.xlsx", (job, outputStream) -> {
+            startedLatch.countDown();
+            try {
+                finishLatch.await();
+            } catch (InterruptedException e) {
+                throw new TEAppException("Job has been interrupted.", e);
+            }
+        });
+        assertTrue(startedLatch.await(10, TimeUnit.SECONDS));
+
+        LogFileParserJob queuedJob = LogFileParserJobs.submit("queued.xlsx", (job, outputStream) -> {
+        });
+        assertEquals(1, LogFileParserJobs.getQueuedJobsQuantity());
+        assertThrows(TEAppOverloadedException.class, () -> LogFileParserJobs.submit("rejected.xlsx", (job, outputStream) -> {
+        }));
+
+        LogFileParserJobs.cancel(queuedJob.getId());
+        assertEquals(LogFileParserJob.Stage.CANCELLED, queuedJob.getStage());
+        assertEquals(0, LogFileParserJobs.getQueuedJobsQuantity());
+        //the place of the cancelled job in the queue is free
+        LogFileParserJobs.submit("next.xlsx", (job, outputStream) -> {
+        });
+        assertEquals(1, LogFileParserJobs.getQueuedJobsQuantity());
+        finishLatch.countDown();
+    }
+}
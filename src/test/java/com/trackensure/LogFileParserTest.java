@@ -0,0 +1,154 @@
+package com.trackensure;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class LogFileParserTest {
+    private static final String RANGE_SIZE_PROPERTY = "logFileParser.rangeSizeKb";
+    private static final String CACHE_SIZE_PROPERTY = "logFileParser.cacheSizeMb";
+    private static final String CACHE_DIR_PROPERTY = "logFileParser.cacheDir";
+    private static final String CACHE_FILTERED_PARSING_PROPERTY = "logFileParser.cacheFilteredParsing";
+    private static final int RECORDS_QUANTITY = 3000;
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    public void clearProperties() {
+        System.clearProperty(RANGE_SIZE_PROPERTY);
+        System.clearProperty(CACHE_SIZE_PROPERTY);
+        System.clearProperty(CACHE_DIR_PROPERTY);
+        System.clearProperty(CACHE_FILTERED_PARSING_PROPERTY);
+    }
+
+    // expected records are numbered the way LogFileParser numbered them before files were split into ranges:
+    // the number of record is the number of its first row in the file, counted from 1
+    @Test
+    public void numbersRecordsOfRangesAsOfWholeFile() throws IOException, TEAppException {
+        List<String> expectedRecordList = new ArrayList<>();
+        File sourceFile = writeLogFile(expectedRecordList);
+        System.setProperty(CACHE_SIZE_PROPERTY, "0");
+
+        assertEquals(expectedRecordList, parse(sourceFile));
+        //ranges of 1 KB end in the middle of records, stack traces and line terminators
+        System.setProperty(RANGE_SIZE_PROPERTY, "1");
+        assertEquals(expectedRecordList, parse(sourceFile));
+    }
+
+    @Test
+    public void cachesRecordsOfEveryCharset() throws IOException, TEAppException {
+        String message = "\u041f\u0440\u0438\u0432\u0435\u0442 \u043c\u0438\u0440";
+        Charset windows1251 = Charset.forName("windows-1251");
+        File sourceFile = tempDir.resolve("app.log").toFile();
+        Files.write(sourceFile.toPath(), ("2023-02-01 00:00:00,000 ERROR [thread-1] com.trackensure.Foo - " + message + "\n").getBytes(windows1251));
+        System.setProperty(CACHE_DIR_PROPERTY, tempDir.resolve("cache").toString());
+
+        String utf8Message = new String(message.getBytes(windows1251), StandardCharsets.UTF_8);
+        assertEquals(Collections.singletonList("1|" + utf8Message + "|null"), parse(sourceFile, StandardCharsets.UTF_8));
+        //records of the file read with UTF-8 are cached, but they are not used for windows-1251
+        assertEquals(Collections.singletonList("1|" + message + "|null"), parse(sourceFile, windows1251));
+        assertEquals(Collections.singletonList("1|" + message + "|null"), parse(sourceFile, windows1251));
+        assertEquals(Collections.singletonList("1|" + utf8Message + "|null"), parse(sourceFile, StandardCharsets.UTF_8));
+        assertEquals(2, tempDir.resolve("cache").toFile().list((dir, name) -> name.endsWith(".meta")).length);
+    }
+
+    @Test
+    public void cachesRecordsOfErrorsOnlyParsing() throws IOException, TEAppException {
+        List<String> expectedRecordList = new ArrayList<>();
+        File sourceFile = writeLogFile(expectedRecordList);
+        File cacheDir = tempDir.resolve("cache").toFile();
+        System.setProperty(CACHE_DIR_PROPERTY, cacheDir.getPath());
+        System.setProperty(RANGE_SIZE_PROPERTY, "16");
+
+        List<String> errorRecordList = new ArrayList<>();
+        for (int i = 0; i < expectedRecordList.size(); i += 2) {
+            errorRecordList.add(expectedRecordList.get(i));
+        }
+
+        System.setProperty(CACHE_FILTERED_PARSING_PROPERTY, "false");
+        assertEquals(errorRecordList, parse(sourceFile, StandardCharsets.UTF_8, true));
+        assertFalse(cacheDir.exists());
+        System.clearProperty(CACHE_FILTERED_PARSING_PROPERTY);
+        assertEquals(errorRecordList, parse(sourceFile, StandardCharsets.UTF_8, true));
+        assertEquals(1, cacheDir.list((dir, name) -> name.endsWith(".meta")).length);
+        //the cached ranges are read with the filter and without it
+        assertEquals(errorRecordList, parse(sourceFile, StandardCharsets.UTF_8, true));
+        assertEquals(expectedRecordList, parse(sourceFile));
+    }
+
+    // records have several rows of message, stack traces and empty rows, line terminators are LF and CRLF.
+    // Records with even indexes are errors
+    private File writeLogFile(List<String> expectedRecordList) throws IOException {
+        StringBuilder log = new StringBuilder();
+        int rowNumber = 0;
+        for (int i = 0; i < RECORDS_QUANTITY; i++) {
+            String lineTerminator = (i % 3 == 0) ? "\r\n" : "\n";
+            List<String> messageRowList = new ArrayList<>();
+            messageRowList.add("Record " + i + " of user " + (i * 7 % 31));
+            for (int j = 0; j < i % 4; j++) {
+                messageRowList.add("continuation " + j + " of record " + i);
+            }
+            List<String> stackTraceRowList = new ArrayList<>();
+            if (i % 5 == 0) {
+                stackTraceRowList.add("com.trackensure.Foo.bar(Foo.java:" + i + ")");
+                stackTraceRowList.add("com.trackensure.Foo.run(Foo.java:10)");
+            }
+            expectedRecordList.add((rowNumber + 1) + "|" + String.join(System.lineSeparator(), messageRowList)
+                    + "|" + (stackTraceRowList.isEmpty() ? null : String.join(System.lineSeparator(), stackTraceRowList)));
+
+            log.append(String.format("2023-02-01 %02d:%02d:%02d,%03d %5s [thread-%d] com.trackensure.Foo - ",
+                    i / 3600, i / 60 % 60, i % 60, i % 1000, (i % 2 == 0) ? "ERROR" : "INFO", i % 3)).append(messageRowList.get(0)).append(lineTerminator);
+            rowNumber++;
+            for (String messageRow : messageRowList.subList(1, messageRowList.size())) {
+                log.append(messageRow).append(lineTerminator);
+                rowNumber++;
+            }
+            for (String stackTraceRow : stackTraceRowList) {
+                log.append("\tat ").append(stackTraceRow).append(lineTerminator);
+                rowNumber++;
+            }
+            if (i % 7 == 0) {
+                log.append(lineTerminator);
+                rowNumber++;
+            }
+        }
+        File sourceFile = tempDir.resolve("app.log").toFile();
+        Files.write(sourceFile.toPath(), log.toString().getBytes(StandardCharsets.UTF_8));
+        return sourceFile;
+    }
+
+    private static List<String> parse(File sourceFile) throws TEAppException {
+        return parse(sourceFile, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> parse(File sourceFile, Charset charset) throws TEAppException {
+        return parse(sourceFile, charset, false);
+    }
+
+    private static List<String> parse(File sourceFile, Charset charset, boolean isErrorsOnly) throws TEAppException {
+        LogFileParser logFileParser = new LogFileParser(Collections.singletonList(sourceFile), charset,
+                false, false, isErrorsOnly, false, 0, 0);
+        List<String> recordList = new ArrayList<>();
+        for (List<LogRecord> sheet : logFileParser.parseLogFiles()) {
+            for (LogRecord logRecord : sheet) {
+                assertEquals(sourceFile.getName(), logRecord.getLogName());
+                recordList.add(logRecord.getRowNumber() + "|" + logRecord.getMessageStr() + "|" + logRecord.getStackTraceStr());
+            }
+        }
+        return recordList;
+    }
+}
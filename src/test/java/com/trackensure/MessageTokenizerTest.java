@@ -0,0 +1,56 @@
+package com.trackensure;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// expected tokens are made by createTokenList() of LogFileParser before MessageTokenizer replaced it
+public class MessageTokenizerTest {
+
+    @Test
+    public void splitsMessageWithCrLf() {
+        assertTokens("Connection failed 14.123.02.86.7\r\ncontinuation line 2",
+                "Connection", " ", "failed", " ", "14.123.02.86.7", "\r\n", "continuation", " ", "line", " ", "2");
+        assertTokens("Device deviceToke=abc1:XYZ-3 registered\r\nline 2\r\n",
+                "Device", " ", "deviceToke", "=", "abc1:XYZ-3", " ", "registered", "\r\n", "line", " ", "2");
+    }
+
+    @Test
+    public void splitsTrailingValues() {
+        assertTokens("Timeout after 25.897",
+                "Timeout", " ", "after", " ", "25.897");
+        assertTokens("Timeout after 25.897\r\n",
+                "Timeout", " ", "after", " ", "25.897");
+        assertTokens("Request from 141.101.238.127\n",
+                "Request", " ", "from", " ", "141.101.238.127");
+        assertTokens("Started at 04-Dec-22 05:24:22",
+                "Started", " ", "at", " ", "04-Dec-22 05:24:22");
+    }
+
+    @Test
+    public void splitsSeveralValues() {
+        assertTokens("Value -3.16 exceeded at 2023-01-05 10:11:12.123 status On-Duty",
+                "Value", " ", "-3.16", " ", "exceeded", " ", "at", " ", "2023-01-05 10:11:12.123", " ", "status", " ", "On-Duty");
+    }
+
+    @Test
+    public void splitsByWordBoundaries() {
+        assertTokens("Plain message\twith\ttabs",
+                "Plain", " ", "message", "\t", "with", "\t", "tabs");
+        assertTokens("\u041e\u0448\u0438\u0431\u043a\u0430 141.101.238.127 \u0441\u0435\u0440\u0432\u0435\u0440",
+                "\u041e\u0448\u0438\u0431\u043a\u0430", " ", "141.101.238.127", " ", "\u0441\u0435\u0440\u0432\u0435\u0440");
+        assertTokens("");
+    }
+
+    private static void assertTokens(String message, String... expectedTokens) {
+        TokenDictionary tokenDictionary = new TokenDictionary();
+        List<String> tokens = Arrays.stream(new MessageTokenizer(tokenDictionary).createTokens(message))
+                .mapToObj(tokenDictionary::getToken)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(expectedTokens), tokens, message);
+    }
+}
@@ -0,0 +1,83 @@
+package com.trackensure;
+
+import org.apache.log4j.Level;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// expected records are made by joinRecordWithSimilarMessages() of LogFileParser before SimilarMessagesJoiner replaced it:
+// a record is joined to the first unique record with the same quantity of tokens and more than 80% of equal tokens
+public class SimilarMessagesJoinerTest {
+    private final TokenDictionary tokenDictionary = new TokenDictionary();
+    private final MessageTokenizer messageTokenizer = new MessageTokenizer(tokenDictionary);
+
+    @Test
+    public void joinsRecordsToFirstSimilarRecord() throws TEAppException {
+        SimilarMessagesJoiner similarMessagesJoiner = new SimilarMessagesJoiner(tokenDictionary);
+        List<LogRecord> logRecordList = Arrays.asList(
+                createLogRecord(1, "User 17 logged in from 141.101.238.127"),
+                createLogRecord(2, "User 18 logged in from 141.101.238.127"),
+                createLogRecord(3, "User 19 logged in from 10.0.0.1"),
+                //3 of 11 tokens differ from the first record
+                createLogRecord(4, "User 20 logged out from 10.0.0.2"),
+                createLogRecord(5, "User 21 logged out from 10.0.0.2"),
+                //similar to both unique records
+                createLogRecord(6, "User 23 logged in from 10.0.0.2"));
+        for (LogRecord logRecord : logRecordList) {
+            similarMessagesJoiner.add(logRecord);
+        }
+
+        List<LogRecord> uniqLogRecordList = similarMessagesJoiner.getUniqLogRecordList();
+        assertEquals(2, uniqLogRecordList.size());
+        assertJoined(uniqLogRecordList.get(0), 1, 4, "User ${2} logged in from ${10}",
+                "{2=[17, 18, 19, 23], 10=[10.0.0.1, 10.0.0.2, 141.101.238.127]}");
+        assertJoined(uniqLogRecordList.get(1), 4, 2, "User ${2} logged out from 10.0.0.2", "{2=[20, 21]}");
+    }
+
+    @Test
+    public void doesNotJoinShortOrDifferentRecords() throws TEAppException {
+        SimilarMessagesJoiner similarMessagesJoiner = new SimilarMessagesJoiner(tokenDictionary);
+        List<LogRecord> logRecordList = Arrays.asList(
+                createLogRecord(1, "Disconnected"),
+                createLogRecord(2, "Disconnected"),
+                createLogRecord(3, "User 22 logged"),
+                createLogRecord(4, "User 22 logged in from 10.0.0.1"),
+                //4 of 5 tokens are equal, it is not more than 80%
+                createLogRecord(5, "User 23 logged"),
+                createLogRecord(6, null));
+        for (LogRecord logRecord : logRecordList) {
+            similarMessagesJoiner.add(logRecord);
+        }
+
+        List<LogRecord> uniqLogRecordList = similarMessagesJoiner.getUniqLogRecordList();
+        assertEquals(logRecordList, uniqLogRecordList);
+        for (LogRecord uniqLogRecord : uniqLogRecordList) {
+            assertEquals(1, uniqLogRecord.getSimilarRowsQuantity());
+            assertNull(uniqLogRecord.getMessageValues());
+        }
+    }
+
+    private LogRecord createLogRecord(int rowNumber, String message) {
+        LogRecord logRecord = new LogRecord("app.log", LocalDate.of(2023, 2, 1), LocalTime.of(0, 0, rowNumber), Level.ERROR,
+                "thread-1", "com.trackensure.Foo", Objects.isNull(message) ? null : Collections.singletonList(message));
+        logRecord.setRowNumber(rowNumber);
+        logRecord.setSimilarRowsQuantity(1);
+        if (Objects.nonNull(message)) {
+            logRecord.setMessageStr(message);
+            logRecord.setMessageTokens(messageTokenizer.createTokens(message));
+        }
+        return logRecord;
+    }
+
+    private void assertJoined(LogRecord logRecord, int rowNumber, int similarRowsQuantity, String message, String messageValues) {
+        assertEquals(rowNumber, logRecord.getRowNumber());
+        assertEquals(similarRowsQuantity, logRecord.getSimilarRowsQuantity());
+        assertEquals(message, tokenDictionary.join(logRecord.getMessageTokens()));
+        assertEquals(messageValues, logRecord.getMessageValues().toString());
+    }
+}